@@ -0,0 +1,270 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wm.data.IData;
+import com.wm.util.coder.IDataBinCoder;
+
+/**
+ * JMH benchmarks for the hot path of a connection update: reading and decoding
+ * the node.ndf file, applying changes, encoding, and writing. The connections
+ * are created by {@link SyntheticConnection}, with the size controlled via the
+ * length of "otherProperties". Run via the Ant target "benchmark".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeNdfBenchmark {
+
+	private static final String PKG_NAME = "JtacuBenchmark";
+	private static final String CONN_ALIAS = "jtacu.benchmark:connection";
+
+	/**
+	 * Length of "otherProperties", from a small JDBC connection up to one with a
+	 * large blob
+	 */
+	@Param({ "0", "4096", "65536", "1048576" })
+	public int otherPropertiesSize;
+
+	private File isHome;
+	private File nodeNdfDir;
+	private byte[] nodeNdfContent;
+	private byte[] settingsBytes;
+	private String settingsBase64;
+	private IData details;
+	private ChangeSet changeSet;
+	private ChangeSet revertChangeSet;
+
+	/**
+	 * Create the synthetic connection on disk and pre-compute the intermediate
+	 * representations for the individual steps
+	 * 
+	 * @throws IOException if the connection cannot be created
+	 */
+	@Setup(Level.Trial)
+	public void setUpTrial() throws IOException {
+		isHome = Files.createTempDirectory("jtacu-bench").toFile();
+		File nodeNdfFile = SyntheticConnection.create(isHome, PKG_NAME, CONN_ALIAS, otherPropertiesSize);
+		nodeNdfDir = nodeNdfFile.getParentFile();
+		nodeNdfContent = Files.readAllBytes(nodeNdfFile.toPath());
+
+		details = SyntheticConnection.createDetails(otherPropertiesSize);
+		settingsBytes = new IDataBinCoder().encodeToBytes(details);
+		settingsBase64 = Base64.getEncoder().encodeToString(settingsBytes);
+
+		changeSet = new ChangeSet(createChanges("db-new.example.com", "false"));
+		revertChangeSet = new ChangeSet(createChanges("db.example.com", "true"));
+	}
+
+	/**
+	 * Remove all files
+	 * 
+	 * @throws IOException if the files cannot be removed
+	 */
+	@TearDown(Level.Trial)
+	public void tearDownTrial() throws IOException {
+		try (Stream<Path> paths = Files.walk(isHome.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * Create changes for a typical update
+	 * 
+	 * @param serverName New server name
+	 * @param poolable   New value for pooling
+	 * @return changes by setting path
+	 */
+	private static Map<String, String> createChanges(String serverName, String poolable) {
+		Map<String, String> changes = new LinkedHashMap<String, String>();
+		changes.put("connectionProperties.serverName", serverName);
+		changes.put("connectionProperties.user", "app_user");
+		changes.put("connectionManagerProperties.poolable", poolable);
+		changes.put("connectionManagerProperties.maximumPoolSize", "10");
+		return changes;
+	}
+
+	/**
+	 * Read and fully decode the node.ndf file
+	 * 
+	 * @return decoded connection details
+	 */
+	@Benchmark
+	public IData readAndDecode() {
+		return new ConnectionFile(nodeNdfDir).getConnectionDetails();
+	}
+
+	/**
+	 * Read a node.ndf file and get the adapter type, without decoding the
+	 * connection details
+	 * 
+	 * @return adapter type
+	 */
+	@Benchmark
+	public String readAndProbe() {
+		return new ConnectionFile(nodeNdfDir, CONN_ALIAS, true).getAdapterType();
+	}
+
+	/**
+	 * Locate the encoded connection details in the raw file content
+	 * 
+	 * @return encoded connection details
+	 */
+	@Benchmark
+	public String locateRaw() {
+		return RawNodeFile.locate(nodeNdfContent).getEncodedValue();
+	}
+
+	/**
+	 * Locate the encoded connection details in the raw file content and decode
+	 * them into a pooled buffer, as done when reading a file
+	 * 
+	 * @return number of decoded bytes
+	 * @throws IOException          if decoding fails
+	 * @throws InterruptedException if interrupted while waiting for a buffer
+	 */
+	@Benchmark
+	public int locateAndDecodePooled() throws IOException, InterruptedException {
+		RawNodeFile rawNodeFile = RawNodeFile.locate(nodeNdfContent);
+		try (DecodeBuffers.Lease lease = DecodeBuffers.acquire(rawNodeFile.getMaxDecodedLength(), CONN_ALIAS)) {
+			return rawNodeFile.decodeValue(lease.getBuffer());
+		}
+	}
+
+	/**
+	 * Base64 decoding of the connection details
+	 * 
+	 * @return decoded bytes
+	 */
+	@Benchmark
+	public byte[] base64Decode() {
+		return Base64.getDecoder().decode(settingsBase64);
+	}
+
+	/**
+	 * Base64 encoding of the connection details
+	 * 
+	 * @return encoded bytes
+	 */
+	@Benchmark
+	public byte[] base64Encode() {
+		return Base64.getEncoder().encode(settingsBytes);
+	}
+
+	/**
+	 * Binary decoding of the connection details
+	 * 
+	 * @return connection details
+	 * @throws IOException if decoding fails
+	 */
+	@Benchmark
+	public IData binDecode() throws IOException {
+		return new IDataBinCoder().decodeFromBytes(settingsBytes);
+	}
+
+	/**
+	 * Binary encoding of the connection details
+	 * 
+	 * @return encoded bytes
+	 * @throws IOException if encoding fails
+	 */
+	@Benchmark
+	public byte[] binEncode() throws IOException {
+		return new IDataBinCoder().encodeToBytes(details);
+	}
+
+	/**
+	 * Apply a change set to decoded connection details. The changes alternate
+	 * between two sets, so that every invocation actually changes values.
+	 * 
+	 * @param fresh Freshly read connection file
+	 * @return outcome of the changes
+	 */
+	@Benchmark
+	public Object update(FreshConnectionFile fresh) {
+		ConnectionDetails conDetails = new ConnectionDetails(fresh.connectionFile.getConnectionDetails());
+		conDetails.update(changeSet);
+		return conDetails.update(revertChangeSet);
+	}
+
+	/**
+	 * Apply a change and write the file
+	 * 
+	 * @param fresh Freshly read connection file
+	 * @return whether the file was written
+	 * @throws IOException if writing fails
+	 */
+	@Benchmark
+	public boolean updateAndWrite(FreshConnectionFile fresh) throws IOException {
+		ConnectionDetails conDetails = new ConnectionDetails(fresh.connectionFile.getConnectionDetails());
+		String serverName = conDetails.getSetting("connectionProperties.serverName");
+		conDetails.update(serverName.equals("db.example.com") ? changeSet : revertChangeSet);
+		return fresh.connectionFile.write(new DirectorySyncGroup());
+	}
+
+	/**
+	 * Freshly read connection file for benchmarks that modify it. Kept separate so
+	 * that the per-invocation setup does not affect the other benchmarks.
+	 */
+	@State(Scope.Thread)
+	public static class FreshConnectionFile {
+
+		private ConnectionFile connectionFile;
+
+		/**
+		 * Read the connection file before each invocation
+		 * 
+		 * @param benchmark Benchmark state with the synthetic connection
+		 */
+		@Setup(Level.Invocation)
+		public void setUp(NodeNdfBenchmark benchmark) {
+			connectionFile = new ConnectionFile(benchmark.nodeNdfDir);
+		}
+	}
+
+}
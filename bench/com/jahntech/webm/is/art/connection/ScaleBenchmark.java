@@ -0,0 +1,339 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * End-to-end benchmark of complete runs against a synthetic Integration Server
+ * installation (see {@link SyntheticIsHome}) with 10, 1,000, and 10,000
+ * connections. It serves as the baseline for performance changes that affect
+ * more than the hot path measured by {@link NodeNdfBenchmark}. The scenarios
+ * follow the respective code paths of {@link CommandLine}:
+ * 
+ * <ul>
+ * <li>single: one connection per run, i.e. loading the connection index,
+ * updating, and saving the index (without JVM start-up)</li>
+ * <li>batch: all connections in one run, as in batch mode</li>
+ * <li>bulk: all connections that match a selector, including the evaluation of
+ * the selector (see {@link ConnectionSelector})</li>
+ * </ul>
+ * 
+ * Every run alternates between two files with changes, so that every update
+ * actually writes its node.ndf file. For each scenario the throughput in
+ * connections per second, percentiles of the time per connection update, and
+ * the median duration of a run are printed. Passwords are not changed, since
+ * PassMan needs a real installation.
+ * 
+ * <p>
+ * Run via the Ant target "scaleBenchmark". The numbers of connections can be
+ * passed as arguments, the number of runs per scenario via the Java system
+ * property {@value #PROPERTY_RUNS}.
+ */
+public class ScaleBenchmark {
+
+	/**
+	 * Java system property for the number of measured runs per scenario
+	 */
+	public static final String PROPERTY_RUNS = "jtacu.bench.runs";
+
+	private static final int[] DEFAULT_CONNECTION_COUNTS = { 10, 1000, 10000 };
+	private static final int DEFAULT_RUNS = 5;
+	private static final int CONNECTIONS_PER_PACKAGE = 50;
+	private static final int OTHER_PROPERTIES_SIZE = 256;
+
+	/**
+	 * Upper bound for the connections updated per run of the single scenario, so
+	 * that it does not take hours for large installations
+	 */
+	private static final int MAX_SINGLE_UPDATES_PER_RUN = 200;
+
+	private static final String[] SERVER_NAMES = { "db-blue.example.com", "db-green.example.com" };
+	private static final String[] POOL_SIZES = { "10", "20" };
+
+	private static final PrintStream NO_OUTPUT = new PrintStream(PrintStream.nullOutputStream());
+
+	/**
+	 * Run all scenarios
+	 * 
+	 * @param args Numbers of connections (optional)
+	 * @throws Exception if the benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] connectionCounts = args.length == 0 ? DEFAULT_CONNECTION_COUNTS
+				: Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+		int runs = Integer.getInteger(PROPERTY_RUNS, DEFAULT_RUNS);
+
+		System.out.println(String.format(Locale.ROOT, "%-8s %11s %5s %8s %12s %9s %9s %9s %9s %11s", "scenario",
+				"connections", "runs", "updates", "conn/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "run p50 ms"));
+		for (int connectionCount : connectionCounts) {
+			benchmark(connectionCount, runs, System.out);
+		}
+	}
+
+	/**
+	 * Run all scenarios for one size of installation
+	 * 
+	 * @param connectionCount Number of connections
+	 * @param runs            Number of measured runs per scenario
+	 * @param out             Stream for results
+	 * @throws Exception if a run fails
+	 */
+	private static void benchmark(int connectionCount, int runs, PrintStream out) throws Exception {
+		File wmHome = Files.createTempDirectory("jtacu-scale").toFile();
+		try {
+			long start = System.nanoTime();
+			SyntheticIsHome synthetic = SyntheticIsHome.create(wmHome, "default", connectionCount,
+					CONNECTIONS_PER_PACKAGE, OTHER_PROPERTIES_SIZE);
+			File isHome = synthetic.getIsHome();
+			File[] changeFiles = new File[SERVER_NAMES.length];
+			for (int i = 0; i < changeFiles.length; i++) {
+				changeFiles[i] = new File(wmHome, "change" + i + ".conf");
+				Files.write(changeFiles[i].toPath(), ("connectionProperties.serverName=" + SERVER_NAMES[i]
+						+ "\nconnectionManagerProperties.maximumPoolSize=" + POOL_SIZES[i] + "\n")
+						.getBytes(StandardCharsets.UTF_8));
+			}
+			ConnectionIndex index = new ConnectionIndex(isHome);
+			index.refresh();
+			index.save();
+			out.println(String.format(Locale.ROOT, "# %d connection(s) created in %.1f ms", connectionCount,
+					(System.nanoTime() - start) / 1e6));
+
+			// Warm-up with a batch run, which also brings all files to the first change
+			// file
+			runBatch(isHome, synthetic.getConnections(), changeFiles[0], new Samples());
+
+			Samples single = new Samples();
+			int changeIndex = 1;
+			for (int r = 0; r < runs; r++, changeIndex++) {
+				File changeFile = changeFiles[changeIndex % changeFiles.length];
+				List<DiscoveredConnection> connections = synthetic.getConnections();
+				for (int i = 0; i < Math.min(connections.size(), MAX_SINGLE_UPDATES_PER_RUN); i++) {
+					runSingle(isHome, connections.get(i), changeFile, single);
+				}
+			}
+			single.print("single", connectionCount, runs, out);
+
+			Samples batch = new Samples();
+			for (int r = 0; r < runs; r++, changeIndex++) {
+				runBatch(isHome, synthetic.getConnections(), changeFiles[changeIndex % changeFiles.length], batch);
+			}
+			batch.print("batch", connectionCount, runs, out);
+
+			Samples bulk = new Samples();
+			for (int r = 0; r < runs; r++, changeIndex++) {
+				runBulk(isHome, changeFiles[changeIndex % changeFiles.length],
+						POOL_SIZES[changeIndex % POOL_SIZES.length], bulk);
+			}
+			bulk.print("bulk", connectionCount, runs, out);
+		} finally {
+			SyntheticIsHome.delete(wmHome);
+		}
+	}
+
+	/**
+	 * Update a single connection like a single invocation from the command line
+	 * 
+	 * @param isHome     Directory of the installation
+	 * @param connection Connection to update
+	 * @param changeFile File with changes
+	 * @param samples    Measurements
+	 * @throws Exception if the update fails
+	 */
+	private static void runSingle(File isHome, DiscoveredConnection connection, File changeFile, Samples samples)
+			throws Exception {
+		long start = System.nanoTime();
+		ConnectionIndex index = CommandLine.openIndex(isHome);
+		new ConnectionUpdate(connection.getPackageName(), connection.getConnAlias(), changeFile)
+				.apply(new UpdateContext(isHome, index, null), NO_OUTPUT);
+		CommandLine.saveIndex(index);
+		long duration = System.nanoTime() - start;
+		samples.addUpdate(duration);
+		samples.addRun(duration);
+	}
+
+	/**
+	 * Update all connections like batch mode
+	 * 
+	 * @param isHome      Directory of the installation
+	 * @param connections Connections to update
+	 * @param changeFile  File with changes
+	 * @param samples     Measurements
+	 * @throws Exception if an update fails
+	 */
+	private static void runBatch(File isHome, List<DiscoveredConnection> connections, File changeFile,
+			Samples samples) throws Exception {
+		long start = System.nanoTime();
+		List<ConnectionUpdate> updates = new ArrayList<ConnectionUpdate>();
+		for (DiscoveredConnection connection : connections) {
+			updates.add(new TimedUpdate(connection, changeFile, samples));
+		}
+		runPipeline(isHome, updates);
+		samples.addRun(System.nanoTime() - start);
+	}
+
+	/**
+	 * Update all connections that do not yet have the new pool size, like a bulk
+	 * update via selector
+	 * 
+	 * @param isHome     Directory of the installation
+	 * @param changeFile File with changes
+	 * @param poolSize   Pool size set by the file with changes
+	 * @param samples    Measurements
+	 * @throws Exception if an update fails
+	 */
+	private static void runBulk(File isHome, File changeFile, String poolSize, Samples samples) throws Exception {
+		long start = System.nanoTime();
+		ConnectionSelector selector = new ConnectionSelector(ConnectionSelector.KEY_PACKAGE + "="
+				+ SyntheticIsHome.PACKAGE_PREFIX + "* " + ConnectionSelector.KEY_ADAPTER + "="
+				+ SyntheticConnection.ADAPTER_TYPE + " connectionManagerProperties.maximumPoolSize!=" + poolSize);
+		List<ConnectionUpdate> updates = new ArrayList<ConnectionUpdate>();
+		for (DiscoveredConnection connection : selector.select(CommandLine.listConnections(isHome))) {
+			updates.add(new TimedUpdate(connection, changeFile, samples));
+		}
+		runPipeline(isHome, updates);
+		samples.addRun(System.nanoTime() - start);
+	}
+
+	/**
+	 * Apply updates like batch mode, including the connection index
+	 * 
+	 * @param isHome  Directory of the installation
+	 * @param updates Connection updates
+	 * @throws Exception if an update fails
+	 */
+	private static void runPipeline(File isHome, List<ConnectionUpdate> updates) throws Exception {
+		ConnectionIndex index = CommandLine.openIndex(isHome);
+		DirectorySyncGroup syncGroup = new DirectorySyncGroup();
+		for (UpdatePipeline.Result result : new UpdatePipeline(new UpdateContext(isHome, index, syncGroup))
+				.run(updates, NO_OUTPUT)) {
+			if (!result.isSuccess()) {
+				throw new IllegalStateException("Update of " + result.getUpdate() + " failed", result.getError());
+			}
+		}
+		syncGroup.syncAll();
+		CommandLine.saveIndex(index);
+	}
+
+	/**
+	 * Connection update that measures its own duration
+	 */
+	private static class TimedUpdate extends ConnectionUpdate {
+
+		private Samples samples;
+
+		/**
+		 * Initialize
+		 * 
+		 * @param connection Connection to update
+		 * @param changeFile File with changes
+		 * @param samples    Measurements
+		 */
+		TimedUpdate(DiscoveredConnection connection, File changeFile, Samples samples) {
+			super(connection.getPackageName(), connection.getConnAlias(), changeFile);
+			this.samples = samples;
+		}
+
+		@Override
+		public void apply(UpdateContext context, PrintStream out) throws Exception {
+			long start = System.nanoTime();
+			try {
+				super.apply(context, out);
+			} finally {
+				samples.addUpdate(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Measurements of a scenario
+	 */
+	private static class Samples {
+
+		private long[] updates = new long[1024];
+		private int updateCount = 0;
+		private List<Long> runs = new ArrayList<Long>();
+
+		/**
+		 * Record the duration of a single connection update
+		 * 
+		 * @param nanos Duration in nanoseconds
+		 */
+		synchronized void addUpdate(long nanos) {
+			if (updateCount == updates.length) {
+				updates = Arrays.copyOf(updates, updates.length * 2);
+			}
+			updates[updateCount++] = nanos;
+		}
+
+		/**
+		 * Record the duration of a run
+		 * 
+		 * @param nanos Duration in nanoseconds
+		 */
+		synchronized void addRun(long nanos) {
+			runs.add(nanos);
+		}
+
+		/**
+		 * Print a line with the results
+		 * 
+		 * @param scenario        Name of the scenario
+		 * @param connectionCount Number of connections of the installation
+		 * @param runCount        Number of runs
+		 * @param out             Stream for results
+		 */
+		synchronized void print(String scenario, int connectionCount, int runCount, PrintStream out) {
+			long[] sortedUpdates = Arrays.copyOf(updates, updateCount);
+			Arrays.sort(sortedUpdates);
+			long[] sortedRuns = runs.stream().mapToLong(Long::longValue).sorted().toArray();
+			long total = runs.stream().mapToLong(Long::longValue).sum();
+
+			out.println(String.format(Locale.ROOT, "%-8s %11d %5d %8d %12.1f %9.3f %9.3f %9.3f %9.3f %11.3f",
+					scenario, connectionCount, runCount, updateCount, updateCount / (total / 1e9),
+					percentile(sortedUpdates, 0.5), percentile(sortedUpdates, 0.9), percentile(sortedUpdates, 0.99),
+					percentile(sortedUpdates, 1.0), percentile(sortedRuns, 0.5)));
+		}
+
+		/**
+		 * Get a percentile (nearest rank)
+		 * 
+		 * @param sorted   Sorted durations in nanoseconds
+		 * @param quantile Quantile between 0 and 1
+		 * @return percentile in milliseconds, or 0 if there are no durations
+		 */
+		private static double percentile(long[] sorted, double quantile) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(quantile * sorted.length);
+			return sorted[Math.max(0, rank - 1)] / 1e6;
+		}
+	}
+
+}
@@ -30,6 +30,36 @@ rem       webm-is-art-connection-update.bat <PACKAGE_NAME>
 rem                                         <CONNECTION_ALIAS>
 rem                                         <PROPERTY_FILE_WITH_CHANGES>
 rem  
+rem       webm-is-art-connection-update.bat --batch <MANIFEST_FILE>
+rem  
+rem       webm-is-art-connection-update.bat --watch <MANIFEST_FILE>
+rem  
+rem       webm-is-art-connection-update.bat --changes <CHANGE_FILE>
+rem  
+rem       webm-is-art-connection-update.bat --instances all|<INSTANCE_NAMES> --batch <MANIFEST_FILE>
+rem  
+rem       webm-is-art-connection-update.bat --list
+rem  
+rem       webm-is-art-connection-update.bat --select <SELECTOR> [<PROPERTY_FILE_WITH_CHANGES>]
+rem  
+rem       webm-is-art-connection-update.bat --export jsonl|csv <OUTPUT_FILE>
+rem  
+rem       webm-is-art-connection-update.bat --compile-bundle <MANIFEST_FILE> <BUNDLE_DIR>
+rem  
+rem       webm-is-art-connection-update.bat --apply-bundle <BUNDLE_DIR>
+rem  
+rem       webm-is-art-connection-update.bat --list-backups
+rem  
+rem       webm-is-art-connection-update.bat --restore <RUN_ID>
+rem  
+rem       webm-is-art-connection-update.bat --daemon | --stop-daemon
+rem  
+rem       webm-is-art-connection-update.bat --client <PACKAGE_NAME>
+rem                                                  <CONNECTION_ALIAS>
+rem                                                  <PROPERTY_FILE_WITH_CHANGES>
+rem  
+rem       webm-is-art-connection-update.bat --train
+rem  
 rem  
 rem   DESCRIPTION
 rem       This script acts as a convenience wrapper to run the Java prorgam that 
@@ -47,13 +77,21 @@ rem
 rem       JAVA_HOME
 rem            If not set, the JVM that comes with the webMethods Suite will be used.
 rem  
+rem       With --train a class data sharing archive is created next to the JAR
+rem       file. If the archive exists, it is used to speed up the start of the JVM.
+rem       It must be re-created after an update of the JAR file or the JVM.
+rem  
 
 setlocal
 
-rem   Handle missing command line parameters
+rem   Handle missing command line parameters. Options start with "--" and
+rem   are checked by the program, a single update needs three parameters
 if "%1"=="" goto help
-if "%2"=="" goto help
-if "%3"=="" goto help
+set FIRST_ARG=%~1
+if not "%FIRST_ARG:~0,2%"=="--" (
+	if "%~2"=="" goto help
+	if "%~3"=="" goto help
+)
 
 rem   The default installation path for webMethods
 set DEFAULT_PATH=c:\SoftwareAG
@@ -121,13 +159,32 @@ set PATH_LIB_PASSMAN=%PATH_WM_LIBS%\wm-acdl-common.jar;%PATH_WM_LIBS%\wm-scg-sec
 set CLASSPATH="%~dp0\webm-is-art-connection-update.jar;%PATH_LIB_IS_SERVER%;%PATH_LIB_IS_CLIENT%;%PATH_LIB_GF_MAIL%;%PATH_LIB_GF_SOAP%;%PATH_LIB_PASSMAN%"
 
 
-java -classpath "%CLASSPATH%" -DWEBMETHODS_HOME="%WEBMETHODS_HOME%" com.jahntech.webm.is.art.connection.CommandLine "%1" "%2" "%3"
+rem   Use class data sharing archive, if one has been created with --train
+set CDS_ARCHIVE=%~dp0webm-is-art-connection-update.jsa
+set CDS_OPTIONS=
+if exist "%CDS_ARCHIVE%" if not "%1"=="--train" set CDS_OPTIONS=-XX:SharedArchiveFile="%CDS_ARCHIVE%" -Xshare:auto
+
+java %CDS_OPTIONS% -classpath "%CLASSPATH%" -DWEBMETHODS_HOME="%WEBMETHODS_HOME%" -Djtacu.cds.archive="%CDS_ARCHIVE%" com.jahntech.webm.is.art.connection.CommandLine %*
 goto end
 
 :help
 echo Command line parameters are missing.
 echo Usage:
 echo "webm-is-art-connection-update.bat <PACKAGE_NAME> <CONNECTION_ALIAS> <PROPERTY_FILE_WITH_CHANGES>"
+echo "webm-is-art-connection-update.bat --batch <MANIFEST_FILE>"
+echo "webm-is-art-connection-update.bat --watch <MANIFEST_FILE>"
+echo "webm-is-art-connection-update.bat --changes <CHANGE_FILE>"
+echo "webm-is-art-connection-update.bat --instances all|<INSTANCE_NAMES> --batch <MANIFEST_FILE>"
+echo "webm-is-art-connection-update.bat --list"
+echo "webm-is-art-connection-update.bat --select <SELECTOR> [<PROPERTY_FILE_WITH_CHANGES>]"
+echo "webm-is-art-connection-update.bat --export jsonl|csv <OUTPUT_FILE>"
+echo "webm-is-art-connection-update.bat --compile-bundle <MANIFEST_FILE> <BUNDLE_DIR>"
+echo "webm-is-art-connection-update.bat --apply-bundle <BUNDLE_DIR>"
+echo "webm-is-art-connection-update.bat --list-backups"
+echo "webm-is-art-connection-update.bat --restore <RUN_ID>"
+echo "webm-is-art-connection-update.bat --daemon | --stop-daemon"
+echo "webm-is-art-connection-update.bat --client <PACKAGE_NAME> <CONNECTION_ALIAS> <PROPERTY_FILE_WITH_CHANGES>"
+echo "webm-is-art-connection-update.bat --train"
 
 
 :end
@@ -29,6 +29,36 @@
 #                                       <CONNECTION_ALIAS>
 #                                       <PROPERTY_FILE_WITH_CHANGES>
 #
+#     webm-is-art-connection-update.sh  --batch <MANIFEST_FILE>
+#
+#     webm-is-art-connection-update.sh  --watch <MANIFEST_FILE>
+#
+#     webm-is-art-connection-update.sh  --changes <CHANGE_FILE>
+#
+#     webm-is-art-connection-update.sh  --instances all|<INSTANCE_NAMES> --batch <MANIFEST_FILE>
+#
+#     webm-is-art-connection-update.sh  --list
+#
+#     webm-is-art-connection-update.sh  --select <SELECTOR> [<PROPERTY_FILE_WITH_CHANGES>]
+#
+#     webm-is-art-connection-update.sh  --export jsonl|csv <OUTPUT_FILE>
+#
+#     webm-is-art-connection-update.sh  --compile-bundle <MANIFEST_FILE> <BUNDLE_DIR>
+#
+#     webm-is-art-connection-update.sh  --apply-bundle <BUNDLE_DIR>
+#
+#     webm-is-art-connection-update.sh  --list-backups
+#
+#     webm-is-art-connection-update.sh  --restore <RUN_ID>
+#
+#     webm-is-art-connection-update.sh  --daemon | --stop-daemon
+#
+#     webm-is-art-connection-update.sh  --client <PACKAGE_NAME>
+#                                                <CONNECTION_ALIAS>
+#                                                <PROPERTY_FILE_WITH_CHANGES>
+#
+#     webm-is-art-connection-update.sh  --train
+#
 #
 # DESCRIPTION
 #     This script acts as a convenience wrapper to run the Java program that 
@@ -46,6 +76,10 @@
 #     JAVA_HOME
 #          If not set, the JVM that comes with the webMethods Suite will be used.
 #
+#     With --train a class data sharing archive is created next to the JAR
+#     file. If the archive exists, it is used to speed up the start of the JVM.
+#     It must be re-created after an update of the JAR file or the JVM.
+#
 #
 
 
@@ -123,7 +157,15 @@ PATH_LIB_GF_MAIL=$PATH_WM_LIBS/glassfish/gf.jakarta.mail.jar
 PATH_LIB_GF_SOAP=$PATH_WM_LIBS/glassfish/gf.webservices-api-osgi.jar
 PATH_LIB_PASSMAN=$PATH_WM_LIBS/wm-acdl-common.jar:$PATH_WM_LIBS/wm-scg-security.jar:$PATH_WM_LIBS/wm-scg-core.jar:$PATH_WM_LIBS/wm-g11nutils.jar:$PATH_WM_LIBS/wm-scg-audit.jar:$PATH_WM_LIBS/ext/activation.jar:$PATH_WM_LIBS/ext/commons-codec.jar
 
-SCRIPT_PATH=`dirname "$(realpath $0)"`
+SCRIPT_PATH=`dirname "$(realpath "$0")"`
 CLASSPATH="$SCRIPT_PATH/webm-is-art-connection-update.jar:$PATH_LIB_IS_SERVER:$PATH_LIB_IS_CLIENT:$PATH_LIB_GF_MAIL:$PATH_LIB_GF_SOAP:$PATH_LIB_PASSMAN"
 
-java -classpath "$CLASSPATH" -DWEBMETHODS_HOME="$WEBMETHODS_HOME" com.jahntech.webm.is.art.connection.CommandLine $1 $2 $3
+# Use class data sharing archive, if one has been created with --train
+# (the path is passed as a single argument, so it may contain spaces)
+CDS_ARCHIVE="$SCRIPT_PATH/webm-is-art-connection-update.jsa"
+MAIN_CLASS=com.jahntech.webm.is.art.connection.CommandLine
+if [ -f "$CDS_ARCHIVE" ] && [ "$1" != "--train" ]; then
+	java "-XX:SharedArchiveFile=$CDS_ARCHIVE" -Xshare:auto -classpath "$CLASSPATH" -DWEBMETHODS_HOME="$WEBMETHODS_HOME" -Djtacu.cds.archive="$CDS_ARCHIVE" $MAIN_CLASS "$@"
+else
+	java -classpath "$CLASSPATH" -DWEBMETHODS_HOME="$WEBMETHODS_HOME" -Djtacu.cds.archive="$CDS_ARCHIVE" $MAIN_CLASS "$@"
+fi
@@ -0,0 +1,171 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes files in a crash-safe manner. The content is written to a temporary
+ * file in the same directory, synced to disk, and then atomically renamed over
+ * the original file. A process that is killed while writing therefore leaves
+ * either the old or the new file, but never a truncated one. Every write uses a
+ * temporary file of its own, so that concurrent writers do not interfere.
+ * 
+ * <p>
+ * The new file gets the permissions, owner, and group of the file it replaces.
+ * Changing owner and group usually requires root privileges; if that fails, a
+ * warning is printed, since Integration Server may no longer be able to write
+ * the file.
+ * 
+ * <p>
+ * For the rename to be durable, the directory must be synced as well. This can
+ * be deferred to a {@link DirectorySyncGroup}, so that each directory is synced
+ * only once at the end of a batch run.
+ */
+public class AtomicFileWriter {
+
+	private static final String TMP_FILE_SUFFIX = ".jtacu.tmp";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Producer of the file content
+	 */
+	public interface Content {
+
+		/**
+		 * Write the complete file content
+		 * 
+		 * @param out Stream to write to
+		 * @throws IOException if writing fails
+		 */
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Replace a file atomically
+	 * 
+	 * @param target    File to replace (or create)
+	 * @param content   Producer of the new content
+	 * @param syncGroup Group to register the directory for syncing, or
+	 *                  <code>null</code> to sync the directory immediately
+	 * @throws IOException if the file cannot be written; the original file is
+	 *                     unchanged in this case
+	 */
+	public static void write(File target, Content content, DirectorySyncGroup syncGroup) throws IOException {
+		Path targetPath = target.toPath();
+		Path dir = targetPath.toAbsolutePath().getParent();
+		Path tmpPath = createTemporaryFile(dir, target.getName());
+
+		try {
+			try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.WRITE)) {
+				OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+				content.writeTo(out);
+				out.flush();
+				channel.force(true);
+			}
+			copyAttributes(targetPath, tmpPath);
+
+			try {
+				Files.move(tmpPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmpPath);
+		}
+
+		if (syncGroup != null) {
+			syncGroup.add(dir.toFile());
+		} else {
+			DirectorySyncGroup.syncDirectory(dir.toFile());
+		}
+	}
+
+	/**
+	 * Create an empty temporary file with a unique name. Unlike
+	 * {@link Files#createTempFile(Path, String, String)}, the file gets the
+	 * default permissions, which matters if there is no file to copy them from.
+	 * 
+	 * @param dir  Directory for the file
+	 * @param name Name of the file to replace
+	 * @return temporary file
+	 * @throws IOException if the file cannot be created
+	 */
+	private static Path createTemporaryFile(Path dir, String name) throws IOException {
+		while (true) {
+			Path tmpPath = dir.resolve(
+					"." + name + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + TMP_FILE_SUFFIX);
+			try {
+				return Files.createFile(tmpPath);
+			} catch (FileAlreadyExistsException e) {
+				// Try another name
+			}
+		}
+	}
+
+	/**
+	 * Give the new file the same permissions, owner, and group as the one it
+	 * replaces, since the rename would otherwise lose them. Only done on file
+	 * systems with POSIX permissions.
+	 * 
+	 * @param from Original file
+	 * @param to   New file
+	 * @throws IOException if permissions cannot be read or set
+	 */
+	private static void copyAttributes(Path from, Path to) throws IOException {
+		PosixFileAttributeView fromView = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+		if (!Files.exists(from) || fromView == null) {
+			return;
+		}
+		PosixFileAttributes fromAttributes = fromView.readAttributes();
+		PosixFileAttributeView toView = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+		toView.setPermissions(fromAttributes.permissions());
+
+		PosixFileAttributes toAttributes = toView.readAttributes();
+		try {
+			if (!toAttributes.owner().equals(fromAttributes.owner())) {
+				toView.setOwner(fromAttributes.owner());
+			}
+			if (!toAttributes.group().equals(fromAttributes.group())) {
+				toView.setGroup(fromAttributes.group());
+			}
+		} catch (IOException e) {
+			LogSink.println(System.err, LogSink.Level.WARN,
+					"Cannot keep owner " + fromAttributes.owner().getName() + " and group "
+							+ fromAttributes.group().getName() + " of '" + from + "', the file will belong to "
+							+ toAttributes.owner().getName() + " (" + e.getMessage() + ")");
+		}
+	}
+
+}
@@ -0,0 +1,331 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.wm.app.b2b.server.PackageStore;
+
+/**
+ * Content-addressed store for backups of all files changed by the tool. Before
+ * a file is changed for the first time within a run, its content is stored
+ * under its hash, and the file is recorded in the manifest of the run. Identical
+ * versions are only stored once, across all runs. A run can be rolled back with
+ * {@link #restore(String, DirectorySyncGroup, PrintStream)}.
+ * 
+ * <p>
+ * Files are always stored as copies. Other programs, like Integration Server
+ * itself, may modify node.ndf files in place, which would also change a hard
+ * link.
+ * 
+ * <p>
+ * Backups are kept in the directory returned by {@link FileUtils#getToolDir(File)}
+ * and can be disabled with the System property {@value #PROPERTY_ENABLED}.
+ */
+public class BackupStore {
+
+	/**
+	 * System property to disable backups by setting it to <code>false</code>
+	 */
+	public static final String PROPERTY_ENABLED = "jtacu.backup";
+
+	private static final String DIR_BACKUPS = "backups";
+	private static final String DIR_OBJECTS = "objects";
+	private static final String DIR_RUNS = "runs";
+	private static final String RUN_FILE_SUFFIX = ".txt";
+	private static final String FORMAT_HEADER = "# JTACU backup run v1";
+	private static final String SEPARATOR = "\t";
+	private static final String RECORD_FILE = "F";
+	private static final String RECORD_ABSENT = "A";
+	private static final DateTimeFormatter RUN_ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+	private File isHome;
+	private File objectsDir;
+	private File runsDir;
+	private String runId = null;
+
+	/**
+	 * Files already stored within the current run
+	 */
+	private Set<File> backedUp = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Initialize for an Integration Server installation. The run is only
+	 * registered when the first file is stored.
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @throws IOException if the directory for backups cannot be created
+	 */
+	public BackupStore(File isHome) throws IOException {
+		super();
+		this.isHome = isHome;
+		File backupDir = new File(FileUtils.getToolDir(isHome), DIR_BACKUPS);
+		objectsDir = new File(backupDir, DIR_OBJECTS);
+		runsDir = new File(backupDir, DIR_RUNS);
+	}
+
+	/**
+	 * Check whether backups are enabled
+	 * 
+	 * @return <code>true</code> unless disabled via {@value #PROPERTY_ENABLED}
+	 */
+	public static boolean isEnabled() {
+		return !"false".equalsIgnoreCase(System.getProperty(PROPERTY_ENABLED));
+	}
+
+	/**
+	 * Get ID of the current run
+	 * 
+	 * @return run ID or <code>null</code> if no file has been stored yet
+	 */
+	public synchronized String getRunId() {
+		return runId;
+	}
+
+	/**
+	 * Store a file that is about to be changed, unless it was already stored
+	 * within the current run
+	 * 
+	 * @param file File to store
+	 * @throws IOException if the file cannot be stored
+	 */
+	public void backup(File file) throws IOException {
+		File absoluteFile = file.getAbsoluteFile();
+		if (!backedUp.add(absoluteFile)) {
+			return;
+		}
+		String relativePath = isHome.getAbsoluteFile().toPath().relativize(absoluteFile.toPath()).toString()
+				.replace(File.separatorChar, '/');
+
+		if (!absoluteFile.exists()) {
+			record(RECORD_ABSENT + SEPARATOR + relativePath);
+			return;
+		}
+
+		byte[] content = Files.readAllBytes(absoluteFile.toPath());
+		String hash = FileUtils.hash(content);
+		Path object = getObject(hash).toPath();
+		if (!Files.exists(object)) {
+			Files.createDirectories(object.getParent());
+			Path tmp = Files.createTempFile(object.getParent(), object.getFileName() + ".", ".tmp");
+			try {
+				Files.write(tmp, content);
+				try {
+					Files.move(tmp, object, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp, object, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		}
+		record(RECORD_FILE + SEPARATOR + relativePath + SEPARATOR + hash);
+	}
+
+	/**
+	 * Append a record to the manifest of the current run. The manifest is created
+	 * with the first record and written immediately, so that it is complete even if
+	 * the run is aborted.
+	 * 
+	 * @param line Record
+	 * @throws IOException if the manifest cannot be written
+	 */
+	private synchronized void record(String line) throws IOException {
+		if (runId == null) {
+			Files.createDirectories(runsDir.toPath());
+			String id = LocalDateTime.now().format(RUN_ID_FORMAT);
+			String candidate = id;
+			for (int i = 1; !getRunFile(candidate).createNewFile(); i++) {
+				candidate = id + "-" + i;
+			}
+			runId = candidate;
+			Files.write(getRunFile(runId).toPath(), (FORMAT_HEADER + "\n").getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.APPEND);
+		}
+		Files.write(getRunFile(runId).toPath(), (line + "\n").getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Get IDs of all runs with backups
+	 * 
+	 * @return run IDs, oldest first
+	 */
+	public List<String> getRunIds() {
+		List<String> runIds = new ArrayList<String>();
+		File[] runFiles = runsDir.listFiles((dir, name) -> name.endsWith(RUN_FILE_SUFFIX));
+		if (runFiles != null) {
+			for (File runFile : runFiles) {
+				String name = runFile.getName();
+				runIds.add(name.substring(0, name.length() - RUN_FILE_SUFFIX.length()));
+			}
+		}
+		Collections.sort(runIds);
+		return runIds;
+	}
+
+	/**
+	 * Get the paths of the files stored by a run
+	 * 
+	 * @param runId Run ID
+	 * @return paths relative to the Integration Server home directory
+	 * @throws IOException if the manifest of the run cannot be read
+	 */
+	public List<String> getFiles(String runId) throws IOException {
+		List<String> files = new ArrayList<String>();
+		for (String[] record : readRun(runId)) {
+			files.add(record[1]);
+		}
+		return files;
+	}
+
+	/**
+	 * Restore all files to the state before a run. Each file is replaced
+	 * atomically while holding its lock from {@link FileLocks}, so that other
+	 * processes of this tool do not write it at the same time. Files that did not
+	 * exist before the run are deleted. Integration Server must not be running.
+	 * 
+	 * @param runId     Run ID
+	 * @param syncGroup Group for deferred directory syncs, may be
+	 *                  <code>null</code> to sync immediately
+	 * @param out       Stream for messages
+	 * @return number of files that could not be restored
+	 * @throws IOException if the manifest of the run cannot be read
+	 */
+	public int restore(String runId, DirectorySyncGroup syncGroup, PrintStream out) throws IOException {
+		int failures = 0;
+		for (String[] record : readRun(runId)) {
+			File target = new File(isHome, record[1]);
+			try {
+				FileLocks.Handle lock = lock(target);
+				try {
+					if (record[0].equals(RECORD_ABSENT)) {
+						Files.deleteIfExists(target.toPath());
+						out.println("Deleted " + record[1]);
+					} else {
+						Path object = getObject(record[2]).toPath();
+						byte[] content = Files.readAllBytes(object);
+						if (!FileUtils.hash(content).equals(record[2])) {
+							throw new IOException("Backup of '" + record[1] + "' is damaged");
+						}
+						AtomicFileWriter.write(target, stream -> stream.write(content), syncGroup);
+						out.println("Restored " + record[1]);
+					}
+				} finally {
+					lock.close();
+				}
+			} catch (IOException e) {
+				out.println("Cannot restore " + record[1] + " : " + e.getMessage());
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Acquire the lock for a file. node.ndf files in the namespace directory of a
+	 * package are protected by the lock of their connection, all other files
+	 * belong to the data store of PassMan.
+	 * 
+	 * @param file File to be restored
+	 * @return lock, to be closed when the file has been restored
+	 * @throws IOException if the lock file cannot be locked
+	 */
+	private FileLocks.Handle lock(File file) throws IOException {
+		Path path = file.getAbsoluteFile().toPath();
+		Path packagesDir = ConnectionDiscovery.getPackagesDir(isHome).getAbsoluteFile().toPath();
+		if (path.startsWith(packagesDir) && path.getNameCount() > packagesDir.getNameCount() + 1
+				&& path.getFileName().toString().equals(PackageStore.NDF_FILE)) {
+			String pkgName = path.getName(packagesDir.getNameCount()).toString();
+			Path nsDir = ConnectionDiscovery.getNamespaceDir(isHome, pkgName).getAbsoluteFile().toPath();
+			if (path.getParent().startsWith(nsDir) && !path.getParent().equals(nsDir)) {
+				String relativePath = nsDir.relativize(path.getParent()).toString().replace(File.separatorChar, '/');
+				return FileLocks.lockConnection(isHome,
+						ConnectionDiscovery.convertRelativePathToConnectionAlias(relativePath));
+			}
+		}
+		return FileLocks.lockPassMan(isHome);
+	}
+
+	/**
+	 * Read the manifest of a run
+	 * 
+	 * @param runId Run ID
+	 * @return records, each split into its columns
+	 * @throws IOException if the manifest cannot be read
+	 */
+	private List<String[]> readRun(String runId) throws IOException {
+		File runFile = getRunFile(runId);
+		if (!runFile.exists()) {
+			throw new IllegalArgumentException("No backup found for run '" + runId + "'");
+		}
+		List<String[]> records = new ArrayList<String[]>();
+		try (BufferedReader reader = Files.newBufferedReader(runFile.toPath(), StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (!FORMAT_HEADER.equals(line)) {
+				throw new IOException("Unsupported format of backup run '" + runId + "'");
+			}
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					records.add(line.split(SEPARATOR, -1));
+				}
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Get the location of a stored file content. Contents are spread over
+	 * sub-directories by the first two characters of their hash.
+	 * 
+	 * @param hash Hash of the content
+	 * @return file with the content
+	 */
+	private File getObject(String hash) {
+		return new File(new File(objectsDir, hash.substring(0, 2)), hash);
+	}
+
+	/**
+	 * Get the manifest file of a run
+	 * 
+	 * @param runId Run ID
+	 * @return manifest file
+	 */
+	private File getRunFile(String runId) {
+		return new File(runsDir, runId + RUN_FILE_SUFFIX);
+	}
+
+}
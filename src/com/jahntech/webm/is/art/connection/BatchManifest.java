@@ -0,0 +1,125 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Manifest for batch mode. It lists any number of connection updates that are
+ * applied within a single run of the program. The format is line-based, with
+ * each line holding (1) the package name, (2) the connection alias, and (3) the
+ * path to the file that contains the changes, separated by whitespace. An
+ * optional fourth column restricts the line to a comma-separated list of
+ * Integration Server instances; it only has an effect if several instances are
+ * updated in one run (see {@link MultiInstanceUpdate}). Empty lines and lines
+ * starting with '#' are ignored. Relative paths for change files are resolved
+ * against the directory of the manifest.
+ * 
+ * <pre>
+ * # package        connection alias                change file          instances
+ * MyPkgConnections myPkg.connections:jdbcMain      jdbcMain.conf
+ * MyPkgConnections myPkg.connections:jmsOutbound   /etc/jtacu/jms.conf  default,is2
+ * </pre>
+ */
+public class BatchManifest {
+
+	private static final String COMMENT_PREFIX = "#";
+	private static final int NUMBER_OF_COLUMNS = 3;
+
+	private File manifestFile;
+	private List<ConnectionUpdate> updates = new ArrayList<ConnectionUpdate>();
+
+	/**
+	 * Initialize by reading the manifest file
+	 * 
+	 * @param manifestFile File with the list of connection updates
+	 * @throws IOException              if the manifest cannot be read
+	 * @throws IllegalArgumentException if the manifest does not exist or contains
+	 *                                  invalid lines
+	 */
+	public BatchManifest(File manifestFile) throws IOException, IllegalArgumentException {
+		super();
+		this.manifestFile = manifestFile;
+
+		if (!manifestFile.exists()) {
+			throw new IllegalArgumentException(
+					"Manifest file '" + FileUtils.getCanonicalPathWithFallback(manifestFile) + "' does not exist");
+		}
+		read();
+	}
+
+	/**
+	 * Parse all lines of the manifest
+	 * 
+	 * @throws IOException if the manifest cannot be read
+	 */
+	private void read() throws IOException {
+		File baseDir = manifestFile.getAbsoluteFile().getParentFile();
+
+		try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) {
+					continue;
+				}
+
+				String[] columns = line.split("\\s+");
+				if (columns.length != NUMBER_OF_COLUMNS && columns.length != NUMBER_OF_COLUMNS + 1) {
+					throw new IllegalArgumentException("Line " + lineNumber + " of manifest '"
+							+ FileUtils.getCanonicalPathWithFallback(manifestFile) + "' must contain "
+							+ NUMBER_OF_COLUMNS
+							+ " columns (package, connection alias, change file) and optionally the instances, but has "
+							+ columns.length);
+				}
+
+				File changePropsFile = new File(columns[2]);
+				if (!changePropsFile.isAbsolute()) {
+					changePropsFile = new File(baseDir, columns[2]);
+				}
+				ConnectionUpdate update = new ConnectionUpdate(columns[0], columns[1], changePropsFile);
+				if (columns.length > NUMBER_OF_COLUMNS) {
+					update.setInstances(new LinkedHashSet<String>(Arrays.asList(columns[NUMBER_OF_COLUMNS].split(","))));
+				}
+				updates.add(update);
+			}
+		}
+	}
+
+	/**
+	 * Get all connection updates in the order they appear in the manifest
+	 * 
+	 * @return connection updates
+	 */
+	public List<ConnectionUpdate> getUpdates() {
+		return updates;
+	}
+
+}
@@ -0,0 +1,180 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.webmethods.deployer.common.cipher.CipherUtil;
+import com.webmethods.sc.security.passman.impl.PassManFactory;
+import com.wm.app.b2b.server.OutboundPasswordManager;
+import com.wm.app.b2b.server.Resources;
+import com.wm.app.b2b.server.util.security.OPMConfig;
+import com.wm.util.security.WmSecureString;
+
+/**
+ * Creates an Application Class Data Sharing (AppCDS) archive, which
+ * considerably reduces JVM start-up time, since most of the time of a run is
+ * spent loading classes from the large webMethods libraries.
+ * 
+ * <p>
+ * Creating the archive involves two additional JVMs that are started with the
+ * same class path as the current one: the first performs a training run
+ * against a synthetic Integration Server installation and records all loaded
+ * classes; the second dumps these classes into the archive. The launcher
+ * scripts use the archive automatically if it exists.
+ */
+public class CdsTraining {
+
+	/**
+	 * System property for the location of the archive
+	 */
+	public static final String PROPERTY_ARCHIVE = "jtacu.cds.archive";
+
+	/**
+	 * Default location of the archive, if {@value #PROPERTY_ARCHIVE} is not set
+	 */
+	public static final String DEFAULT_ARCHIVE = "webm-is-art-connection-update.jsa";
+
+	/**
+	 * System property that marks the JVM performing the training run
+	 */
+	static final String PROPERTY_TRAINING_RUN = "jtacu.cds.trainingRun";
+
+	private static final int TRAINING_PACKAGES = 4;
+	private static final int TRAINING_CONNECTIONS_PER_PACKAGE = 5;
+
+	/**
+	 * Create the archive, or perform the training run if this JVM was started for
+	 * it
+	 * 
+	 * @param out Stream for messages
+	 * @return exit code
+	 * @throws Exception if the archive cannot be created
+	 */
+	public static int run(PrintStream out) throws Exception {
+		if (Boolean.getBoolean(PROPERTY_TRAINING_RUN)) {
+			performTrainingRun(out);
+			return 0;
+		}
+
+		File archive = new File(System.getProperty(PROPERTY_ARCHIVE, DEFAULT_ARCHIVE)).getAbsoluteFile();
+		File classList = new File(archive.getParentFile(), archive.getName() + ".classlist");
+		try {
+			out.println("Performing training run");
+			int exitCode = runJava(out, "-XX:DumpLoadedClassList=" + classList.getPath(),
+					"-D" + PROPERTY_TRAINING_RUN + "=true", CommandLine.class.getName(), CommandLine.OPTION_TRAIN);
+			if (exitCode != 0) {
+				out.println("Training run failed with exit code " + exitCode);
+				return exitCode;
+			}
+
+			out.println("Creating class data sharing archive " + archive.getPath());
+			exitCode = runJava(out, "-Xshare:dump", "-XX:SharedClassListFile=" + classList.getPath(),
+					"-XX:SharedArchiveFile=" + archive.getPath());
+			if (exitCode != 0) {
+				out.println("Creating archive failed with exit code " + exitCode);
+			}
+			return exitCode;
+		} finally {
+			Files.deleteIfExists(classList.toPath());
+		}
+	}
+
+	/**
+	 * Start another JVM with the class path of the current one and wait for it to
+	 * finish. Its output is passed through.
+	 * 
+	 * @param out       Stream for messages
+	 * @param arguments JVM options and arguments
+	 * @return exit code
+	 * @throws IOException          if the JVM cannot be started
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static int runJava(PrintStream out, String... arguments) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-classpath");
+		command.add(System.getProperty("java.class.path"));
+		for (String argument : arguments) {
+			command.add(argument);
+		}
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		process.getInputStream().transferTo(out);
+		return process.waitFor();
+	}
+
+	/**
+	 * Exercise all code paths of a typical run against a synthetic Integration
+	 * Server installation, so that the respective classes get loaded. PassMan is
+	 * not initialized, since that requires a real installation, but its classes
+	 * are loaded.
+	 * 
+	 * @param out Stream for messages
+	 * @throws Exception if the training run fails
+	 */
+	static void performTrainingRun(PrintStream out) throws Exception {
+		Path wmHome = Files.createTempDirectory("jtacu-training");
+		try {
+			File changePropsFile = wmHome.resolve("training-change.conf").toFile();
+			Files.write(changePropsFile.toPath(),
+					"connectionProperties.serverName=db-training.example.com\nconnectionEnabled=false\n"
+							.getBytes(StandardCharsets.UTF_8));
+
+			SyntheticIsHome synthetic = SyntheticIsHome.create(wmHome.toFile(), "default",
+					TRAINING_PACKAGES * TRAINING_CONNECTIONS_PER_PACKAGE, TRAINING_CONNECTIONS_PER_PACKAGE, 256);
+			File isHome = synthetic.getIsHome();
+			List<ConnectionUpdate> updates = new ArrayList<ConnectionUpdate>();
+			for (DiscoveredConnection connection : synthetic.getConnections()) {
+				updates.add(new ConnectionUpdate(connection.getPackageName(), connection.getConnAlias(),
+						changePropsFile));
+			}
+
+			ConnectionIndex index = new ConnectionIndex(isHome);
+			index.refresh();
+			DirectorySyncGroup syncGroup = new DirectorySyncGroup();
+			for (UpdatePipeline.Result result : new UpdatePipeline(new UpdateContext(isHome, index,
+					syncGroup)).run(updates, new PrintStream(PrintStream.nullOutputStream()))) {
+				if (!result.isSuccess()) {
+					throw new IllegalStateException("Training update failed", result.getError());
+				}
+			}
+			syncGroup.syncAll();
+			index.save();
+			new ConnectionDiscovery(isHome).discover();
+
+			// Load, but do not initialize, the classes needed for password handling
+			Class<?>[] passManClasses = { PassManFactory.class, OutboundPasswordManager.class, Resources.class,
+					OPMConfig.class, CipherUtil.class, WmSecureString.class, PassManSession.class };
+			out.println("Training run updated " + updates.size() + " connections and loaded "
+					+ passManClasses.length + " classes for PassMan");
+		} finally {
+			SyntheticIsHome.delete(wmHome.toFile());
+		}
+	}
+
+}
@@ -0,0 +1,340 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Compiled form of the changes for a connection. The setting paths (e.g.
+ * "connectionProperties.serverName") are split once and arranged as a tree, so
+ * that {@link ConnectionDetails#update(ChangeSet)} can apply all changes in a
+ * single traversal of the connection details, resolving each intermediate level
+ * only once. A change set does not hold any state of a particular connection
+ * and can therefore be applied to any number of connections.
+ * 
+ * <p>
+ * The password ({@value CommandLine#KEY_PASSWORD}) is not part of the tree,
+ * since it is not stored in the connection details.
+ */
+public class ChangeSet {
+
+	private Node root = new Node(null, null);
+	private String password = null;
+	private int settingsCount = 0;
+	private String key;
+
+	/**
+	 * Compile the changes
+	 * 
+	 * @param changes New values by setting path, with path elements separated by a
+	 *                single dot ("."); the iteration order is the order in which
+	 *                changes are applied
+	 * @throws IllegalArgumentException if a path is empty or is used both for a
+	 *                                  value and as a prefix of another path
+	 */
+	public ChangeSet(Map<String, String> changes) throws IllegalArgumentException {
+		super();
+		StringBuilder keySource = new StringBuilder();
+		for (Map.Entry<String, String> change : changes.entrySet()) {
+			String path = change.getKey();
+			if (path == null || path.isEmpty()) {
+				throw new IllegalArgumentException("Setting path must neither be null nor an empty string");
+			}
+
+			if (path.equals(CommandLine.KEY_PASSWORD)) {
+				password = change.getValue();
+			} else {
+				add(path, change.getValue());
+				keySource.append(path).append('\0').append(change.getValue()).append('\0');
+			}
+		}
+		key = FileUtils.hash(keySource.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Load and compile the changes from a properties file. The changes are applied
+	 * in the order of the file. If a setting occurs more than once, the last value
+	 * is used, at the position of the first occurrence.
+	 * 
+	 * @param changePropsFile File that contains the changes
+	 * @return compiled changes
+	 * @throws IOException if the file cannot be read
+	 */
+	public static ChangeSet load(File changePropsFile) throws IOException {
+		try (InputStream in = new FileInputStream(changePropsFile)) {
+			return load(in);
+		}
+	}
+
+	/**
+	 * Load and compile the changes in properties format from a stream, like
+	 * {@link #load(File)}
+	 * 
+	 * @param in Stream with the changes; it is not closed
+	 * @return compiled changes
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static ChangeSet load(InputStream in) throws IOException {
+		return new ChangeSet(readChanges(in));
+	}
+
+	/**
+	 * Read the changes in properties format from a file without compiling them,
+	 * e.g. to compare different versions of the file
+	 * 
+	 * @param changePropsFile File that contains the changes
+	 * @return new values by setting path, in the order of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Map<String, String> readChanges(File changePropsFile) throws IOException {
+		try (InputStream in = new FileInputStream(changePropsFile)) {
+			return readChanges(in);
+		}
+	}
+
+	/**
+	 * Read the changes in properties format from a stream without compiling them
+	 * 
+	 * @param in Stream with the changes; it is not closed
+	 * @return new values by setting path, in the order of the stream
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static Map<String, String> readChanges(InputStream in) throws IOException {
+		// Properties itself does not preserve the order, so every entry is recorded
+		// while parsing
+		Map<String, String> changes = new LinkedHashMap<String, String>();
+		Properties changeProperties = new Properties() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public synchronized Object put(Object key, Object value) {
+				changes.put((String) key, (String) value);
+				return super.put(key, value);
+			}
+		};
+		changeProperties.load(in);
+		return changes;
+	}
+
+	/**
+	 * Add a single change to the tree
+	 * 
+	 * @param path  Setting path
+	 * @param value New value
+	 */
+	private void add(String path, String value) {
+		String[] pathParts = path.split("\\.");
+		Node node = root;
+		for (int i = 0; i < pathParts.length; i++) {
+			if (node.isLeaf()) {
+				throw new IllegalArgumentException("Setting path '" + path + "' conflicts with setting '"
+						+ node.path + "', which cannot have sub-elements");
+			}
+			Node child = node.children.get(pathParts[i]);
+			if (child == null) {
+				child = new Node(pathParts[i], i == pathParts.length - 1 ? path : null);
+				node.children.put(pathParts[i], child);
+			} else if (i == pathParts.length - 1 && !child.isLeaf()) {
+				throw new IllegalArgumentException(
+						"Setting path '" + path + "' is also used as a prefix of other settings");
+			}
+			node = child;
+		}
+		if (node.value == null) {
+			settingsCount++;
+		}
+		node.value = value;
+	}
+
+	/**
+	 * Get new password
+	 * 
+	 * @return new password or <code>null</code> if the password is not changed
+	 */
+	public String getPassword() {
+		return password;
+	}
+
+	/**
+	 * Get number of settings to change, not including the password
+	 * 
+	 * @return number of settings
+	 */
+	public int getSettingsCount() {
+		return settingsCount;
+	}
+
+	/**
+	 * Get a key that identifies the changes to the connection details. Change sets
+	 * with the same settings in the same order have the same key, regardless of
+	 * where they were loaded from. The password is not part of the key.
+	 * 
+	 * @return hash of the settings and their values
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Get root of the tree
+	 * 
+	 * @return root node, which itself has neither name nor value
+	 */
+	Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * Element of a setting path. Leaf nodes hold the new value, all others the
+	 * next path elements.
+	 */
+	static class Node {
+
+		private String name;
+		private String path;
+		private String value = null;
+		private Map<String, Node> children = new LinkedHashMap<String, Node>();
+
+		/**
+		 * Initialize node
+		 * 
+		 * @param name Name of the path element
+		 * @param path Complete setting path for leaf nodes, <code>null</code>
+		 *             otherwise
+		 */
+		Node(String name, String path) {
+			this.name = name;
+			this.path = path;
+		}
+
+		/**
+		 * Check whether node holds a value
+		 * 
+		 * @return <code>true</code> for leaf nodes
+		 */
+		boolean isLeaf() {
+			return path != null;
+		}
+
+		/**
+		 * Get name of path element
+		 * 
+		 * @return name
+		 */
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * Get complete setting path
+		 * 
+		 * @return setting path for leaf nodes, <code>null</code> otherwise
+		 */
+		String getPath() {
+			return path;
+		}
+
+		/**
+		 * Get new value
+		 * 
+		 * @return new value for leaf nodes
+		 */
+		String getValue() {
+			return value;
+		}
+
+		/**
+		 * Get next path elements
+		 * 
+		 * @return child nodes, in the order they were added
+		 */
+		Iterable<Node> getChildren() {
+			return children.values();
+		}
+	}
+
+	/**
+	 * Outcome of applying a single setting to a connection
+	 */
+	public static class SettingChange {
+
+		private String path;
+		private String oldValue;
+		private String newValue;
+
+		/**
+		 * Initialize with outcome
+		 * 
+		 * @param path     Setting path
+		 * @param oldValue Value before the change
+		 * @param newValue Value after the change
+		 */
+		SettingChange(String path, String oldValue, String newValue) {
+			this.path = path;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+
+		/**
+		 * Get setting path
+		 * 
+		 * @return path of the setting
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Get value before the change
+		 * 
+		 * @return old value
+		 */
+		public String getOldValue() {
+			return oldValue;
+		}
+
+		/**
+		 * Get value after the change
+		 * 
+		 * @return new value
+		 */
+		public String getNewValue() {
+			return newValue;
+		}
+
+		/**
+		 * Check whether the value actually changed
+		 * 
+		 * @return <code>true</code> if old and new value differ
+		 */
+		public boolean isChanged() {
+			return oldValue == null ? newValue != null : !oldValue.equals(newValue);
+		}
+	}
+
+}
@@ -0,0 +1,266 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the files with changes of a batch manifest and applies edits as soon
+ * as they are saved. Only the settings whose values differ from the last
+ * applied version of a file are applied, and the password only if it was
+ * changed. The effort for an edit is therefore independent of the size of the
+ * installation.
+ * 
+ * <p>
+ * Editors often save a file in several steps. Events are therefore collected
+ * until no further event has arrived for the time given by the System property
+ * {@value #PROPERTY_DEBOUNCE_MILLIS} (default {@value #DEFAULT_DEBOUNCE_MILLIS}
+ * milliseconds). Settings that are removed from a file keep their current value
+ * in the connection.
+ */
+public class ChangeWatcher {
+
+	/**
+	 * System property for the quiet period in milliseconds before changes are
+	 * applied
+	 */
+	public static final String PROPERTY_DEBOUNCE_MILLIS = "jtacu.watch.debounceMillis";
+
+	/**
+	 * Default quiet period in milliseconds
+	 */
+	public static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+	private UpdateContext context;
+	private long debounceMillis;
+
+	/**
+	 * Connection updates by file with changes (absolute path), in the order of the
+	 * manifest
+	 */
+	private Map<Path, List<ConnectionUpdate>> updatesByFile = new LinkedHashMap<Path, List<ConnectionUpdate>>();
+
+	/**
+	 * Last applied version of each file with changes
+	 */
+	private Map<Path, Map<String, String>> applied = new HashMap<Path, Map<String, String>>();
+
+	/**
+	 * Initialize with the connection updates to watch
+	 * 
+	 * @param context Context of the Integration Server installation
+	 * @param updates Connection updates, each with a file that contains the
+	 *                changes
+	 */
+	public ChangeWatcher(UpdateContext context, List<ConnectionUpdate> updates) {
+		super();
+		this.context = context;
+		debounceMillis = Long.getLong(PROPERTY_DEBOUNCE_MILLIS, DEFAULT_DEBOUNCE_MILLIS);
+		for (ConnectionUpdate update : updates) {
+			Path file = update.getChangePropsFile().toPath().toAbsolutePath().normalize();
+			updatesByFile.computeIfAbsent(file, f -> new ArrayList<ConnectionUpdate>()).add(update);
+		}
+	}
+
+	/**
+	 * Apply all files with changes once and then watch them until the thread is
+	 * interrupted or the JVM is stopped
+	 * 
+	 * @param out Stream for messages
+	 * @throws IOException          if the directories cannot be watched
+	 * @throws InterruptedException if interrupted while waiting for changes
+	 */
+	public void run(PrintStream out) throws IOException, InterruptedException {
+		try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+			Set<Path> dirs = new TreeSet<Path>();
+			for (Path file : updatesByFile.keySet()) {
+				dirs.add(file.getParent());
+			}
+			for (Path dir : dirs) {
+				dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			}
+
+			apply(updatesByFile.keySet(), out);
+			out.println("Watching " + updatesByFile.size() + " file(s) with changes in " + dirs.size()
+					+ " directory(ies), press Ctrl+C to stop");
+
+			while (true) {
+				Set<Path> changed = new TreeSet<Path>();
+				collect(watchService.take(), changed);
+				WatchKey key;
+				while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+					collect(key, changed);
+				}
+				if (!changed.isEmpty()) {
+					apply(changed, out);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collect the watched files affected by the events of a key
+	 * 
+	 * @param key     Signalled key
+	 * @param changed Collected files
+	 */
+	private void collect(WatchKey key, Set<Path> changed) {
+		Path dir = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// Events were lost, so all files are checked
+				changed.addAll(updatesByFile.keySet());
+			} else {
+				Path file = dir.resolve((Path) event.context());
+				if (updatesByFile.containsKey(file)) {
+					changed.add(file);
+				}
+			}
+		}
+		key.reset();
+	}
+
+	/**
+	 * Apply the changed settings of the specified files to all connections that
+	 * use them
+	 * 
+	 * @param files Files with changes
+	 * @param out   Stream for messages
+	 * @throws IOException          if the backup store cannot be created
+	 * @throws InterruptedException if interrupted while applying
+	 */
+	private void apply(Collection<Path> files, PrintStream out) throws IOException, InterruptedException {
+		Map<Path, Map<String, String>> versions = new LinkedHashMap<Path, Map<String, String>>();
+		Map<Path, Boolean> success = new HashMap<Path, Boolean>();
+		List<ConnectionUpdate> deltaUpdates = new ArrayList<ConnectionUpdate>();
+		Map<ConnectionUpdate, Path> fileByUpdate = new HashMap<ConnectionUpdate, Path>();
+
+		for (Path file : files) {
+			Map<String, String> current;
+			try {
+				current = ChangeSet.readChanges(file.toFile());
+			} catch (IOException e) {
+				// The file may be in the middle of being replaced; the next event
+				// triggers another attempt
+				out.println("Cannot read file '" + file + "' : " + e.getMessage());
+				continue;
+			}
+
+			Map<String, String> delta = getDelta(applied.getOrDefault(file, Collections.emptyMap()), current, file,
+					out);
+			versions.put(file, current);
+			success.put(file, true);
+			if (delta.isEmpty()) {
+				continue;
+			}
+
+			ChangeSet changeSet;
+			try {
+				changeSet = new ChangeSet(delta);
+			} catch (IllegalArgumentException e) {
+				out.println("Invalid file '" + file + "' : " + e.getMessage());
+				success.put(file, false);
+				continue;
+			}
+			for (ConnectionUpdate update : updatesByFile.get(file)) {
+				ConnectionUpdate deltaUpdate = new ConnectionUpdate(update.getPackageName(), update.getConnAlias(),
+						changeSet);
+				deltaUpdates.add(deltaUpdate);
+				fileByUpdate.put(deltaUpdate, file);
+			}
+		}
+
+		for (UpdatePipeline.Result result : new UpdatePipeline(context).run(deltaUpdates, out)) {
+			if (!result.isSuccess()) {
+				success.put(fileByUpdate.get(result.getUpdate()), false);
+			}
+		}
+		context.getSyncGroup().syncAll();
+		CommandLine.saveIndex(context.getIndex());
+
+		Map<String, Boolean> passwordResults = CommandLine.storeQueuedPasswords(context, out);
+		for (ConnectionUpdate update : deltaUpdates) {
+			if (Boolean.FALSE.equals(passwordResults.get(PassManSession.getHandle(update.getConnAlias())))) {
+				success.put(fileByUpdate.get(update), false);
+			}
+		}
+
+		// Only successfully applied versions become the new baseline, so that failed
+		// settings are retried with the next edit
+		for (Map.Entry<Path, Map<String, String>> version : versions.entrySet()) {
+			if (success.get(version.getKey())) {
+				applied.put(version.getKey(), version.getValue());
+			}
+		}
+		if (!deltaUpdates.isEmpty()) {
+			out.println();
+			out.println("Applied changes to " + deltaUpdates.size() + " connection(s)");
+			CommandLine.printBackupRun(context, out);
+		}
+	}
+
+	/**
+	 * Determine the settings whose values differ from the previous version
+	 * 
+	 * @param previous Last applied version
+	 * @param current  Current version
+	 * @param file     File with changes, for messages
+	 * @param out      Stream for messages
+	 * @return changed and added settings, in the order of the file
+	 */
+	static Map<String, String> getDelta(Map<String, String> previous, Map<String, String> current, Path file,
+			PrintStream out) {
+		Map<String, String> delta = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, String> setting : current.entrySet()) {
+			if (!Objects.equals(previous.get(setting.getKey()), setting.getValue())) {
+				delta.put(setting.getKey(), setting.getValue());
+			}
+		}
+		for (String path : previous.keySet()) {
+			if (!current.containsKey(path)) {
+				out.println("Setting " + path + " was removed from file '" + file + "', current value is kept");
+			}
+		}
+		if (!delta.isEmpty()) {
+			out.println();
+			out.println("File '" + file + "' has " + delta.size() + " changed setting(s)");
+		}
+		return delta;
+	}
+
+}
@@ -20,9 +20,19 @@
 package com.jahntech.webm.is.art.connection;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.util.Enumeration;
-import java.util.Properties;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Handles invoking the actual logic from the command line
@@ -41,14 +51,142 @@ public class CommandLine {
 	 */
 	public static final String KEY_PASSWORD = "connectionProperties.password";
 
+	/**
+	 * Command line option to run in batch mode, followed by the path to the
+	 * manifest file (see {@link BatchManifest})
+	 */
+	public static final String OPTION_BATCH = "--batch";
+
+	/**
+	 * Command line option to apply a file with sections of changes for any number
+	 * of connections, followed by the file (see {@link SectionedChangeFile})
+	 */
+	public static final String OPTION_CHANGES = "--changes";
+
+	/**
+	 * Command line option to list all ART adapter connections found in the
+	 * Integration Server installation (see {@link ConnectionDiscovery})
+	 */
+	public static final String OPTION_LIST = "--list";
+
+	/**
+	 * Command line option to watch the files with changes of a batch manifest and
+	 * apply edits immediately, followed by the manifest file (see
+	 * {@link ChangeWatcher})
+	 */
+	public static final String OPTION_WATCH = "--watch";
+
+	/**
+	 * Command line option to run as a daemon that accepts update requests (see
+	 * {@link Daemon})
+	 */
+	public static final String OPTION_DAEMON = "--daemon";
+
+	/**
+	 * Command line option to forward an update to a running daemon, followed by
+	 * package name, connection alias, and file with changes (see
+	 * {@link DaemonClient})
+	 */
+	public static final String OPTION_CLIENT = "--client";
+
+	/**
+	 * Command line option to stop a running daemon
+	 */
+	public static final String OPTION_STOP_DAEMON = "--stop-daemon";
+
+	/**
+	 * Command line option to export the settings of all connections, followed by
+	 * the format and the output file (see {@link ConnectionExport})
+	 */
+	public static final String OPTION_EXPORT = "--export";
+
+	/**
+	 * Command line option to create a deployment bundle, followed by a manifest
+	 * file and the bundle directory (see {@link DeploymentBundle})
+	 */
+	public static final String OPTION_COMPILE_BUNDLE = "--compile-bundle";
+
+	/**
+	 * Command line option to apply a deployment bundle, followed by the bundle
+	 * directory (see {@link DeploymentBundle})
+	 */
+	public static final String OPTION_APPLY_BUNDLE = "--apply-bundle";
+
+	/**
+	 * Command line option to list all backup runs
+	 */
+	public static final String OPTION_LIST_BACKUPS = "--list-backups";
+
+	/**
+	 * Command line option to restore all files changed by a run, followed by the
+	 * run ID (see {@link BackupStore})
+	 */
+	public static final String OPTION_RESTORE = "--restore";
+
+	/**
+	 * Command line option to select connections by criteria, followed by the
+	 * selector (see {@link ConnectionSelector}) and optionally a file with changes
+	 * that is applied to all selected connections
+	 */
+	public static final String OPTION_SELECT = "--select";
+
+	/**
+	 * Command line option to update several instances of Integration Server
+	 * classic in one run, followed by the comma-separated instance names (or
+	 * {@value IntegrationServerHome#ALL_INSTANCES}) and the arguments for a single
+	 * update or batch mode (see {@link MultiInstanceUpdate})
+	 */
+	public static final String OPTION_INSTANCES = "--instances";
+
+	/**
+	 * Command line option to create a class data sharing archive for faster
+	 * start-up (see {@link CdsTraining})
+	 */
+	public static final String OPTION_TRAIN = "--train";
+
+	/**
+	 * Exit code if the run succeeded
+	 */
+	public static final int EXIT_CODE_SUCCESS = 0;
+
+	/**
+	 * Exit code if the command line arguments are invalid
+	 */
+	public static final int EXIT_CODE_WRONG_ARGUMENTS = 1;
+
+	/**
+	 * Exit code if the update failed or, in batch mode, at least one connection
+	 * update failed
+	 */
+	public static final int EXIT_CODE_UPDATE_FAILED = 2;
+
+	/**
+	 * Message at the end of every run that may have changed connections or
+	 * passwords
+	 */
+	private static final String MESSAGE_RESTART = "Passwords are stored in PassMan; if IntegrationServer is running right now, it must be restarted for the change to take effect";
+
+	/**
+	 * Commands by their option, in the order they are listed in the usage message
+	 */
+	private static final Map<String, Command> COMMANDS = createCommands();
+
 	/**
 	 * Main orchestration logic
 	 * 
 	 * @param args Directory for node.ndf, connection namespace, and file with
-	 *             changes
+	 *             changes; or one of the options and its arguments
 	 */
 	public static void main(String[] args) {
 
+		// All messages are written asynchronously from here on
+		try {
+			LogSink.install();
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(EXIT_CODE_WRONG_ARGUMENTS);
+		}
+
 		System.out.println("Updater for webMethods Integration Server ART adapter connections");
 		System.out.println("  Copyright 2024 by JahnTech, Inh. Christoph Jahn (info@jahntech.com)");
 		System.out.println("  For project details go to " + URL_PROJECT_HOME);
@@ -57,62 +195,595 @@ public class CommandLine {
 		// it has no impact on the execution of the program
 		String currentDir = System.getProperty("user.dir");
 		System.out.println("  Current dir = " + currentDir);
-		
-		File isHome = getIsHome();
 
-		try {
+		// Timing summary is printed at the very end, regardless of how the program
+		// terminates, followed by all messages that are still queued
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			if (PhaseTimer.isSummaryEnabled()) {
+				PhaseTimer.printSummary(System.out);
+			}
+			LogSink.shutdown();
+		}));
+
+		Command command = args.length > 0 ? COMMANDS.get(args[0]) : null;
+		if (command != null && !command.accepts(args.length - 1)) {
+			command = null;
+		}
+		if (command == null && args.length != 3) {
+			System.err.println(getUsage());
+			System.exit(EXIT_CODE_WRONG_ARGUMENTS);
+		}
 
-			if (args.length == 3) {
-				
-				String packageName = args[0];
-				System.out.println("Package name = " + packageName);
-				
-				String connAlias = args[1];
-				System.out.println("Connection alias = " + connAlias);
-
-				File changePropsFile = new File(args[2]);
-				System.out.println(
-						"Reading changes from file '" + FileUtils.getCanonicalPathWithFallback(changePropsFile) + "'");
-
-				ConnectionDirectory connDir = new ConnectionDirectory(isHome, packageName, connAlias);
-				File nodeNdfDir = connDir.getDir();
-				System.out.println("Changing connection details in directory " + FileUtils.getCanonicalPathWithFallback(nodeNdfDir));
-				
-				ConnectionFile conFile = new ConnectionFile(nodeNdfDir);
-				ConnectionDetails conDetails = new ConnectionDetails(conFile.getConnectionDetails());
-
-				Properties changeProperties = new Properties();
-				changeProperties.load(new FileInputStream(changePropsFile));
-				Enumeration<Object> setPropKeyEnum = changeProperties.keys();
-
-				while (setPropKeyEnum.hasMoreElements()) {
-					String key = (String) setPropKeyEnum.nextElement();
-					String value = changeProperties.getProperty(key);
-
-					if (!key.equals(KEY_PASSWORD)) {
-						System.out.println("Changing value for key " + key);
-						System.out.println("  Old value : " + conDetails.getSetting(key));
-						System.out.println("  New value : " + value);
-						conDetails.updateSetting(key, value);
-					} else {
-						PasswordHandler pwh = new PasswordHandler(isHome, connAlias);
-						pwh.setPassword(value);
-					}
-				}
-
-				System.out.println(
-						"Passwords are stored in PassMan; if IntegrationServer is running right now, it must be restarted for the change to take effect");
-
-				System.out.println("Finished");
-				conFile.write();
+		// Training and several instances do not need a single Integration Server home
+		File isHome = command == null || command.needsIsHome ? getIsHome() : null;
 
+		int exitCode;
+		try {
+			if (command == null) {
+				exitCode = update(isHome, args);
 			} else {
-				System.err.println(
-						"Wrong number of command line arguments: Provide (1) package name where the adapter connection is stored, (2) the connection alias, and (3) path to file that contains the changes");
-				System.exit(1);
+				exitCode = command.action.run(isHome, Arrays.copyOfRange(args, 1, args.length));
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
+			exitCode = EXIT_CODE_UPDATE_FAILED;
+		}
+		if (exitCode != EXIT_CODE_SUCCESS) {
+			System.exit(exitCode);
+		}
+	}
+
+	/**
+	 * Create the table of all commands
+	 * 
+	 * @return commands by their option
+	 */
+	private static Map<String, Command> createCommands() {
+		Map<String, Command> out = new LinkedHashMap<String, Command>();
+		out.put(OPTION_BATCH, new Command(1, 1, true, "and the path to a manifest file for batch mode",
+				CommandLine::applyBatch));
+		out.put(OPTION_WATCH, new Command(1, 1, true, "and the path to a manifest file to apply edits of its files",
+				CommandLine::watch));
+		out.put(OPTION_CHANGES, new Command(1, 1, true, "and the path to a file with sections of changes",
+				CommandLine::applyChanges));
+		out.put(OPTION_LIST, new Command(0, 0, true, "to list all connections", CommandLine::list));
+		out.put(OPTION_DAEMON, new Command(0, 0, true, "to run as a daemon", CommandLine::runDaemon));
+		out.put(OPTION_CLIENT, new Command(3, 3, true, "followed by the three arguments for an update",
+				CommandLine::forwardToDaemon));
+		out.put(OPTION_STOP_DAEMON, new Command(0, 0, true, "to stop a running daemon", CommandLine::stopDaemon));
+		out.put(OPTION_EXPORT, new Command(2, 2, true, "followed by format (jsonl or csv) and output file",
+				CommandLine::export));
+		out.put(OPTION_COMPILE_BUNDLE, new Command(2, 2, true, "followed by manifest file and bundle directory",
+				CommandLine::compileBundle));
+		out.put(OPTION_APPLY_BUNDLE,
+				new Command(1, 1, true, "followed by bundle directory", CommandLine::applyBundle));
+		out.put(OPTION_LIST_BACKUPS, new Command(0, 0, true, "to list all backup runs", CommandLine::listBackups));
+		out.put(OPTION_RESTORE, new Command(1, 1, true, "followed by a backup run ID", CommandLine::restore));
+		out.put(OPTION_SELECT, new Command(1, 2, true,
+				"followed by a selector and optionally a file with changes", CommandLine::select));
+		out.put(OPTION_INSTANCES, new Command(1, Integer.MAX_VALUE, false,
+				"followed by instance names (or all) and the arguments for an update or batch mode",
+				CommandLine::applyToInstances));
+		out.put(OPTION_TRAIN,
+				new Command(0, 0, false, "to create a class data sharing archive", CommandLine::train));
+		return out;
+	}
+
+	/**
+	 * Get the message for invalid command line arguments, which lists all
+	 * commands
+	 * 
+	 * @return usage message
+	 */
+	private static String getUsage() {
+		StringBuilder sb = new StringBuilder(
+				"Wrong number of command line arguments: Provide (1) package name where the adapter connection is stored, (2) the connection alias, and (3) path to file that contains the changes");
+		for (Map.Entry<String, Command> command : COMMANDS.entrySet()) {
+			sb.append("; or ").append(command.getKey()).append(' ').append(command.getValue().usage);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Update a single connection, with package name, connection alias, and file
+	 * with changes as arguments
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   Arguments
+	 * @return exit code
+	 * @throws Exception if the update fails
+	 */
+	private static int update(File isHome, String[] args) throws Exception {
+		ConnectionUpdate update = new ConnectionUpdate(args[0], args[1], new File(args[2]));
+		ConnectionIndex index = openIndex(isHome);
+		UpdateContext context = new UpdateContext(isHome, index, null);
+		update.apply(context, System.out);
+		saveIndex(index);
+		boolean passwordFailed = storeQueuedPasswords(context, System.out).containsValue(false);
+		printBackupRun(context, System.out);
+		if (passwordFailed) {
+			return EXIT_CODE_UPDATE_FAILED;
+		}
+		printFinished();
+		return EXIT_CODE_SUCCESS;
+	}
+
+	/**
+	 * Apply a batch manifest (option {@value #OPTION_BATCH})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   Manifest file
+	 * @return exit code
+	 * @throws Exception if the manifest cannot be read
+	 */
+	private static int applyBatch(File isHome, String[] args) throws Exception {
+		List<ConnectionUpdate> updates = new BatchManifest(new File(args[0])).getUpdates();
+		return applyUpdates(isHome, context -> runBatch(context, updates));
+	}
+
+	/**
+	 * Watch the files with changes of a batch manifest (option
+	 * {@value #OPTION_WATCH})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   Manifest file
+	 * @return exit code
+	 * @throws Exception if the manifest cannot be read or watching fails
+	 */
+	private static int watch(File isHome, String[] args) throws Exception {
+		BatchManifest manifest = new BatchManifest(new File(args[0]));
+		ConnectionIndex index = openIndex(isHome);
+		new ChangeWatcher(new UpdateContext(isHome, index, new DirectorySyncGroup()), manifest.getUpdates())
+				.run(System.out);
+		return EXIT_CODE_SUCCESS;
+	}
+
+	/**
+	 * Apply a file with sections of changes (option {@value #OPTION_CHANGES})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   File with changes
+	 * @return exit code
+	 * @throws Exception if the file cannot be read
+	 */
+	private static int applyChanges(File isHome, String[] args) throws Exception {
+		File changesFile = new File(args[0]);
+		return applyUpdates(isHome, context -> SectionedChangeFile.apply(context, changesFile, System.out));
+	}
+
+	/**
+	 * List all connections (option {@value #OPTION_LIST})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   No arguments
+	 * @return exit code
+	 * @throws Exception if the connections cannot be listed
+	 */
+	private static int list(File isHome, String[] args) throws Exception {
+		List<DiscoveredConnection> connections = listConnections(isHome);
+		System.out.println("Found " + connections.size() + " connection(s) (package, alias, adapter type, file)");
+		for (DiscoveredConnection connection : connections) {
+			System.out.println(connection);
+		}
+		return EXIT_CODE_SUCCESS;
+	}
+
+	/**
+	 * Run as a daemon (option {@value #OPTION_DAEMON})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   No arguments
+	 * @return exit code
+	 * @throws Exception if the daemon fails
+	 */
+	private static int runDaemon(File isHome, String[] args) throws Exception {
+		try {
+			new Daemon(isHome).run();
+		} catch (IllegalStateException e) {
+			System.err.println(e.getMessage());
+			return EXIT_CODE_UPDATE_FAILED;
+		}
+		return EXIT_CODE_SUCCESS;
+	}
+
+	/**
+	 * Forward an update to a running daemon (option {@value #OPTION_CLIENT})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   Package name, connection alias, and file with changes
+	 * @return exit code
+	 * @throws Exception if the daemon cannot be reached
+	 */
+	private static int forwardToDaemon(File isHome, String[] args) throws Exception {
+		return new DaemonClient(isHome).update(args[0], args[1], new File(args[2]));
+	}
+
+	/**
+	 * Stop a running daemon (option {@value #OPTION_STOP_DAEMON})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   No arguments
+	 * @return exit code
+	 * @throws Exception if the daemon cannot be reached
+	 */
+	private static int stopDaemon(File isHome, String[] args) throws Exception {
+		new DaemonClient(isHome).stop();
+		return EXIT_CODE_SUCCESS;
+	}
+
+	/**
+	 * Export the settings of all connections (option {@value #OPTION_EXPORT})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   Format and output file
+	 * @return exit code
+	 * @throws Exception if the output file cannot be written
+	 */
+	private static int export(File isHome, String[] args) throws Exception {
+		ConnectionExport.Format format = ConnectionExport.Format.fromName(args[0]);
+		List<DiscoveredConnection> connections = listConnections(isHome);
+		int failures;
+		try (Writer out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+			failures = new ConnectionExport(format).export(connections, out);
+		}
+		System.out.println("Exported " + (connections.size() - failures) + " connection(s) to " + args[1]);
+		if (failures > 0) {
+			System.out.println(failures + " connection(s) could not be exported");
+		}
+		return getExitCode(failures);
+	}
+
+	/**
+	 * List all backup runs (option {@value #OPTION_LIST_BACKUPS})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   No arguments
+	 * @return exit code
+	 * @throws Exception if the backups cannot be read
+	 */
+	private static int listBackups(File isHome, String[] args) throws Exception {
+		BackupStore backupStore = new BackupStore(isHome);
+		List<String> runIds = backupStore.getRunIds();
+		System.out.println("Found " + runIds.size() + " backup run(s) (run ID, number of files)");
+		for (String runId : runIds) {
+			System.out.println(runId + "\t" + backupStore.getFiles(runId).size());
+		}
+		return EXIT_CODE_SUCCESS;
+	}
+
+	/**
+	 * Restore all files changed by a run (option {@value #OPTION_RESTORE})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   Run ID
+	 * @return exit code
+	 * @throws Exception if the backup cannot be read
+	 */
+	private static int restore(File isHome, String[] args) throws Exception {
+		DirectorySyncGroup syncGroup = new DirectorySyncGroup();
+		int failures = new BackupStore(isHome).restore(args[0], syncGroup, System.out);
+		syncGroup.syncAll();
+		System.out.println(
+				"If IntegrationServer is running right now, it must be restarted for the restored files to take effect");
+		System.out.println("Finished");
+		return getExitCode(failures);
+	}
+
+	/**
+	 * Create a deployment bundle (option {@value #OPTION_COMPILE_BUNDLE})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   Manifest file and bundle directory
+	 * @return exit code
+	 * @throws Exception if the bundle cannot be created
+	 */
+	private static int compileBundle(File isHome, String[] args) throws Exception {
+		BatchManifest manifest = new BatchManifest(new File(args[0]));
+		ConnectionIndex index = openIndex(isHome);
+		DeploymentBundle.compile(new UpdateContext(isHome, index, null), manifest.getUpdates(), new File(args[1]),
+				System.out);
+		saveIndex(index);
+		System.out.println("Finished");
+		return EXIT_CODE_SUCCESS;
+	}
+
+	/**
+	 * Apply a deployment bundle (option {@value #OPTION_APPLY_BUNDLE})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   Bundle directory
+	 * @return exit code
+	 * @throws Exception if the bundle cannot be read
+	 */
+	private static int applyBundle(File isHome, String[] args) throws Exception {
+		File bundleDir = new File(args[0]);
+		return applyUpdates(isHome, context -> {
+			int failures = DeploymentBundle.apply(context, bundleDir, System.out);
+			if (storeQueuedPasswords(context, System.out).containsValue(false)) {
+				failures++;
+			}
+			return failures;
+		});
+	}
+
+	/**
+	 * List the connections that match a selector or, if a file with changes is
+	 * given as well, apply it to all of them (option {@value #OPTION_SELECT})
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param args   Selector and optionally file with changes
+	 * @return exit code
+	 * @throws Exception if the connections cannot be listed or updated
+	 */
+	private static int select(File isHome, String[] args) throws Exception {
+		ConnectionSelector selector = new ConnectionSelector(args[0]);
+		List<DiscoveredConnection> selected = selector.select(listConnections(isHome));
+		System.out.println("Selector '" + selector + "' matches " + selected.size() + " connection(s)");
+		if (args.length == 1) {
+			for (DiscoveredConnection connection : selected) {
+				System.out.println(connection);
+			}
+			return EXIT_CODE_SUCCESS;
+		}
+		if (selected.isEmpty()) {
+			return EXIT_CODE_SUCCESS;
+		}
+
+		File changesFile = new File(args[1]);
+		List<ConnectionUpdate> updates = new ArrayList<ConnectionUpdate>();
+		for (DiscoveredConnection connection : selected) {
+			updates.add(new ConnectionUpdate(connection.getPackageName(), connection.getConnAlias(), changesFile));
+		}
+		return applyUpdates(isHome, context -> runBatch(context, updates));
+	}
+
+	/**
+	 * Apply a single update or a batch manifest to several instances of
+	 * Integration Server classic (option {@value #OPTION_INSTANCES})
+	 * 
+	 * @param isHome Not used, since every instance has its own home
+	 * @param args   Instance names, followed by the arguments for an update or
+	 *               batch mode
+	 * @return exit code
+	 * @throws Exception if the updates cannot be applied
+	 */
+	private static int applyToInstances(File isHome, String[] args) throws Exception {
+		try {
+			return getExitCode(runInstances(args[0], Arrays.copyOfRange(args, 1, args.length)));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return EXIT_CODE_WRONG_ARGUMENTS;
+		}
+	}
+
+	/**
+	 * Create a class data sharing archive (option {@value #OPTION_TRAIN}). This
+	 * works on a synthetic installation.
+	 * 
+	 * @param isHome Not used
+	 * @param args   No arguments
+	 * @return exit code
+	 * @throws Exception if the training run fails
+	 */
+	private static int train(File isHome, String[] args) throws Exception {
+		return CdsTraining.run(System.out) == 0 ? EXIT_CODE_SUCCESS : EXIT_CODE_UPDATE_FAILED;
+	}
+
+	/**
+	 * Apply updates with index and deferred directory syncs, and print the
+	 * closing messages
+	 * 
+	 * @param isHome  Directory that contains the Integration Server installation
+	 * @param updates Updates to apply, returning the number of failures
+	 * @return exit code
+	 * @throws Exception if the updates cannot be applied
+	 */
+	private static int applyUpdates(File isHome, Updates updates) throws Exception {
+		ConnectionIndex index = openIndex(isHome);
+		DirectorySyncGroup syncGroup = new DirectorySyncGroup();
+		UpdateContext context = new UpdateContext(isHome, index, syncGroup);
+		int failures = updates.apply(context);
+		syncGroup.syncAll();
+		saveIndex(index);
+		printBackupRun(context, System.out);
+		printFinished();
+		return getExitCode(failures);
+	}
+
+	/**
+	 * Print the closing messages of a run that may have changed passwords
+	 */
+	private static void printFinished() {
+		System.out.println(MESSAGE_RESTART);
+		System.out.println("Finished");
+	}
+
+	/**
+	 * Get the exit code for a number of failures
+	 * 
+	 * @param failures Number of failures
+	 * @return {@link #EXIT_CODE_SUCCESS} or {@link #EXIT_CODE_UPDATE_FAILED}
+	 */
+	private static int getExitCode(int failures) {
+		return failures > 0 ? EXIT_CODE_UPDATE_FAILED : EXIT_CODE_SUCCESS;
+	}
+
+	/**
+	 * Apply all connection updates from a batch manifest within the current JVM.
+	 * Updates are processed concurrently by the {@link UpdatePipeline}. A failing
+	 * update does not stop processing of the remaining ones. At the end a summary
+	 * with the result for each connection is printed.
+	 * 
+	 * @param context Context of the current run
+	 * @param updates Connection updates to apply
+	 * @return number of failed updates
+	 * @throws InterruptedException if interrupted while waiting for the updates
+	 * @throws IOException          if the backup store cannot be created
+	 */
+	private static int runBatch(UpdateContext context, List<ConnectionUpdate> updates)
+			throws InterruptedException, IOException {
+		System.out.println("Batch mode with " + updates.size() + " connection update(s)");
+
+		Map<ConnectionUpdate, String> failures = new LinkedHashMap<ConnectionUpdate, String>();
+		for (UpdatePipeline.Result result : new UpdatePipeline(context).run(updates, System.out)) {
+			if (!result.isSuccess()) {
+				failures.put(result.getUpdate(), result.getError().getMessage());
+			}
+		}
+
+		// Passwords of all connections are stored together at the end
+		System.out.println();
+		Map<String, Boolean> passwordResults = storeQueuedPasswords(context, System.out);
+		for (ConnectionUpdate update : updates) {
+			Boolean success = passwordResults.get(PassManSession.getHandle(update.getConnAlias()));
+			if (Boolean.FALSE.equals(success) && !failures.containsKey(update)) {
+				failures.put(update, "Password could not be stored");
+			}
+		}
+
+		// Failures are also written in quiet mode
+		System.out.println();
+		LogSink.println(System.out, failures.isEmpty() ? LogSink.Level.INFO : LogSink.Level.WARN,
+				"Summary of batch run (" + (updates.size() - failures.size()) + " succeeded, " + failures.size()
+						+ " failed)");
+		for (ConnectionUpdate update : updates) {
+			if (failures.containsKey(update)) {
+				LogSink.println(System.out, LogSink.Level.WARN, "  FAILED  " + update + " : " + failures.get(update));
+			} else {
+				System.out.println("  OK      " + update);
+			}
+		}
+		return failures.size();
+	}
+
+	/**
+	 * Apply a single update or a batch manifest to several instances of
+	 * Integration Server classic
+	 * 
+	 * @param names Comma-separated instance names, or
+	 *              {@value IntegrationServerHome#ALL_INSTANCES}
+	 * @param args  Package name, connection alias, and file with changes; or
+	 *              {@value #OPTION_BATCH} and a manifest file
+	 * @return number of failed updates, over all instances
+	 * @throws IllegalArgumentException if the arguments are invalid
+	 * @throws InterruptedException     if interrupted while waiting for the
+	 *                                  updates
+	 * @throws IOException              if the manifest cannot be read
+	 */
+	private static int runInstances(String names, String[] args)
+			throws IllegalArgumentException, InterruptedException, IOException {
+		List<ConnectionUpdate> updates;
+		if (args.length == 2 && args[0].equals(OPTION_BATCH)) {
+			updates = new BatchManifest(new File(args[1])).getUpdates();
+		} else if (args.length == 3) {
+			updates = Collections.singletonList(new ConnectionUpdate(args[0], args[1], new File(args[2])));
+		} else {
+			throw new IllegalArgumentException("After " + OPTION_INSTANCES
+					+ " and the instance names provide (1) package name, (2) connection alias, and (3) path to file that contains the changes; or "
+					+ OPTION_BATCH + " and the path to a manifest file");
+		}
+
+		Map<String, File> instances = PhaseTimer.time(Phase.HOME_RESOLUTION, null,
+				() -> new IntegrationServerHome(getWmHome()).getInstances(names));
+		int failures = new MultiInstanceUpdate(instances).run(updates, System.out);
+		printFinished();
+		return failures;
+	}
+
+	/**
+	 * Store all passwords that were queued by connection updates in PassMan. The
+	 * data store of PassMan is backed up first, if backups are enabled.
+	 * 
+	 * @param context Context of the current run
+	 * @param out     Stream for messages
+	 * @return success of storing, by handle
+	 * @throws IOException if the backup store cannot be created
+	 */
+	static Map<String, Boolean> storeQueuedPasswords(UpdateContext context, PrintStream out) throws IOException {
+		PassManSession session = PassManSession.get(context.getIsHome());
+		if (session == null || session.getQueuedCount() == 0) {
+			return Collections.emptyMap();
+		}
+
+		out.println("Storing " + session.getQueuedCount() + " password(s) in PassMan");
+		Map<String, Boolean> results = session.storeQueued(context.getBackupStore());
+		for (Map.Entry<String, Boolean> result : results.entrySet()) {
+			out.println("  Success of setting password for handle " + result.getKey() + " = "
+					+ result.getValue());
+		}
+		return results;
+	}
+
+	/**
+	 * Print the ID of the backup run, if files were backed up, so that the run can
+	 * be rolled back
+	 * 
+	 * @param context Context of the current run
+	 * @param out     Stream for messages
+	 * @throws IOException if the backup store cannot be created
+	 */
+	static void printBackupRun(UpdateContext context, PrintStream out) throws IOException {
+		BackupStore backupStore = context.getBackupStore();
+		if (backupStore != null && backupStore.getRunId() != null) {
+			out.println("Previous versions of changed files are stored as backup run " + backupStore.getRunId()
+					+ " (undo with " + OPTION_RESTORE + " " + backupStore.getRunId() + ")");
+		}
+	}
+
+	/**
+	 * Open the persistent connection index. Since the index only serves to speed
+	 * things up, problems are reported but do not stop the execution.
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @return connection index or <code>null</code> if it cannot be used
+	 */
+	static ConnectionIndex openIndex(File isHome) {
+		try {
+			return new ConnectionIndex(isHome);
+		} catch (IOException e) {
+			System.out.println("  Connection index not available : " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Get all connections of the installation, sorted by package and alias. The
+	 * connection index is used and updated if possible.
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @return connections
+	 */
+	static List<DiscoveredConnection> listConnections(File isHome) {
+		List<DiscoveredConnection> connections;
+		ConnectionIndex index = openIndex(isHome);
+		if (index != null) {
+			index.refresh();
+			saveIndex(index);
+			connections = new ArrayList<DiscoveredConnection>();
+			for (ConnectionIndex.Entry entry : index.getEntries()) {
+				connections.add(entry.toDiscoveredConnection());
+			}
+			Collections.sort(connections, Comparator.comparing(DiscoveredConnection::getPackageName)
+					.thenComparing(DiscoveredConnection::getConnAlias));
+		} else {
+			connections = new ConnectionDiscovery(isHome).discover();
+		}
+		return connections;
+	}
+
+	/**
+	 * Save the persistent connection index, if there is one. Problems are reported
+	 * but do not stop the execution.
+	 * 
+	 * @param index Connection index, may be <code>null</code>
+	 */
+	static void saveIndex(ConnectionIndex index) {
+		if (index != null) {
+			try {
+				index.save();
+			} catch (IOException e) {
+				System.out.println("  Connection index could not be saved : " + e.getMessage());
+			}
 		}
 	}
 
@@ -124,8 +795,7 @@ public class CommandLine {
 	 * @return location of Integration Server
 	 */
 	private static File getIsHome() {
-		IntegrationServerHome isHome = new IntegrationServerHome(getWmHome());
-		File out = isHome.get();
+		File out = PhaseTimer.time(Phase.HOME_RESOLUTION, null, () -> new IntegrationServerHome(getWmHome()).get());
 		System.out.println("  IS_HOME = " + FileUtils.getCanonicalPathWithFallback(out));
 		return out;
 	}
@@ -174,4 +844,79 @@ public class CommandLine {
 		return wmHomeDir;
 	}
 
+	/**
+	 * A command selected by its option
+	 */
+	private static class Command {
+
+		private int minArgs;
+		private int maxArgs;
+		private boolean needsIsHome;
+		private String usage;
+		private Action action;
+
+		/**
+		 * Initialize
+		 * 
+		 * @param minArgs     Minimum number of arguments after the option
+		 * @param maxArgs     Maximum number of arguments after the option
+		 * @param needsIsHome <code>true</code> if the command works on the
+		 *                    Integration Server home
+		 * @param usage       Description of the arguments for the usage message
+		 * @param action      Implementation of the command
+		 */
+		Command(int minArgs, int maxArgs, boolean needsIsHome, String usage, Action action) {
+			super();
+			this.minArgs = minArgs;
+			this.maxArgs = maxArgs;
+			this.needsIsHome = needsIsHome;
+			this.usage = usage;
+			this.action = action;
+		}
+
+		/**
+		 * Check the number of arguments
+		 * 
+		 * @param count Number of arguments after the option
+		 * @return <code>true</code> if the command accepts that many arguments
+		 */
+		boolean accepts(int count) {
+			return count >= minArgs && count <= maxArgs;
+		}
+	}
+
+	/**
+	 * Implementation of a command
+	 */
+	@FunctionalInterface
+	private interface Action {
+
+		/**
+		 * Run the command
+		 * 
+		 * @param isHome Directory that contains the Integration Server installation,
+		 *               <code>null</code> if the command does not need it
+		 * @param args   Arguments after the option
+		 * @return exit code
+		 * @throws Exception if the command fails
+		 */
+		int run(File isHome, String[] args) throws Exception;
+	}
+
+	/**
+	 * Updates applied by {@link CommandLine#applyUpdates(File, Updates)}
+	 */
+	@FunctionalInterface
+	private interface Updates {
+
+		/**
+		 * Apply the updates
+		 * 
+		 * @param context Context of the current run
+		 * @return number of failures
+		 * @throws Exception if the updates cannot be applied
+		 */
+		int apply(UpdateContext context) throws Exception;
+	}
+
 }
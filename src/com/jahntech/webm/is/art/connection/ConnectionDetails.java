@@ -19,8 +19,15 @@
 
 package com.jahntech.webm.is.art.connection;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 import com.softwareag.util.IDataMap;
 import com.wm.data.IData;
+import com.wm.data.IDataCursor;
 
 /**
  * Wrapper for the connection details of an ART adapter connection
@@ -31,6 +38,11 @@ public class ConnectionDetails {
 	private IData details;
 	private IDataMap detailsMap;
 
+	/**
+	 * Whether at least one setting got a new value
+	 */
+	private boolean changed = false;
+
 	/**
 	 * Initialize with adapter connection details provided as {@link IData}. To get
 	 * those connection details, please use
@@ -55,21 +67,74 @@ public class ConnectionDetails {
 	}
 
 	/**
-	 * Update one setting
+	 * Check whether any setting was changed
+	 * 
+	 * @return <code>true</code> if at least one setting got a value different from
+	 *         the one it had before
+	 */
+	public boolean isChanged() {
+		return changed;
+	}
+
+	/**
+	 * Update one setting. If the setting already has the specified value, nothing
+	 * is changed.
 	 * 
 	 * @param path  Path leading to the setting, with elements separated by a single
 	 *              dot (".")
 	 * @param value New value
+	 * @return <code>true</code> if the value was different and has been changed
 	 */
-	public void updateSetting(String path, String value) {
+	public boolean updateSetting(String path, String value) {
 		throwExceptionOnEmptyPath(path);
 
 		IDataMap mapForUpdate = getIDataMapForLastPathElement(path);
 		String lastPathElement = getLastPathElement(path);
-		updateIDataMapValue(mapForUpdate, lastPathElement, value);
+		return updateIDataMapValue(mapForUpdate, lastPathElement, value);
 
 	}
 
+	/**
+	 * Apply all changes of a change set in a single traversal of the connection
+	 * details. Each intermediate level is resolved only once, regardless of the
+	 * number of settings below it. Settings that already have the new value are
+	 * not changed. The password of the change set is ignored.
+	 * 
+	 * @param changeSet Compiled changes
+	 * @return outcome for each setting, in the order of the change set
+	 * @throws IllegalArgumentException if a setting or an intermediate level does
+	 *                                  not exist
+	 */
+	public List<ChangeSet.SettingChange> update(ChangeSet changeSet) throws IllegalArgumentException {
+		List<ChangeSet.SettingChange> out = new ArrayList<ChangeSet.SettingChange>(changeSet.getSettingsCount());
+		update(detailsMap, changeSet.getRoot(), out);
+		return out;
+	}
+
+	/**
+	 * Apply the changes below a node of the change set
+	 * 
+	 * @param map  Map that corresponds to the node
+	 * @param node Node of the change set
+	 * @param out  Collected outcomes
+	 */
+	private void update(IDataMap map, ChangeSet.Node node, List<ChangeSet.SettingChange> out) {
+		for (ChangeSet.Node child : node.getChildren()) {
+			if (child.isLeaf()) {
+				String oldValue = map.containsKey(child.getName()) ? map.getAsString(child.getName()) : null;
+				updateIDataMapValue(map, child.getName(), child.getValue());
+				out.add(new ChangeSet.SettingChange(child.getPath(), oldValue, child.getValue()));
+			} else {
+				IDataMap subMap = map.getAsIDataMap(child.getName());
+				if (subMap == null) {
+					throw new IllegalArgumentException(
+							"Settings group '" + child.getName() + "' does not exist, so no update possible");
+				}
+				update(subMap, child, out);
+			}
+		}
+	}
+
 	/**
 	 * Get value of setting
 	 * 
@@ -92,6 +157,42 @@ public class ConnectionDetails {
 		return currentValue;
 	}
 
+	/**
+	 * Get all settings with their full path (elements separated by a single dot),
+	 * in the order in which they are stored
+	 * 
+	 * @return current values by path
+	 */
+	public Map<String, String> getSettings() {
+		Map<String, String> settings = new LinkedHashMap<String, String>();
+		collectSettings(details, "", settings);
+		return settings;
+	}
+
+	/**
+	 * Add the settings of one level, and recursively those of all levels below it
+	 * 
+	 * @param data     Level of the connection details
+	 * @param prefix   Path of the level, including the trailing dot
+	 * @param settings Collected settings
+	 */
+	private void collectSettings(IData data, String prefix, Map<String, String> settings) {
+		IDataCursor cursor = data.getCursor();
+		try {
+			while (cursor.next()) {
+				String path = prefix + cursor.getKey();
+				Object value = cursor.getValue();
+				if (value instanceof IData) {
+					collectSettings((IData) value, path + ".", settings);
+				} else {
+					settings.put(path, value == null ? null : value.toString());
+				}
+			}
+		} finally {
+			cursor.destroy();
+		}
+	}
+
 	/**
 	 * Traverse the settings path and return the last "group" (typically
 	 * "connectionProperties" or "connectionManagerProperties") of the settings from
@@ -101,8 +202,9 @@ public class ConnectionDetails {
 	 * 
 	 * @param path Path to traverse node.ndf settings
 	 * @return Map with "last" level
+	 * @throws IllegalArgumentException if a level does not exist
 	 */
-	private IDataMap getIDataMapForLastPathElement(String path) {
+	private IDataMap getIDataMapForLastPathElement(String path) throws IllegalArgumentException {
 		String[] pathParts = path.split("\\.");
 
 		if (pathParts.length == 1) {
@@ -112,9 +214,12 @@ public class ConnectionDetails {
 			// Get first path part
 			IDataMap subMap = detailsMap.getAsIDataMap(pathParts[0]);
 			// iterate over all further path parts, except the last
-			for (int i = 1; i < pathParts.length - 1; i++) {
+			for (int i = 1; i < pathParts.length - 1 && subMap != null; i++) {
 				subMap = subMap.getAsIDataMap(pathParts[i]);
 			}
+			if (subMap == null) {
+				throw new IllegalArgumentException("Settings group for path '" + path + "' does not exist");
+			}
 			return subMap;
 		}
 	}
@@ -154,13 +259,19 @@ public class ConnectionDetails {
 	 * @param map   Map into which the update should be performed
 	 * @param key   Key to be updated
 	 * @param value New value for key
+	 * @return <code>true</code> if the value was different and has been changed
 	 * @throws IllegalArgumentException if the specified key was not found; this
 	 *                                  means that a new value would be introduced
 	 *                                  instead of an update being performed
 	 */
-	private void updateIDataMapValue(IDataMap map, String key, String value) throws IllegalArgumentException {
+	private boolean updateIDataMapValue(IDataMap map, String key, String value) throws IllegalArgumentException {
 		if (map.containsKey(key)) {
+			if (Objects.equals(map.getAsString(key), value)) {
+				return false;
+			}
 			map.put(key, value);
+			changed = true;
+			return true;
 		} else {
 			throw new IllegalArgumentException(
 					"No existing value found for key '" + key + "', so no update possible with value '" + value + "'");
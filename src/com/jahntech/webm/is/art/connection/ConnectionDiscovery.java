@@ -0,0 +1,278 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.wm.app.b2b.server.PackageStore;
+import com.wm.util.Values;
+import com.wm.util.coder.XMLCoder;
+
+/**
+ * Finds all ART adapter connections within an Integration Server installation.
+ * The namespace directories of all packages are walked in parallel, using a
+ * {@link ForkJoinPool} with one task per directory. A node is considered an ART
+ * adapter connection if its node.ndf file contains the key
+ * {@value ConnectionFile#KEY_IRTNODE_PROPERTY_ENC}.
+ */
+public class ConnectionDiscovery {
+
+	private static final String SUBDIR_PACKAGES = "packages";
+	private static final String SUBDIR_NAMESPACE = "ns";
+
+	/**
+	 * Marker to quickly identify connection nodes from the raw file content,
+	 * before performing the more expensive XML decoding
+	 */
+	private static final byte[] MARKER_IRTNODE_PROPERTY = ("\"" + ConnectionFile.KEY_IRTNODE_PROPERTY_ENC + "\"")
+			.getBytes(StandardCharsets.UTF_8);
+
+	private File isHome;
+
+	/**
+	 * Initialize with the Integration Server installation to search
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @throws IllegalArgumentException if the directory for packages does not
+	 *                                  exist
+	 */
+	public ConnectionDiscovery(File isHome) throws IllegalArgumentException {
+		super();
+		this.isHome = isHome;
+
+		if (!getPackagesDir(isHome).isDirectory()) {
+			throw new IllegalArgumentException("No packages directory found in Integration Server installation '"
+					+ FileUtils.getCanonicalPathWithFallback(isHome) + "'");
+		}
+	}
+
+	/**
+	 * Find connections in all packages
+	 * 
+	 * @return all connections, sorted by package name and connection alias
+	 */
+	public List<DiscoveredConnection> discover() {
+		File[] pkgDirs = getPackagesDir(isHome).listFiles(File::isDirectory);
+		List<String> pkgNames = new ArrayList<String>();
+		if (pkgDirs != null) {
+			for (File pkgDir : pkgDirs) {
+				pkgNames.add(pkgDir.getName());
+			}
+		}
+		return discover(pkgNames);
+	}
+
+	/**
+	 * Find connections in the specified packages. Packages that do not exist or
+	 * have no namespace directory are skipped.
+	 * 
+	 * @param pkgNames Names of packages to search
+	 * @return all connections, sorted by package name and connection alias
+	 */
+	public List<DiscoveredConnection> discover(List<String> pkgNames) {
+		List<DirectoryTask> tasks = new ArrayList<DirectoryTask>();
+		for (String pkgName : pkgNames) {
+			File nsDir = getNamespaceDir(isHome, pkgName);
+			if (nsDir.isDirectory()) {
+				tasks.add(new DirectoryTask(pkgName, nsDir, ""));
+			}
+		}
+
+		List<DiscoveredConnection> out = new ArrayList<DiscoveredConnection>();
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		for (DirectoryTask task : tasks) {
+			pool.execute(task);
+		}
+		for (DirectoryTask task : tasks) {
+			out.addAll(task.join());
+		}
+
+		Collections.sort(out, Comparator.comparing(DiscoveredConnection::getPackageName)
+				.thenComparing(DiscoveredConnection::getConnAlias));
+		return out;
+	}
+
+	/**
+	 * Get directory that contains all packages
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @return packages directory
+	 */
+	static File getPackagesDir(File isHome) {
+		return new File(isHome, SUBDIR_PACKAGES);
+	}
+
+	/**
+	 * Get namespace directory of a package
+	 * 
+	 * @param isHome  Directory that contains the Integration Server installation
+	 * @param pkgName Name of package
+	 * @return namespace directory
+	 */
+	static File getNamespaceDir(File isHome, String pkgName) {
+		return new File(getPackagesDir(isHome), pkgName + File.separatorChar + SUBDIR_NAMESPACE);
+	}
+
+	/**
+	 * Check a single node.ndf file and, if it belongs to an ART connection, create
+	 * the respective object.
+	 * 
+	 * @param pkgName      Name of package
+	 * @param relativePath Path of the node directory relative to the namespace
+	 *                     directory, with '/' as separator
+	 * @param nodeNdfFile  File to check
+	 * @return connection or <code>null</code> if the file does not belong to an ART
+	 *         connection
+	 */
+	static DiscoveredConnection inspect(String pkgName, String relativePath, File nodeNdfFile) {
+		try {
+			byte[] content = Files.readAllBytes(nodeNdfFile.toPath());
+			if (indexOf(content, MARKER_IRTNODE_PROPERTY) < 0) {
+				return null;
+			}
+
+			// Only the other values of the node are needed, so the connection details are
+			// left out of the XML decoding if possible
+			RawNodeFile rawNodeFile = RawNodeFile.locate(content);
+			Values nodeValues;
+			if (rawNodeFile != null) {
+				nodeValues = new XMLCoder().decode(new ByteArrayInputStream(rawNodeFile.getContentWithoutValue()));
+			} else {
+				nodeValues = new XMLCoder().decode(new ByteArrayInputStream(content));
+				if (nodeValues == null || nodeValues.get(ConnectionFile.KEY_IRTNODE_PROPERTY_ENC) == null) {
+					return null;
+				}
+			}
+			if (nodeValues == null) {
+				return null;
+			}
+			String adapterType = nodeValues.getString(ConnectionFile.KEY_ADAPTER_TYPE);
+			return new DiscoveredConnection(pkgName, convertRelativePathToConnectionAlias(relativePath), adapterType,
+					nodeNdfFile, FileUtils.hash(content));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Convert relative path of a node directory to the connection alias, which is
+	 * an Integration Server namespace. This is the reverse of what
+	 * {@link ConnectionDirectory} does.
+	 * 
+	 * @param relativePath Relative path with '/' as separator
+	 * @return connection alias
+	 */
+	static String convertRelativePathToConnectionAlias(String relativePath) {
+		int lastSeparator = relativePath.lastIndexOf('/');
+		if (lastSeparator < 0) {
+			return relativePath;
+		}
+		return relativePath.substring(0, lastSeparator).replace('/', '.') + ':'
+				+ relativePath.substring(lastSeparator + 1);
+	}
+
+	/**
+	 * Find the first occurrence of a byte sequence
+	 * 
+	 * @param data    Data to search in
+	 * @param pattern Byte sequence to search for
+	 * @return position of first occurrence or -1 if not found
+	 */
+	static int indexOf(byte[] data, byte[] pattern) {
+		outer: for (int i = 0; i <= data.length - pattern.length; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if (data[i + j] != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Task to search a directory of the namespace tree. Sub-directories are
+	 * processed as separate tasks.
+	 */
+	private static class DirectoryTask extends RecursiveTask<List<DiscoveredConnection>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private String pkgName;
+		private File dir;
+		private String relativePath;
+
+		/**
+		 * Initialize for a single directory
+		 * 
+		 * @param pkgName      Name of package
+		 * @param dir          Directory to search
+		 * @param relativePath Path of the directory relative to the namespace
+		 *                     directory, with '/' as separator
+		 */
+		DirectoryTask(String pkgName, File dir, String relativePath) {
+			this.pkgName = pkgName;
+			this.dir = dir;
+			this.relativePath = relativePath;
+		}
+
+		@Override
+		protected List<DiscoveredConnection> compute() {
+			List<DiscoveredConnection> out = new ArrayList<DiscoveredConnection>();
+			File[] children = dir.listFiles();
+			if (children == null) {
+				return out;
+			}
+
+			List<DirectoryTask> subTasks = new ArrayList<DirectoryTask>();
+			for (File child : children) {
+				if (child.isDirectory()) {
+					String childPath = relativePath.isEmpty() ? child.getName()
+							: relativePath + '/' + child.getName();
+					DirectoryTask subTask = new DirectoryTask(pkgName, child, childPath);
+					subTask.fork();
+					subTasks.add(subTask);
+				} else if (!relativePath.isEmpty() && child.getName().equals(PackageStore.NDF_FILE)) {
+					DiscoveredConnection conn = inspect(pkgName, relativePath, child);
+					if (conn != null) {
+						out.add(conn);
+					}
+				}
+			}
+
+			for (DirectoryTask subTask : subTasks) {
+				out.addAll(subTask.join());
+			}
+			return out;
+		}
+	}
+
+}
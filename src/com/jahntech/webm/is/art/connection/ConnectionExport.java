@@ -0,0 +1,266 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports the settings of connections, so that the configuration of an
+ * installation can be audited. Passwords are never exported.
+ * 
+ * <p>
+ * Connections are decoded concurrently on the same number of threads as used by
+ * {@link UpdatePipeline}, but records are written in the order of the
+ * connections. At most two connections per thread are decoded ahead of the
+ * writer, so memory usage does not depend on the number of connections.
+ */
+public class ConnectionExport {
+
+	/**
+	 * Output format
+	 */
+	public enum Format {
+
+		/**
+		 * One JSON object per connection and line
+		 */
+		JSON_LINES("jsonl"),
+
+		/**
+		 * One CSV row per setting, with a header row
+		 */
+		CSV("csv");
+
+		private String name;
+
+		private Format(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Get name as used on the command line
+		 * 
+		 * @return name of format
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get format by its name as used on the command line
+		 * 
+		 * @param name Name of format
+		 * @return format
+		 * @throws IllegalArgumentException if no format with the name exists
+		 */
+		public static Format fromName(String name) throws IllegalArgumentException {
+			for (Format format : values()) {
+				if (format.name.equalsIgnoreCase(name)) {
+					return format;
+				}
+			}
+			throw new IllegalArgumentException("Unknown export format '" + name + "', use '" + JSON_LINES.name
+					+ "' or '" + CSV.name + "'");
+		}
+	}
+
+	private Format format;
+	private int threads;
+
+	/**
+	 * Initialize with format
+	 * 
+	 * @param format Output format
+	 */
+	public ConnectionExport(Format format) {
+		this(format, Integer.getInteger(UpdatePipeline.PROPERTY_THREADS, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Initialize with format and a specific number of threads for decoding
+	 * 
+	 * @param format  Output format
+	 * @param threads Maximum number of decoding threads
+	 */
+	public ConnectionExport(Format format, int threads) {
+		super();
+		this.format = format;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Write the settings of all connections. Connections that cannot be decoded are
+	 * skipped and counted.
+	 * 
+	 * @param connections Connections to export
+	 * @param out         Destination of the export
+	 * @return number of connections that could not be exported
+	 * @throws IOException          if writing fails
+	 * @throws InterruptedException if interrupted while waiting for decoding
+	 */
+	public int export(List<DiscoveredConnection> connections, Writer out) throws IOException, InterruptedException {
+		if (format == Format.CSV) {
+			out.write("package,alias,adapterType,setting,value\n");
+		}
+
+		int failures = 0;
+		int window = threads * 2;
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new UpdatePipeline.WorkerThreadFactory());
+		try {
+			Deque<Future<Map<String, String>>> inFlight = new ArrayDeque<Future<Map<String, String>>>();
+			Deque<DiscoveredConnection> pending = new ArrayDeque<DiscoveredConnection>();
+			for (DiscoveredConnection connection : connections) {
+				if (inFlight.size() >= window) {
+					failures += writeNext(pending.removeFirst(), inFlight.removeFirst(), out);
+				}
+				pending.addLast(connection);
+				inFlight.addLast(executor.submit(() -> readSettings(connection)));
+			}
+			while (!inFlight.isEmpty()) {
+				failures += writeNext(pending.removeFirst(), inFlight.removeFirst(), out);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		out.flush();
+		return failures;
+	}
+
+	/**
+	 * Wait for the settings of the next connection and write them
+	 * 
+	 * @param connection Connection
+	 * @param settings   Settings being decoded
+	 * @param out        Destination of the export
+	 * @return 1 if the connection could not be decoded, otherwise 0
+	 * @throws IOException          if writing fails
+	 * @throws InterruptedException if interrupted while waiting for decoding
+	 */
+	private int writeNext(DiscoveredConnection connection, Future<Map<String, String>> settings, Writer out)
+			throws IOException, InterruptedException {
+		try {
+			write(connection, settings.get(), out);
+			return 0;
+		} catch (ExecutionException e) {
+			System.err.println("Cannot export connection " + connection.getConnAlias() + " of package "
+					+ connection.getPackageName() + ": " + e.getCause());
+			return 1;
+		}
+	}
+
+	/**
+	 * Decode the settings of a connection, without passwords
+	 * 
+	 * @param connection Connection
+	 * @return settings by path
+	 */
+	static Map<String, String> readSettings(DiscoveredConnection connection) {
+		ConnectionFile conFile = ConnectionFile.forReading(connection.getNodeNdfFile().getParentFile(),
+				connection.getConnAlias(), false);
+		Map<String, String> settings = new ConnectionDetails(conFile.getConnectionDetails()).getSettings();
+		settings.keySet().removeIf(ConnectionExport::isPassword);
+		return settings;
+	}
+
+	/**
+	 * Check whether a setting holds a password. Besides
+	 * {@value CommandLine#KEY_PASSWORD} this covers passwords that some adapters
+	 * use in addition, e.g. for key stores.
+	 * 
+	 * @param path Path of setting
+	 * @return <code>true</code> if the setting holds a password
+	 */
+	static boolean isPassword(String path) {
+		String lastPathElement = path.substring(path.lastIndexOf('.') + 1);
+		return lastPathElement.toLowerCase().contains("password");
+	}
+
+	/**
+	 * Write the record(s) for one connection
+	 * 
+	 * @param connection Connection
+	 * @param settings   Settings by path
+	 * @param out        Destination of the export
+	 * @throws IOException if writing fails
+	 */
+	private void write(DiscoveredConnection connection, Map<String, String> settings, Writer out)
+			throws IOException {
+		if (format == Format.CSV) {
+			for (Map.Entry<String, String> setting : settings.entrySet()) {
+				out.write(toCsv(connection.getPackageName()));
+				out.write(',');
+				out.write(toCsv(connection.getConnAlias()));
+				out.write(',');
+				out.write(toCsv(connection.getAdapterType()));
+				out.write(',');
+				out.write(toCsv(setting.getKey()));
+				out.write(',');
+				out.write(toCsv(setting.getValue()));
+				out.write('\n');
+			}
+		} else {
+			out.write("{\"package\":");
+			out.write(Json.quote(connection.getPackageName()));
+			out.write(",\"alias\":");
+			out.write(Json.quote(connection.getConnAlias()));
+			out.write(",\"adapterType\":");
+			out.write(Json.quote(connection.getAdapterType()));
+			out.write(",\"settings\":{");
+			boolean first = true;
+			for (Map.Entry<String, String> setting : settings.entrySet()) {
+				if (!first) {
+					out.write(',');
+				}
+				first = false;
+				out.write(Json.quote(setting.getKey()));
+				out.write(':');
+				out.write(Json.quote(setting.getValue()));
+			}
+			out.write("}}\n");
+		}
+	}
+
+	/**
+	 * Format a value as CSV field, quoted only if necessary
+	 * 
+	 * @param value Value, may be <code>null</code>
+	 * @return CSV field
+	 */
+	static String toCsv(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+				&& value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+}
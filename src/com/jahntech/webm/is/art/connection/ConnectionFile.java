@@ -19,10 +19,18 @@
 
 package com.jahntech.webm.is.art.connection;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Base64;
 
 import com.wm.app.b2b.server.PackageStore;
@@ -34,6 +42,27 @@ import com.wm.util.coder.XMLCoder;
 /**
  * Wrapper around the `node.ndf` file that contains the details of an ART
  * adapter connection
+ * 
+ * <p>
+ * A lazy instance (see {@link #ConnectionFile(File, String, boolean)}) only
+ * reads the file. The connection details are decoded on first access, so that
+ * the other values of the node (e.g. the adapter type) can be checked cheaply
+ * for many connections.
+ * 
+ * <p>
+ * An instance created via {@link #forReading(File, String, boolean)} does not
+ * require the file to be writable and cannot be written. This allows read-only
+ * use (e.g. exporting settings) on read-only installations.
+ * 
+ * <p>
+ * The file is memory-mapped for reading, so that it does not occupy the heap.
+ * The encoded connection details are decoded straight from the mapped file into
+ * a pooled buffer (see {@link DecodeBuffers}), which limits the memory used by
+ * concurrent decodings.
+ * 
+ * <p>
+ * If the file cannot be read or decoded, the constructors and getters throw an
+ * {@link UncheckedIOException} with the cause.
  */
 public class ConnectionFile {
 
@@ -42,6 +71,33 @@ public class ConnectionFile {
 	 */
 	public static final String KEY_IRTNODE_PROPERTY_ENC = "IRTNODE_PROPERTY";
 
+	/**
+	 * Key for the value in the file that contains the type of the adapter (e.g.
+	 * JDBCAdapter). In contrast to the connection values it is stored in clear
+	 * text.
+	 */
+	public static final String KEY_ADAPTER_TYPE = "adapterTypeName";
+
+	/**
+	 * Key for the value in the file that contains the type of the node
+	 */
+	public static final String KEY_NODE_TYPE = "node_type";
+
+	/**
+	 * Key for the value that contains whether the connection is enabled
+	 */
+	public static final String KEY_CONNECTION_ENABLED = "connectionEnabled";
+
+	/**
+	 * Java system property to control whether files are memory-mapped for
+	 * reading. This is the default on all platforms except Windows, where a
+	 * mapped file cannot be replaced as long as the mapping exists.
+	 */
+	public static final String PROPERTY_MMAP = "jtacu.mmap";
+
+	private static final boolean MMAP = Boolean.parseBoolean(System.getProperty(PROPERTY_MMAP,
+			String.valueOf(!System.getProperty("os.name", "").toLowerCase().startsWith("windows"))));
+
 	/**
 	 * Directory to hold the file with the connection information
 	 */
@@ -53,25 +109,112 @@ public class ConnectionFile {
 	private File nodeNdfFile;
 
 	/**
-	 * Content of connection file as {@link Values} object
+	 * Content of connection file as {@link Values} object. Only used if the raw
+	 * file content cannot be processed directly.
 	 */
 	private Values nodeValues = null;
 
+	/**
+	 * Raw content of connection file
+	 */
+	private RawNodeFile rawNodeFile = null;
+
+	/**
+	 * Values of the node except the connection details. Only decoded on first
+	 * access.
+	 */
+	private Values header = null;
+
 	/**
 	 * Connection details as {@link IData} object
 	 */
 	private IData connectionDetails = null;
 
+	/**
+	 * Whether the connection details have been decoded
+	 */
+	private boolean decoded = false;
+
+	/**
+	 * Hash of the connection details in their binary encoding, as read from the
+	 * file. Used to detect whether the file needs to be written at all.
+	 */
+	private String settingsHash = null;
+
+	/**
+	 * Connection alias, used to label measurements (see {@link PhaseTimer})
+	 */
+	private String connAlias;
+
+	/**
+	 * Whether the file is only read, so that it need not be writable
+	 */
+	private boolean readOnly;
+
 	/**
 	 * Initialize with directory that holds the file with connection node.
 	 * 
 	 * @param nodeNdfDir Directory that holds the file with the connection details
 	 */
 	public ConnectionFile(File nodeNdfDir) {
+		this(nodeNdfDir, nodeNdfDir.getName());
+	}
+
+	/**
+	 * Initialize with directory that holds the file with connection node and the
+	 * connection alias.
+	 * 
+	 * @param nodeNdfDir Directory that holds the file with the connection details
+	 * @param connAlias  Connection alias
+	 */
+	public ConnectionFile(File nodeNdfDir, String connAlias) {
+		this(nodeNdfDir, connAlias, false);
+	}
+
+	/**
+	 * Initialize with directory that holds the file with connection node and the
+	 * connection alias. The file is always read, but with <code>lazy</code> the
+	 * connection details are only decoded on first access.
+	 * 
+	 * @param nodeNdfDir Directory that holds the file with the connection details
+	 * @param connAlias  Connection alias
+	 * @param lazy       Whether decoding the connection details is deferred
+	 */
+	public ConnectionFile(File nodeNdfDir, String connAlias, boolean lazy) {
+		this(nodeNdfDir, connAlias, lazy, false);
+	}
+
+	/**
+	 * Initialize with all options
+	 * 
+	 * @param nodeNdfDir Directory that holds the file with the connection details
+	 * @param connAlias  Connection alias
+	 * @param lazy       Whether decoding the connection details is deferred
+	 * @param readOnly   Whether the file is only read
+	 */
+	private ConnectionFile(File nodeNdfDir, String connAlias, boolean lazy, boolean readOnly) {
 		this.nodeNdfDir = nodeNdfDir;
+		this.connAlias = connAlias;
+		this.readOnly = readOnly;
 		nodeNdfFile = new File(nodeNdfDir, PackageStore.NDF_FILE);
 		check();
 		read();
+		if (!lazy) {
+			decode();
+		}
+	}
+
+	/**
+	 * Open a file only for reading. The file need not be writable, and
+	 * {@link #write(DirectorySyncGroup, BackupStore)} is not possible.
+	 * 
+	 * @param nodeNdfDir Directory that holds the file with the connection details
+	 * @param connAlias  Connection alias
+	 * @param lazy       Whether decoding the connection details is deferred
+	 * @return connection file
+	 */
+	public static ConnectionFile forReading(File nodeNdfDir, String connAlias, boolean lazy) {
+		return new ConnectionFile(nodeNdfDir, connAlias, lazy, true);
 	}
 
 	/**
@@ -92,19 +235,31 @@ public class ConnectionFile {
 		}
 
 		// File writable?
-		if (!nodeNdfFile.canWrite()) {
+		if (!readOnly && !nodeNdfFile.canWrite()) {
 			throw new IllegalArgumentException(
 					"File '" + FileUtils.getCanonicalPathWithFallback(nodeNdfFile) + "' is not writable");
 		}
 
 	}
 
+	/**
+	 * Get node.ndf file
+	 * 
+	 * @return file that holds the connection details
+	 */
+	public File getNodeNdfFile() {
+		return nodeNdfFile;
+	}
+
 	/**
 	 * Get connection details as {@link IData}
 	 * 
 	 * @return all connection details
 	 */
 	public IData getConnectionDetails() {
+		if (!decoded) {
+			decode();
+		}
 		return connectionDetails;
 	}
 
@@ -114,54 +269,296 @@ public class ConnectionFile {
 	 * @param connectionDetails details for adapter connection
 	 */
 	public void setConnectionDetails(IData connectionDetails) {
+		if (!decoded) {
+			// Needed for the hash that tells whether the file must be written
+			decode();
+		}
 		this.connectionDetails = connectionDetails;
 	}
 
 	/**
-	 * Read connection details from file and decode them
+	 * Get the values of the node except the connection details, without decoding
+	 * the latter
+	 * 
+	 * @return values of the node
+	 */
+	public Values getHeader() {
+		if (header == null) {
+			if (nodeValues != null) {
+				header = nodeValues;
+			} else {
+				try (PhaseTimer timer = PhaseTimer.start(Phase.DECODE, connAlias)) {
+					byte[] content = rawNodeFile.getContentWithoutValue();
+					timer.setBytes(content.length);
+					header = new XMLCoder().decode(new ByteArrayInputStream(content));
+				} catch (IOException e) {
+					throw new UncheckedIOException("Cannot decode '"
+							+ FileUtils.getCanonicalPathWithFallback(nodeNdfFile) + "'", e);
+				}
+			}
+		}
+		return header;
+	}
+
+	/**
+	 * Get type of the node
+	 * 
+	 * @return node type or <code>null</code> if not stored in the file
+	 */
+	public String getNodeType() {
+		return getHeader().getString(KEY_NODE_TYPE);
+	}
+
+	/**
+	 * Get type of the adapter (e.g. JDBCAdapter), without decoding the connection
+	 * details
+	 * 
+	 * @return adapter type or <code>null</code> if not stored in the file
+	 */
+	public String getAdapterType() {
+		return getHeader().getString(KEY_ADAPTER_TYPE);
+	}
+
+	/**
+	 * Check whether the connection is enabled, without decoding the connection
+	 * details. This is only possible if the state is stored in the file outside
+	 * of the connection details.
+	 * 
+	 * @return enabled state or <code>null</code> if not available
+	 */
+	public Boolean isEnabled() {
+		String enabled = getHeader().getString(KEY_CONNECTION_ENABLED);
+		return enabled == null ? null : Boolean.valueOf(enabled);
+	}
+
+	/**
+	 * Read the file. The encoded connection details are located directly in the
+	 * raw file content (see {@link RawNodeFile}), which is memory-mapped if
+	 * {@value #PROPERTY_MMAP} allows it; only if that is not possible, the entire
+	 * file is decoded via {@link XMLCoder}.
 	 */
 	private void read() {
 		try {
-			// Extract encoded connection details from file
-			XMLCoder nodeNdfFileXmlCoder = new XMLCoder();
-			nodeValues = nodeNdfFileXmlCoder.decode(new FileInputStream(nodeNdfFile));
+			if (MMAP) {
+				try (PhaseTimer timer = PhaseTimer.start(Phase.READ, connAlias);
+						FileChannel channel = FileChannel.open(nodeNdfFile.toPath(), StandardOpenOption.READ)) {
+					ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+					timer.setBytes(mapped.limit());
+					rawNodeFile = RawNodeFile.locate(mapped);
+				}
+				if (rawNodeFile != null) {
+					return;
+				}
+			}
+
+			byte[] content;
+			try (PhaseTimer timer = PhaseTimer.start(Phase.READ, connAlias)) {
+				content = Files.readAllBytes(nodeNdfFile.toPath());
+				timer.setBytes(content.length);
+			}
 
+			rawNodeFile = RawNodeFile.locate(content);
+			if (rawNodeFile == null) {
+				try (PhaseTimer timer = PhaseTimer.start(Phase.DECODE, connAlias)) {
+					XMLCoder nodeNdfFileXmlCoder = new XMLCoder();
+					nodeValues = nodeNdfFileXmlCoder.decode(new ByteArrayInputStream(content));
+					timer.setBytes(content.length);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(
+					"Cannot read '" + FileUtils.getCanonicalPathWithFallback(nodeNdfFile) + "'", e);
+		}
+	}
+
+	/**
+	 * Decode the connection details
+	 */
+	private void decode() {
+		if (rawNodeFile != null) {
+			decodeRaw();
+			decoded = true;
+			return;
+		}
+
+		try (PhaseTimer timer = PhaseTimer.start(Phase.DECODE, connAlias)) {
 			// Extract BASE64 String with settings
-			String irtNodePropBase64Enc = nodeValues.getString(KEY_IRTNODE_PROPERTY_ENC);
+			String irtNodePropBase64Enc = nodeValues == null ? null : nodeValues.getString(KEY_IRTNODE_PROPERTY_ENC);
+			if (irtNodePropBase64Enc == null) {
+				throw new IllegalArgumentException("File '" + FileUtils.getCanonicalPathWithFallback(nodeNdfFile)
+						+ "' does not contain connection details");
+			}
 
 			// Decode BASE64 into byte array
 			byte[] settingsBytes = Base64.getDecoder().decode(irtNodePropBase64Enc);
+			timer.setBytes(settingsBytes.length);
 
 			// Decode IData from byte array
 			IDataBinCoder ibc = new IDataBinCoder();
 			connectionDetails = ibc.decodeFromBytes(settingsBytes);
+			settingsHash = FileUtils.hash(settingsBytes);
+			decoded = true;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot decode connection details of '"
+					+ FileUtils.getCanonicalPathWithFallback(nodeNdfFile) + "'", e);
+		}
+	}
+
+	/**
+	 * Decode the connection details from the raw file content. The Base64 value is
+	 * decoded into a pooled buffer, from which the {@link IData} is decoded. The
+	 * raw value is released afterwards, so that a memory-mapped file is no longer
+	 * referenced.
+	 */
+	private void decodeRaw() {
+		try (DecodeBuffers.Lease lease = DecodeBuffers.acquire(rawNodeFile.getMaxDecodedLength(), connAlias)) {
+			try (PhaseTimer timer = PhaseTimer.start(Phase.DECODE, connAlias)) {
+				byte[] buffer = lease.getBuffer();
+				int length = rawNodeFile.decodeValue(buffer);
+				timer.setBytes(length);
 
+				IDataBinCoder ibc = new IDataBinCoder();
+				connectionDetails = ibc.decode(new ByteArrayInputStream(buffer, 0, length));
+				settingsHash = FileUtils.hash(buffer, 0, length);
+			}
+			rawNodeFile.releaseValue();
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException("Cannot decode connection details of '"
+					+ FileUtils.getCanonicalPathWithFallback(nodeNdfFile) + "'", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for a buffer");
+			interrupted.initCause(e);
+			throw new UncheckedIOException(interrupted);
 		}
 	}
 
 	/**
-	 * Encode connection details and write them to disk
+	 * Encode connection details and write them to disk. The new encoded details
+	 * are spliced into the original file content, so that all other bytes of the
+	 * file remain unchanged. Only if the file could not be read that way, the
+	 * entire file is encoded via {@link XMLCoder}. The file is replaced atomically
+	 * (see {@link AtomicFileWriter}). If the encoded connection details are
+	 * identical to those read from the file, nothing is written.
+	 * 
+	 * @return <code>true</code> if the file was written, <code>false</code> if it
+	 *         was unchanged
+	 * @throws IOException if the file cannot be written
 	 */
-	public void write() {
-		try {
+	public boolean write() throws IOException {
+		return write(null);
+	}
 
+	/**
+	 * Encode connection details and write them to disk, like {@link #write()}, but
+	 * defer syncing of the directory to a group
+	 * 
+	 * @param syncGroup Group for deferred directory syncs, may be
+	 *                  <code>null</code> to sync immediately
+	 * @return <code>true</code> if the file was written, <code>false</code> if it
+	 *         was unchanged
+	 * @throws IOException if the file cannot be written
+	 */
+	public boolean write(DirectorySyncGroup syncGroup) throws IOException {
+		return write(syncGroup, null);
+	}
+
+	/**
+	 * Encode connection details and write them to disk, like
+	 * {@link #write(DirectorySyncGroup)}, but store the previous file in a backup
+	 * store first. Unchanged files are not stored.
+	 * 
+	 * @param syncGroup   Group for deferred directory syncs, may be
+	 *                    <code>null</code> to sync immediately
+	 * @param backupStore Store for backups, may be <code>null</code> for no backup
+	 * @return <code>true</code> if the file was written, <code>false</code> if it
+	 *         was unchanged
+	 * @throws IOException           if the file cannot be written or stored
+	 * @throws IllegalStateException if the file was opened only for reading
+	 */
+	public boolean write(DirectorySyncGroup syncGroup, BackupStore backupStore)
+			throws IOException, IllegalStateException {
+		if (readOnly) {
+			throw new IllegalStateException("File '" + FileUtils.getCanonicalPathWithFallback(nodeNdfFile)
+					+ "' was opened only for reading");
+		}
+
+		// Connection details that were never decoded cannot have been changed
+		if (!decoded) {
+			return false;
+		}
+
+		byte[] irtNodePropBase64Enc;
+		String newSettingsHash;
+		try (PhaseTimer timer = PhaseTimer.start(Phase.ENCODE, connAlias)) {
 			// Encode IData into byte array
 			IDataBinCoder ibc = new IDataBinCoder();
 			byte[] settingsBytes = ibc.encodeToBytes(connectionDetails);
+			timer.setBytes(settingsBytes.length);
+
+			// Nothing to do if the connection details are unchanged
+			newSettingsHash = FileUtils.hash(settingsBytes);
+			if (newSettingsHash.equals(settingsHash)) {
+				return false;
+			}
+
+			// Encode byte array into BASE64
+			irtNodePropBase64Enc = Base64.getEncoder().encode(settingsBytes);
+		}
+
+		if (backupStore != null) {
+			backupStore.backup(nodeNdfFile);
+		}
 
-			// Encode byte array into BASE64 string
-			String irtNodePropBase64Enc = Base64.getEncoder().encodeToString(settingsBytes);
+		// Write file
+		try (PhaseTimer timer = PhaseTimer.start(Phase.WRITE, connAlias)) {
+			AtomicFileWriter.write(nodeNdfFile, out -> writeContent(out, irtNodePropBase64Enc), syncGroup);
+			timer.setBytes(nodeNdfFile.length());
+		}
+		settingsHash = newSettingsHash;
+		return true;
+	}
 
+	/**
+	 * Encode connection details into the complete content of a node.ndf file,
+	 * without writing it. This allows the content to be prepared in advance (see
+	 * {@link DeploymentBundle}).
+	 * 
+	 * @return new file content
+	 * @throws IOException if encoding fails
+	 */
+	public byte[] toByteArray() throws IOException {
+		byte[] irtNodePropBase64Enc;
+		try (PhaseTimer timer = PhaseTimer.start(Phase.ENCODE, connAlias)) {
+			IDataBinCoder ibc = new IDataBinCoder();
+			byte[] settingsBytes = ibc.encodeToBytes(getConnectionDetails());
+			timer.setBytes(settingsBytes.length);
+			irtNodePropBase64Enc = Base64.getEncoder().encode(settingsBytes);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeContent(out, irtNodePropBase64Enc);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Write the file content with new encoded connection details. These are
+	 * spliced into the original content if possible; otherwise the entire file is
+	 * encoded via {@link XMLCoder}.
+	 * 
+	 * @param out                  Stream to write to
+	 * @param irtNodePropBase64Enc BASE64 encoded connection details
+	 * @throws IOException if writing fails
+	 */
+	private void writeContent(OutputStream out, byte[] irtNodePropBase64Enc) throws IOException {
+		if (rawNodeFile != null) {
+			rawNodeFile.writeWithValue(out, irtNodePropBase64Enc);
+		} else {
 			// Update values with BASE64 String
-			nodeValues.put(KEY_IRTNODE_PROPERTY_ENC, irtNodePropBase64Enc);
+			nodeValues.put(KEY_IRTNODE_PROPERTY_ENC, new String(irtNodePropBase64Enc, StandardCharsets.US_ASCII));
 
-			// Write file
 			XMLCoder nodeNdfFileXmlCoder = new XMLCoder();
-			nodeNdfFileXmlCoder.encode(new FileOutputStream(nodeNdfFile), nodeValues);
-		} catch (IOException e) {
-			e.printStackTrace();
+			nodeNdfFileXmlCoder.encode(out, nodeValues);
 		}
 	}
 
@@ -0,0 +1,480 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.wm.app.b2b.server.PackageStore;
+
+/**
+ * Persistent index of all ART adapter connections of an Integration Server
+ * installation. For every connection alias it holds the package, the path
+ * relative to the package's namespace directory, as well as size, modification
+ * time, and content hash of the node.ndf file. The index is stored in the
+ * directory returned by {@link FileUtils#getToolDir(File)} and reused across
+ * runs.
+ * 
+ * <p>
+ * Looking up a single alias only checks size and modification time of the one
+ * node.ndf file, so the namespace tree is not touched. {@link #refresh()}
+ * brings the complete index up to date; only packages whose namespace
+ * directories changed since the last run are searched again, and only
+ * connections whose node.ndf file changed are read again.
+ * 
+ * <p>
+ * Writing a node.ndf file via {@link AtomicFileWriter} changes the modification
+ * time of its directory. The fingerprints of packages written by this tool (see
+ * {@link #updateAfterWrite(String)}) are therefore updated before the next
+ * refresh or save, so that these packages are not searched again.
+ * 
+ * <p>
+ * All public methods are thread-safe.
+ */
+public class ConnectionIndex {
+
+	private static final String FILE_NAME = "connection-index.txt";
+	private static final String FORMAT_HEADER = "# JTACU connection index v1";
+	private static final String SEPARATOR = "\t";
+	private static final String RECORD_PACKAGE = "P";
+	private static final String RECORD_CONNECTION = "C";
+
+	private File isHome;
+	private File indexFile;
+
+	/**
+	 * Connections by alias
+	 */
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * Fingerprint of the namespace directory tree by package name
+	 */
+	private Map<String, String> packageFingerprints = new TreeMap<String, String>();
+
+	/**
+	 * Packages with node.ndf files written by this tool since their fingerprint
+	 * was taken
+	 */
+	private Set<String> writtenPackages = new HashSet<String>();
+
+	private boolean modified = false;
+
+	/**
+	 * Initialize for an Integration Server installation. An existing index is
+	 * loaded from disk; if there is none or it cannot be read, the index starts
+	 * empty.
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @throws IOException if the directory for the index cannot be created
+	 */
+	public ConnectionIndex(File isHome) throws IOException {
+		super();
+		this.isHome = isHome;
+		indexFile = new File(FileUtils.getToolDir(isHome), FILE_NAME);
+		if (indexFile.exists()) {
+			try {
+				load();
+			} catch (IOException | RuntimeException e) {
+				System.out.println("Ignoring unreadable connection index '"
+						+ FileUtils.getCanonicalPathWithFallback(indexFile) + "' : " + e.getMessage());
+				entries.clear();
+				packageFingerprints.clear();
+				modified = true;
+			}
+		}
+	}
+
+	/**
+	 * Look up a connection without touching the namespace tree. The entry is only
+	 * returned if size and modification time of its node.ndf file still match.
+	 * 
+	 * @param connAlias Connection alias
+	 * @return entry or <code>null</code> if the alias is unknown or the entry is
+	 *         outdated
+	 */
+	public synchronized Entry lookup(String connAlias) {
+		Entry entry = entries.get(connAlias);
+		if (entry == null || !entry.isCurrent()) {
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Get all connections. Call {@link #refresh()} before to make sure the index
+	 * is up to date.
+	 * 
+	 * @return all connections in the index
+	 */
+	public synchronized Collection<Entry> getEntries() {
+		return new ArrayList<Entry>(entries.values());
+	}
+
+	/**
+	 * Bring the index up to date with the file system. Packages that were added or
+	 * whose namespace directory tree changed are searched again using
+	 * {@link ConnectionDiscovery}; entries of removed packages are dropped.
+	 */
+	public synchronized void refresh() {
+		updateWrittenFingerprints();
+		ConnectionDiscovery discovery = new ConnectionDiscovery(isHome);
+
+		Map<String, String> currentFingerprints = new TreeMap<String, String>();
+		File[] pkgDirs = ConnectionDiscovery.getPackagesDir(isHome).listFiles(File::isDirectory);
+		if (pkgDirs != null) {
+			for (File pkgDir : pkgDirs) {
+				File nsDir = ConnectionDiscovery.getNamespaceDir(isHome, pkgDir.getName());
+				if (nsDir.isDirectory()) {
+					currentFingerprints.put(pkgDir.getName(), fingerprint(nsDir));
+				}
+			}
+		}
+
+		List<String> changedPkgs = new ArrayList<String>();
+		for (Map.Entry<String, String> pkg : currentFingerprints.entrySet()) {
+			if (!pkg.getValue().equals(packageFingerprints.get(pkg.getKey()))) {
+				changedPkgs.add(pkg.getKey());
+			}
+		}
+		boolean pkgsRemoved = !currentFingerprints.keySet().containsAll(packageFingerprints.keySet());
+
+		if (!changedPkgs.isEmpty() || pkgsRemoved) {
+			entries.values().removeIf(entry -> changedPkgs.contains(entry.packageName)
+					|| !currentFingerprints.containsKey(entry.packageName));
+			for (DiscoveredConnection conn : discovery.discover(changedPkgs)) {
+				put(conn);
+			}
+			packageFingerprints = currentFingerprints;
+			modified = true;
+		}
+
+		// Files can be rewritten in place without changing their directory
+		for (Entry entry : new ArrayList<Entry>(entries.values())) {
+			if (!entry.isCurrent()) {
+				File nodeNdfFile = entry.getNodeNdfFile();
+				DiscoveredConnection conn = nodeNdfFile.isFile()
+						? ConnectionDiscovery.inspect(entry.packageName, entry.relativePath, nodeNdfFile)
+						: null;
+				if (conn != null) {
+					put(conn);
+				} else {
+					entries.remove(entry.connAlias);
+					modified = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add or replace a connection in the index
+	 * 
+	 * @param conn Connection as found on disk
+	 */
+	public synchronized void put(DiscoveredConnection conn) {
+		File nodeNdfFile = conn.getNodeNdfFile();
+		File nsDir = ConnectionDiscovery.getNamespaceDir(isHome, conn.getPackageName());
+		String relativePath = nsDir.toPath().relativize(nodeNdfFile.getParentFile().toPath()).toString()
+				.replace(File.separatorChar, '/');
+		entries.put(conn.getConnAlias(),
+				new Entry(conn.getConnAlias(), conn.getPackageName(), relativePath, conn.getAdapterType(),
+						nodeNdfFile.length(), nodeNdfFile.lastModified(), conn.getContentHash()));
+		modified = true;
+	}
+
+	/**
+	 * Update size, modification time and hash of a connection after its node.ndf
+	 * file was changed by this tool. Unknown aliases are ignored.
+	 * 
+	 * @param connAlias Connection alias
+	 * @throws IOException if the file cannot be read
+	 */
+	public void updateAfterWrite(String connAlias) throws IOException {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(connAlias);
+		}
+		if (entry != null) {
+			// Hashing happens outside the lock, so that concurrent updates are not blocked
+			File nodeNdfFile = entry.getNodeNdfFile();
+			Entry updated = new Entry(connAlias, entry.packageName, entry.relativePath, entry.adapterType,
+					nodeNdfFile.length(), nodeNdfFile.lastModified(), FileUtils.hash(nodeNdfFile));
+			synchronized (this) {
+				entries.put(connAlias, updated);
+				writtenPackages.add(entry.packageName);
+				modified = true;
+			}
+		}
+	}
+
+	/**
+	 * Write index to disk, if it was changed. The file is replaced atomically where
+	 * the file system supports it. Each call writes to its own temporary file, so
+	 * that several processes saving at the same time do not interfere.
+	 * 
+	 * @throws IOException if the index cannot be written
+	 */
+	public synchronized void save() throws IOException {
+		updateWrittenFingerprints();
+		if (!modified) {
+			return;
+		}
+
+		Path tmpFile = Files.createTempFile(indexFile.getParentFile().toPath(), indexFile.getName() + ".", ".tmp");
+		try {
+			writeTo(tmpFile);
+			try {
+				Files.move(tmpFile, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+		modified = false;
+	}
+
+	/**
+	 * Take the fingerprints of known packages again whose node.ndf files were
+	 * written by this tool
+	 */
+	private void updateWrittenFingerprints() {
+		for (String pkgName : writtenPackages) {
+			if (packageFingerprints.containsKey(pkgName)) {
+				File nsDir = ConnectionDiscovery.getNamespaceDir(isHome, pkgName);
+				if (nsDir.isDirectory()) {
+					packageFingerprints.put(pkgName, fingerprint(nsDir));
+					modified = true;
+				}
+			}
+		}
+		writtenPackages.clear();
+	}
+
+	/**
+	 * Write all entries to a file
+	 * 
+	 * @param file File to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeTo(Path file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(FORMAT_HEADER);
+			writer.newLine();
+			for (Map.Entry<String, String> pkg : packageFingerprints.entrySet()) {
+				writer.write(RECORD_PACKAGE + SEPARATOR + pkg.getKey() + SEPARATOR + pkg.getValue());
+				writer.newLine();
+			}
+			for (Entry entry : new TreeMap<String, Entry>(entries).values()) {
+				writer.write(RECORD_CONNECTION + SEPARATOR + entry.connAlias + SEPARATOR + entry.packageName
+						+ SEPARATOR + entry.relativePath + SEPARATOR
+						+ (entry.adapterType == null ? "" : entry.adapterType) + SEPARATOR + entry.size + SEPARATOR
+						+ entry.lastModified + SEPARATOR + entry.contentHash);
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Read index from disk
+	 * 
+	 * @throws IOException if the index cannot be read
+	 */
+	private void load() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (!FORMAT_HEADER.equals(line)) {
+				throw new IOException("Unsupported format");
+			}
+			while ((line = reader.readLine()) != null) {
+				String[] columns = line.split(SEPARATOR, -1);
+				if (columns[0].equals(RECORD_PACKAGE)) {
+					packageFingerprints.put(columns[1], columns[2]);
+				} else if (columns[0].equals(RECORD_CONNECTION)) {
+					entries.put(columns[1], new Entry(columns[1], columns[2], columns[3],
+							columns[4].isEmpty() ? null : columns[4], Long.parseLong(columns[5]),
+							Long.parseLong(columns[6]), columns[7]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculate a fingerprint of a namespace directory tree. It is built from the
+	 * modification times of all directories, which change whenever a node is
+	 * added, removed, or renamed. Only file metadata is accessed, no file content.
+	 * 
+	 * @param nsDir Namespace directory of a package
+	 * @return fingerprint
+	 */
+	private String fingerprint(File nsDir) {
+		StringBuilder data = new StringBuilder();
+		appendDirectoryTimes(nsDir, "", data);
+		return FileUtils.hash(data.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Recursively collect modification times of a directory and its
+	 * sub-directories
+	 * 
+	 * @param dir          Directory to start with
+	 * @param relativePath Path relative to namespace directory
+	 * @param data         Collected data
+	 */
+	private void appendDirectoryTimes(File dir, String relativePath, StringBuilder data) {
+		data.append(relativePath).append('=').append(dir.lastModified()).append('\n');
+		File[] subDirs = dir.listFiles(File::isDirectory);
+		if (subDirs != null) {
+			Arrays.sort(subDirs);
+			for (File subDir : subDirs) {
+				appendDirectoryTimes(subDir, relativePath + '/' + subDir.getName(), data);
+			}
+		}
+	}
+
+	/**
+	 * Single connection within the index
+	 */
+	public class Entry {
+
+		private String connAlias;
+		private String packageName;
+		private String relativePath;
+		private String adapterType;
+		private long size;
+		private long lastModified;
+		private String contentHash;
+
+		/**
+		 * Initialize with all details
+		 * 
+		 * @param connAlias    Connection alias
+		 * @param packageName  Name of package
+		 * @param relativePath Path of the node directory relative to the namespace
+		 *                     directory, with '/' as separator
+		 * @param adapterType  Type of the adapter, may be <code>null</code>
+		 * @param size         Size of node.ndf file
+		 * @param lastModified Modification time of node.ndf file
+		 * @param contentHash  Content hash of node.ndf file
+		 */
+		Entry(String connAlias, String packageName, String relativePath, String adapterType, long size,
+				long lastModified, String contentHash) {
+			this.connAlias = connAlias;
+			this.packageName = packageName;
+			this.relativePath = relativePath;
+			this.adapterType = adapterType;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+		}
+
+		/**
+		 * Check whether the node.ndf file is unchanged since the entry was created
+		 * 
+		 * @return <code>true</code> if size and modification time still match
+		 */
+		boolean isCurrent() {
+			File nodeNdfFile = getNodeNdfFile();
+			return nodeNdfFile.length() == size && nodeNdfFile.lastModified() == lastModified;
+		}
+
+		/**
+		 * Get connection alias
+		 * 
+		 * @return connection alias
+		 */
+		public String getConnAlias() {
+			return connAlias;
+		}
+
+		/**
+		 * Get name of package
+		 * 
+		 * @return name of package, in which the connection alias is stored
+		 */
+		public String getPackageName() {
+			return packageName;
+		}
+
+		/**
+		 * Get adapter type
+		 * 
+		 * @return type of the adapter, or <code>null</code> if not known
+		 */
+		public String getAdapterType() {
+			return adapterType;
+		}
+
+		/**
+		 * Get content hash of node.ndf file
+		 * 
+		 * @return content hash as of the time the entry was created
+		 */
+		public String getContentHash() {
+			return contentHash;
+		}
+
+		/**
+		 * Get directory that holds the node.ndf file
+		 * 
+		 * @return directory with connection details
+		 */
+		public File getDir() {
+			return new File(ConnectionDiscovery.getNamespaceDir(isHome, packageName),
+					relativePath.replace('/', File.separatorChar));
+		}
+
+		/**
+		 * Get node.ndf file
+		 * 
+		 * @return file with connection details
+		 */
+		public File getNodeNdfFile() {
+			return new File(getDir(), PackageStore.NDF_FILE);
+		}
+
+		/**
+		 * Convert to an object as returned by {@link ConnectionDiscovery}
+		 * 
+		 * @return connection
+		 */
+		public DiscoveredConnection toDiscoveredConnection() {
+			return new DiscoveredConnection(packageName, connAlias, adapterType, getNodeNdfFile(), contentHash);
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Results of connection updates, shared by the updates of several Integration
+ * Server instances (see {@link MultiInstanceUpdate}). Instances often hold
+ * identical copies of the same package. If a node.ndf file has exactly the same
+ * content as one that was already updated with the same changes, the new
+ * content is taken from here instead of decoding, changing, and encoding the
+ * connection details again.
+ * 
+ * <p>
+ * Results are identified by the hash of the original file content and the key
+ * of the change set (see {@link ChangeSet#getKey()}). If an identical file is
+ * being updated in another instance right now, the caller waits for that
+ * result instead of computing it a second time.
+ */
+public class ConnectionResultCache {
+
+	private ConcurrentMap<String, CompletableFuture<Result>> results = new ConcurrentHashMap<String, CompletableFuture<Result>>();
+
+	/**
+	 * Get the result for a file and change set. If there is none yet, the caller
+	 * becomes responsible for computing it and must afterwards call either
+	 * {@link #put(String, ChangeSet, Result)} or {@link #fail(String, ChangeSet)}.
+	 * 
+	 * @param sourceHash Hash of the original file content
+	 * @param changeSet  Changes applied to the file
+	 * @return result or <code>null</code> if the caller must compute it
+	 * @throws InterruptedException if interrupted while waiting for another update
+	 */
+	Result claim(String sourceHash, ChangeSet changeSet) throws InterruptedException {
+		String key = getKey(sourceHash, changeSet);
+		while (true) {
+			CompletableFuture<Result> future = new CompletableFuture<Result>();
+			CompletableFuture<Result> existing = results.putIfAbsent(key, future);
+			if (existing == null) {
+				return null;
+			}
+			try {
+				return existing.get();
+			} catch (ExecutionException e) {
+				// The other update failed, so try to compute the result here
+				results.remove(key, existing);
+			}
+		}
+	}
+
+	/**
+	 * Provide a computed result to all other updates of identical files
+	 * 
+	 * @param sourceHash Hash of the original file content
+	 * @param changeSet  Changes applied to the file
+	 * @param result     Result of the update
+	 */
+	void put(String sourceHash, ChangeSet changeSet, Result result) {
+		CompletableFuture<Result> future = results.get(getKey(sourceHash, changeSet));
+		if (future != null) {
+			future.complete(result);
+		}
+	}
+
+	/**
+	 * Report that a result could not be computed, so that another update can try
+	 * 
+	 * @param sourceHash Hash of the original file content
+	 * @param changeSet  Changes applied to the file
+	 */
+	void fail(String sourceHash, ChangeSet changeSet) {
+		CompletableFuture<Result> future = results.get(getKey(sourceHash, changeSet));
+		if (future != null) {
+			future.completeExceptionally(new IllegalStateException("Update failed"));
+		}
+	}
+
+	/**
+	 * Get number of results
+	 * 
+	 * @return number of files and change sets for which a result exists or is
+	 *         being computed
+	 */
+	public int size() {
+		return results.size();
+	}
+
+	/**
+	 * Combine hash of the file and key of the changes
+	 * 
+	 * @param sourceHash Hash of the original file content
+	 * @param changeSet  Changes applied to the file
+	 * @return key for the results
+	 */
+	private static String getKey(String sourceHash, ChangeSet changeSet) {
+		return sourceHash + "/" + changeSet.getKey();
+	}
+
+	/**
+	 * Outcome of updating a file
+	 */
+	static class Result {
+
+		private List<ChangeSet.SettingChange> changes;
+		private byte[] content;
+
+		/**
+		 * Initialize
+		 * 
+		 * @param changes Changes of setting values
+		 * @param content New file content or <code>null</code> if the file was not
+		 *                changed
+		 */
+		Result(List<ChangeSet.SettingChange> changes, byte[] content) {
+			super();
+			this.changes = changes;
+			this.content = content;
+		}
+
+		/**
+		 * Get changes of setting values
+		 * 
+		 * @return changes, as reported when the result was computed
+		 */
+		List<ChangeSet.SettingChange> getChanges() {
+			return changes;
+		}
+
+		/**
+		 * Get new file content
+		 * 
+		 * @return new content or <code>null</code> if the file was not changed
+		 */
+		byte[] getContent() {
+			return content;
+		}
+	}
+
+}
@@ -0,0 +1,288 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Selects connections by criteria instead of listing them one by one. A
+ * selector consists of one or more terms separated by whitespace, all of which
+ * must match. Each term has the form <code>key=glob</code> or
+ * <code>key!=glob</code>, where the glob may contain <code>*</code> (any
+ * characters) and <code>?</code> (one character). Supported keys are
+ * 
+ * <ul>
+ * <li>{@value #KEY_PACKAGE}: name of the package</li>
+ * <li>{@value #KEY_ALIAS}: connection alias</li>
+ * <li>{@value #KEY_ADAPTER}: adapter type (e.g. JDBCAdapter)</li>
+ * <li>any setting path (e.g. connectionProperties.serverName): current value
+ * of the setting; a setting that does not exist never equals a glob</li>
+ * </ul>
+ * 
+ * Example: <code>adapter=JDBCAdapter connectionProperties.serverName=db-old</code>
+ * 
+ * <p>
+ * Terms are evaluated from cheap to expensive: package and alias are known
+ * without reading any file, the adapter type is usually known from the
+ * connection index and otherwise read without decoding the connection details
+ * (see {@link ConnectionFile#getAdapterType()}). The connection details are
+ * only decoded for connections that passed all other terms. This is done in
+ * parallel on the same number of threads as used by {@link UpdatePipeline}.
+ */
+public class ConnectionSelector {
+
+	/**
+	 * Key for the package name
+	 */
+	public static final String KEY_PACKAGE = "package";
+
+	/**
+	 * Key for the connection alias
+	 */
+	public static final String KEY_ALIAS = "alias";
+
+	/**
+	 * Key for the adapter type
+	 */
+	public static final String KEY_ADAPTER = "adapter";
+
+	private List<Term> metadataTerms = new ArrayList<Term>();
+	private List<Term> adapterTerms = new ArrayList<Term>();
+	private List<Term> settingTerms = new ArrayList<Term>();
+	private String expression;
+
+	/**
+	 * Parse a selector
+	 * 
+	 * @param expression Selector
+	 * @throws IllegalArgumentException if the selector is empty or has an invalid
+	 *                                  term
+	 */
+	public ConnectionSelector(String expression) throws IllegalArgumentException {
+		super();
+		this.expression = expression;
+		String trimmed = expression == null ? "" : expression.trim();
+		if (trimmed.isEmpty()) {
+			throw new IllegalArgumentException("Selector must not be empty");
+		}
+		for (String term : trimmed.split("\\s+")) {
+			Term parsed = Term.parse(term);
+			if (parsed.key.equals(KEY_PACKAGE) || parsed.key.equals(KEY_ALIAS)) {
+				metadataTerms.add(parsed);
+			} else if (parsed.key.equals(KEY_ADAPTER)) {
+				adapterTerms.add(parsed);
+			} else {
+				settingTerms.add(parsed);
+			}
+		}
+	}
+
+	/**
+	 * Select all matching connections
+	 * 
+	 * @param connections Connections to check
+	 * @return matching connections, in the same order
+	 * @throws InterruptedException if interrupted while evaluating
+	 */
+	public List<DiscoveredConnection> select(List<DiscoveredConnection> connections) throws InterruptedException {
+		// Cheap terms first, without starting any threads
+		List<DiscoveredConnection> candidates = new ArrayList<DiscoveredConnection>();
+		for (DiscoveredConnection connection : connections) {
+			if (matchesMetadata(connection)) {
+				candidates.add(connection);
+			}
+		}
+
+		List<DiscoveredConnection> selected = new ArrayList<DiscoveredConnection>();
+		if (candidates.isEmpty()) {
+			return selected;
+		}
+		int threads = Math.min(candidates.size(),
+				Math.max(1, Integer.getInteger(UpdatePipeline.PROPERTY_THREADS, Runtime.getRuntime().availableProcessors())));
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new UpdatePipeline.WorkerThreadFactory());
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (DiscoveredConnection candidate : candidates) {
+				futures.add(executor.submit(() -> matchesFile(candidate)));
+			}
+			for (int i = 0; i < candidates.size(); i++) {
+				try {
+					if (futures.get(i).get()) {
+						selected.add(candidates.get(i));
+					}
+				} catch (ExecutionException e) {
+					System.err.println("Cannot evaluate selector for connection " + candidates.get(i).getConnAlias()
+							+ " : " + e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return selected;
+	}
+
+	/**
+	 * Check the terms that do not need the node.ndf file. The adapter type is
+	 * included if it is already known.
+	 * 
+	 * @param connection Connection to check
+	 * @return <code>false</code> if the connection does not match
+	 */
+	private boolean matchesMetadata(DiscoveredConnection connection) {
+		for (Term term : metadataTerms) {
+			String value = term.key.equals(KEY_PACKAGE) ? connection.getPackageName() : connection.getConnAlias();
+			if (!term.matches(value)) {
+				return false;
+			}
+		}
+		if (connection.getAdapterType() != null) {
+			for (Term term : adapterTerms) {
+				if (!term.matches(connection.getAdapterType())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check the terms that need the node.ndf file. The connection details are only
+	 * decoded if there are terms for settings and the adapter type matched.
+	 * 
+	 * @param connection Connection to check
+	 * @return <code>true</code> if the connection matches
+	 */
+	private boolean matchesFile(DiscoveredConnection connection) {
+		boolean adapterKnown = connection.getAdapterType() != null;
+		if (adapterKnown && settingTerms.isEmpty()) {
+			return true;
+		}
+
+		ConnectionFile conFile = ConnectionFile.forReading(connection.getNodeNdfFile().getParentFile(),
+				connection.getConnAlias(), true);
+		if (!adapterKnown) {
+			for (Term term : adapterTerms) {
+				if (!term.matches(conFile.getAdapterType())) {
+					return false;
+				}
+			}
+		}
+		if (settingTerms.isEmpty()) {
+			return true;
+		}
+
+		ConnectionDetails conDetails = new ConnectionDetails(conFile.getConnectionDetails());
+		for (Term term : settingTerms) {
+			String value;
+			try {
+				value = conDetails.getSetting(term.key);
+			} catch (IllegalArgumentException e) {
+				value = null;
+			}
+			if (!term.matches(value)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	/**
+	 * A single term of a selector
+	 */
+	private static class Term {
+
+		private String key;
+		private boolean negated;
+		private Pattern pattern;
+
+		/**
+		 * Parse a term
+		 * 
+		 * @param term Term in the form <code>key=glob</code> or
+		 *             <code>key!=glob</code>
+		 * @return parsed term
+		 * @throws IllegalArgumentException if the term is invalid
+		 */
+		static Term parse(String term) throws IllegalArgumentException {
+			int pos = term.indexOf('=');
+			if (pos <= 0) {
+				throw new IllegalArgumentException(
+						"Selector term '" + term + "' must have the form key=value or key!=value");
+			}
+			Term out = new Term();
+			out.negated = term.charAt(pos - 1) == '!';
+			out.key = term.substring(0, out.negated ? pos - 1 : pos);
+			if (out.key.isEmpty()) {
+				throw new IllegalArgumentException("Selector term '" + term + "' has no key");
+			}
+			out.pattern = toPattern(term.substring(pos + 1));
+			return out;
+		}
+
+		/**
+		 * Check a value against the term
+		 * 
+		 * @param value Value, may be <code>null</code> if it does not exist
+		 * @return <code>true</code> if the value satisfies the term
+		 */
+		boolean matches(String value) {
+			boolean equal = value != null && pattern.matcher(value).matches();
+			return negated ? !equal : equal;
+		}
+
+		/**
+		 * Convert a glob into a regular expression
+		 * 
+		 * @param glob Glob with <code>*</code> and <code>?</code> as wildcards
+		 * @return compiled regular expression
+		 */
+		private static Pattern toPattern(String glob) {
+			StringBuilder regex = new StringBuilder();
+			StringBuilder literal = new StringBuilder();
+			for (char c : glob.toCharArray()) {
+				if (c == '*' || c == '?') {
+					if (literal.length() > 0) {
+						regex.append(Pattern.quote(literal.toString()));
+						literal.setLength(0);
+					}
+					regex.append(c == '*' ? ".*" : ".");
+				} else {
+					literal.append(c);
+				}
+			}
+			if (literal.length() > 0) {
+				regex.append(Pattern.quote(literal.toString()));
+			}
+			return Pattern.compile(regex.toString(), Pattern.DOTALL);
+		}
+	}
+
+}
@@ -0,0 +1,417 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+
+import com.wm.app.b2b.server.PackageStore;
+
+/**
+ * A single update of an ART adapter connection, i.e. the combination of
+ * package, connection alias, and the file that contains the changes. Used for
+ * both the single invocation from the command line and batch mode.
+ */
+public class ConnectionUpdate {
+
+	/**
+	 * Discards the detailed messages of updates that are only summarized
+	 */
+	private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+	private String packageName;
+	private String connAlias;
+	private File changePropsFile;
+	private ChangeSet changeSet = null;
+	private Set<String> instances = null;
+
+	/**
+	 * Initialize with the details of the connection to update
+	 * 
+	 * @param packageName     Name of package, in which the connection alias is
+	 *                        stored
+	 * @param connAlias       Connection alias
+	 * @param changePropsFile File that contains the changes
+	 */
+	public ConnectionUpdate(String packageName, String connAlias, File changePropsFile) {
+		super();
+		this.packageName = packageName;
+		this.connAlias = connAlias;
+		this.changePropsFile = changePropsFile;
+	}
+
+	/**
+	 * Initialize with the details of the connection to update and changes that are
+	 * already loaded, e.g. because they were received over the network
+	 * 
+	 * @param packageName Name of package, in which the connection alias is stored
+	 * @param connAlias   Connection alias
+	 * @param changeSet   Compiled changes
+	 */
+	public ConnectionUpdate(String packageName, String connAlias, ChangeSet changeSet) {
+		super();
+		this.packageName = packageName;
+		this.connAlias = connAlias;
+		this.changeSet = changeSet;
+	}
+
+	/**
+	 * Get name of package
+	 * 
+	 * @return name of package, in which the connection alias is stored
+	 */
+	public String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * Get connection alias
+	 * 
+	 * @return connection alias
+	 */
+	public String getConnAlias() {
+		return connAlias;
+	}
+
+	/**
+	 * Get file with changes
+	 * 
+	 * @return file that contains the changes, or <code>null</code> if the changes
+	 *         were provided directly
+	 */
+	public File getChangePropsFile() {
+		return changePropsFile;
+	}
+
+	/**
+	 * Restrict the update to some instances of Integration Server classic. This is
+	 * only relevant if several instances are updated in one run (see
+	 * {@link MultiInstanceUpdate}).
+	 * 
+	 * @param instances Names of the instances, or <code>null</code> for all
+	 */
+	public void setInstances(Set<String> instances) {
+		this.instances = instances;
+	}
+
+	/**
+	 * Get the instances the update is restricted to
+	 * 
+	 * @return names of the instances, or <code>null</code> for all
+	 */
+	public Set<String> getInstances() {
+		return instances;
+	}
+
+	/**
+	 * Check whether the update applies to an instance of Integration Server
+	 * classic
+	 * 
+	 * @param instanceName Name of the instance
+	 * @return <code>true</code> if the update is not restricted or the instance is
+	 *         one of those it is restricted to
+	 */
+	public boolean appliesTo(String instanceName) {
+		return instances == null || instances.contains(instanceName);
+	}
+
+	/**
+	 * Perform the update against the specified Integration Server installation.
+	 * A new password is only queued in the {@link PassManSession} and must be
+	 * stored afterwards via {@link PassManSession#storeQueued()}.
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @throws Exception if the update could not be performed
+	 */
+	public void apply(File isHome) throws Exception {
+		apply(isHome, null);
+	}
+
+	/**
+	 * Perform the update against the specified Integration Server installation.
+	 * The directory of the connection is taken from the index, if it holds a
+	 * current entry for the connection alias. Otherwise it is determined via
+	 * {@link ConnectionDirectory}. A new password is only queued in the
+	 * {@link PassManSession} and must be stored afterwards via
+	 * {@link PassManSession#storeQueued()}.
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @param index  Connection index, may be <code>null</code>
+	 * @throws Exception if the update could not be performed
+	 */
+	public void apply(File isHome, ConnectionIndex index) throws Exception {
+		apply(new UpdateContext(isHome, index, null), System.out);
+	}
+
+	/**
+	 * Perform the update within the specified context and write all messages to
+	 * the specified stream. This allows several updates to run concurrently without
+	 * their messages being interleaved (see {@link UpdatePipeline}).
+	 * 
+	 * @param context Context of the current run
+	 * @param out     Stream for messages
+	 * @throws Exception if the update could not be performed
+	 */
+	public void apply(UpdateContext context, PrintStream out) throws Exception {
+		apply(context, out, false);
+	}
+
+	/**
+	 * Perform the update within the specified context. With a summary only a
+	 * single line is written for the connection, unless the level
+	 * {@link LogSink.Level#DEBUG} is enabled. This keeps the output of batch runs
+	 * proportional to the number of connections instead of the number of
+	 * changed settings.
+	 * 
+	 * @param context Context of the current run
+	 * @param out     Stream for messages
+	 * @param summary <code>true</code> to summarize the changes of the
+	 *                connection in a single line
+	 * @throws Exception if the update could not be performed
+	 */
+	public void apply(UpdateContext context, PrintStream out, boolean summary) throws Exception {
+		File isHome = context.getIsHome();
+		boolean detailed = !summary || LogSink.isEnabled(LogSink.Level.DEBUG);
+		PrintStream detailOut = detailed ? out : NO_OUTPUT;
+
+		detailOut.println("Package name = " + packageName);
+		detailOut.println("Connection alias = " + connAlias);
+		if (changePropsFile != null) {
+			detailOut.println(
+					"Reading changes from file '" + FileUtils.getCanonicalPathWithFallback(changePropsFile) + "'");
+		}
+
+		File nodeNdfDir = resolveDirectory(context);
+		detailOut.println(
+				"Changing connection details in directory " + FileUtils.getCanonicalPathWithFallback(nodeNdfDir));
+
+		ChangeSet changeSet = getChangeSet(context);
+
+		// Other processes must not change the file between reading and writing it
+		List<ChangeSet.SettingChange> changes;
+		FileLocks.Handle lock = FileLocks.lockConnection(isHome, connAlias);
+		try {
+			ConnectionResultCache resultCache = context.getResultCache();
+			if (resultCache == null) {
+				changes = updateFile(context, nodeNdfDir, changeSet, detailOut);
+			} else {
+				changes = updateFileShared(context, resultCache, nodeNdfDir, changeSet, detailOut);
+			}
+		} finally {
+			lock.close();
+		}
+
+		boolean passwordQueued = false;
+		if (changeSet.getPassword() != null) {
+			detailOut.println("Changing password for handle : " + PassManSession.getHandle(connAlias));
+			passwordQueued = PassManSession.open(isHome).queuePassword(connAlias, changeSet.getPassword());
+			if (!passwordQueued) {
+				detailOut.println("  Password unchanged");
+			}
+		}
+
+		if (!detailed) {
+			out.println(summarize(changes, passwordQueued));
+		}
+	}
+
+	/**
+	 * Summarize the changes of the connection in a single line. Settings that
+	 * already had the new value are not counted.
+	 * 
+	 * @param changes        Changes of setting values
+	 * @param passwordQueued <code>true</code> if a new password was queued
+	 * @return summary
+	 */
+	private String summarize(List<ChangeSet.SettingChange> changes, boolean passwordQueued) {
+		StringBuilder paths = new StringBuilder();
+		int count = 0;
+		for (ChangeSet.SettingChange change : changes) {
+			if (change.isChanged()) {
+				if (count > 0) {
+					paths.append(", ");
+				}
+				paths.append(change.getPath());
+				count++;
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(packageName).append(" / ").append(connAlias).append(" : ");
+		sb.append(count).append(" setting(s) changed");
+		if (count > 0) {
+			sb.append(" (").append(paths).append(')');
+		}
+		if (passwordQueued) {
+			sb.append(", password queued");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Decode the connection details, apply the changes, and write the file if
+	 * anything was changed
+	 * 
+	 * @param context    Context of the current run
+	 * @param nodeNdfDir Directory that holds the node.ndf file of the connection
+	 * @param changeSet  Changes to apply
+	 * @param out        Stream for messages
+	 * @return changes of setting values
+	 * @throws IOException if the file cannot be written
+	 */
+	private List<ChangeSet.SettingChange> updateFile(UpdateContext context, File nodeNdfDir, ChangeSet changeSet,
+			PrintStream out) throws IOException {
+		ConnectionFile conFile = new ConnectionFile(nodeNdfDir, connAlias);
+		ConnectionDetails conDetails = new ConnectionDetails(conFile.getConnectionDetails());
+
+		List<ChangeSet.SettingChange> changes = PhaseTimer.time(Phase.UPDATE, connAlias,
+				() -> conDetails.update(changeSet));
+		printChanges(changes, out);
+
+		// Connections without any change are neither encoded nor written
+		if (conDetails.isChanged() && conFile.write(context.getSyncGroup(), context.getBackupStore())) {
+			if (context.getIndex() != null) {
+				context.getIndex().updateAfterWrite(connAlias);
+			}
+		} else {
+			out.println("No changes for connection details, file not written");
+		}
+		return changes;
+	}
+
+	/**
+	 * Update the file like {@link #updateFile(UpdateContext, File, ChangeSet,
+	 * PrintStream)}, but take the new content from the result cache if an
+	 * identical file was already updated with the same changes, e.g. in another
+	 * instance of Integration Server
+	 * 
+	 * @param context     Context of the current run
+	 * @param resultCache Results shared with other installations
+	 * @param nodeNdfDir  Directory that holds the node.ndf file of the connection
+	 * @param changeSet   Changes to apply
+	 * @param out         Stream for messages
+	 * @throws IOException          if the file cannot be read or written
+	 * @return changes of setting values
+	 * @throws InterruptedException if interrupted while waiting for another update
+	 */
+	private List<ChangeSet.SettingChange> updateFileShared(UpdateContext context, ConnectionResultCache resultCache,
+			File nodeNdfDir, ChangeSet changeSet, PrintStream out) throws IOException, InterruptedException {
+		File nodeNdfFile = new File(nodeNdfDir, PackageStore.NDF_FILE);
+		String sourceHash = FileUtils.hash(nodeNdfFile);
+
+		ConnectionResultCache.Result result = resultCache.claim(sourceHash, changeSet);
+		if (result == null) {
+			// Nobody has updated an identical file yet
+			try {
+				List<ChangeSet.SettingChange> changes = updateFile(context, nodeNdfDir, changeSet, out);
+				byte[] content = Files.readAllBytes(nodeNdfFile.toPath());
+				boolean written = !FileUtils.hash(content).equals(sourceHash);
+				resultCache.put(sourceHash, changeSet, new ConnectionResultCache.Result(changes, written ? content : null));
+				return changes;
+			} catch (Throwable e) {
+				// Updates of identical files wait for the result, so it must always be set
+				resultCache.fail(sourceHash, changeSet);
+				throw e;
+			}
+		}
+
+		out.println("Reusing result for identical file from another update");
+		printChanges(result.getChanges(), out);
+		byte[] content = result.getContent();
+		if (content == null) {
+			out.println("No changes for connection details, file not written");
+			return result.getChanges();
+		}
+
+		BackupStore backupStore = context.getBackupStore();
+		if (backupStore != null) {
+			backupStore.backup(nodeNdfFile);
+		}
+		try (PhaseTimer timer = PhaseTimer.start(Phase.WRITE, connAlias)) {
+			AtomicFileWriter.write(nodeNdfFile, stream -> stream.write(content), context.getSyncGroup());
+			timer.setBytes(content.length);
+		}
+		if (context.getIndex() != null) {
+			context.getIndex().updateAfterWrite(connAlias);
+		}
+		return result.getChanges();
+	}
+
+	/**
+	 * Print changes of setting values
+	 * 
+	 * @param changes Changes of setting values
+	 * @param out     Stream for messages
+	 */
+	private static void printChanges(List<ChangeSet.SettingChange> changes, PrintStream out) {
+		for (ChangeSet.SettingChange change : changes) {
+			// Settings that already have the new value are not reported
+			if (!change.isChanged()) {
+				continue;
+			}
+			out.println("Changing value for key " + change.getPath());
+			out.println("  Old value : " + change.getOldValue());
+			out.println("  New value : " + change.getNewValue());
+		}
+	}
+
+	/**
+	 * Determine the directory of the connection. It is taken from the index, if
+	 * that holds a current entry for the connection alias. Otherwise it is
+	 * determined via {@link ConnectionDirectory}.
+	 * 
+	 * @param context Context of the current run
+	 * @return directory that holds the node.ndf file of the connection
+	 */
+	File resolveDirectory(UpdateContext context) {
+		return PhaseTimer.time(Phase.DIRECTORY_RESOLUTION, connAlias, () -> {
+			ConnectionIndex index = context.getIndex();
+			if (index != null) {
+				ConnectionIndex.Entry entry = index.lookup(connAlias);
+				if (entry != null && entry.getPackageName().equals(packageName)) {
+					return entry.getDir();
+				}
+			}
+			return new ConnectionDirectory(context.getIsHome(), packageName, connAlias).getDir();
+		});
+	}
+
+	/**
+	 * Get the changes, either as provided directly or loaded from the file
+	 * 
+	 * @param context Context of the current run, which caches loaded files
+	 * @return compiled changes
+	 * @throws IOException if the file with changes cannot be read
+	 */
+	ChangeSet getChangeSet(UpdateContext context) throws IOException {
+		return changeSet != null ? changeSet : context.getChangeSet(changePropsFile);
+	}
+
+	@Override
+	public String toString() {
+		return packageName + " / " + connAlias;
+	}
+
+}
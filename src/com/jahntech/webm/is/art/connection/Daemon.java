@@ -0,0 +1,273 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Properties;
+
+/**
+ * Long-running mode that keeps the JVM, the resolved Integration Server
+ * installation, and PassMan initialized, and accepts update requests from
+ * {@link DaemonClient}. This avoids JVM start-up and class loading for every
+ * single update.
+ * 
+ * <p>
+ * The daemon listens on a TCP port of the loopback interface. Port and a random
+ * access token are written to {@value #FILE_NAME} in the directory returned by
+ * {@link FileUtils#getToolDir(File)}, which is only readable by the owner where
+ * the file system supports it. Requests without the correct token are rejected.
+ * 
+ * <p>
+ * Requests are processed strictly one after the other. Since there is one
+ * daemon per Integration Server installation, concurrent callers can therefore
+ * not corrupt node.ndf files or the PassMan data store. The daemon holds a lock
+ * (see {@link FileLocks#tryLockDaemon(File)}) while it runs, so that a second
+ * daemon for the same installation refuses to start instead of replacing the
+ * daemon file of the first one.
+ * 
+ * <p>
+ * Protocol: the client sends the token, a command, and for
+ * {@value #COMMAND_UPDATE} the package name, the connection alias, and the
+ * changes in properties format (all via {@link DataOutputStream}). The daemon
+ * replies with the messages of the update as text, followed by a line starting
+ * with {@value #EXIT_CODE_PREFIX} and the exit code.
+ */
+public class Daemon {
+
+	/**
+	 * Name of the file with port and access token
+	 */
+	public static final String FILE_NAME = "daemon.properties";
+
+	static final String KEY_PORT = "port";
+	static final String KEY_TOKEN = "token";
+
+	static final String COMMAND_UPDATE = "update";
+	static final String COMMAND_STOP = "stop";
+
+	static final String EXIT_CODE_PREFIX = "JTACU-EXIT-CODE ";
+
+	private static final int TOKEN_BYTES = 32;
+
+	/**
+	 * Time to wait for a client to send its request, so that a stuck client does
+	 * not block the daemon
+	 */
+	private static final int REQUEST_TIMEOUT_MILLIS = 30_000;
+
+	/**
+	 * Maximum size of the changes within a request
+	 */
+	static final int MAX_CHANGES_SIZE = 1024 * 1024;
+
+	private File isHome;
+	private File daemonFile;
+	private String token;
+	private ConnectionIndex index;
+	private boolean running = true;
+
+	/**
+	 * Initialize for an Integration Server installation
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @throws IOException if the directory for the daemon file cannot be created
+	 */
+	public Daemon(File isHome) throws IOException {
+		super();
+		this.isHome = isHome;
+		daemonFile = getDaemonFile(isHome);
+
+		byte[] tokenBytes = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(tokenBytes);
+		token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+	}
+
+	/**
+	 * Get the file with port and access token
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @return daemon file
+	 * @throws IOException if the directory cannot be created
+	 */
+	static File getDaemonFile(File isHome) throws IOException {
+		return new File(FileUtils.getToolDir(isHome), FILE_NAME);
+	}
+
+	/**
+	 * Accept and process requests until a stop request is received
+	 * 
+	 * @throws IOException           if the server socket cannot be opened
+	 * @throws IllegalStateException if a daemon for the installation is already
+	 *                               running
+	 */
+	public void run() throws IOException, IllegalStateException {
+		try (FileLocks.Handle lock = FileLocks.tryLockDaemon(isHome)) {
+			if (lock == null) {
+				throw new IllegalStateException("A daemon for this installation is already running, see "
+						+ FileUtils.getCanonicalPathWithFallback(daemonFile));
+			}
+			serve();
+		}
+	}
+
+	/**
+	 * Accept and process requests until a stop request is received, while holding
+	 * the lock of the daemon
+	 * 
+	 * @throws IOException if the server socket cannot be opened
+	 */
+	private void serve() throws IOException {
+		index = CommandLine.openIndex(isHome);
+
+		try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			writeDaemonFile(serverSocket.getLocalPort());
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> daemonFile.delete()));
+			System.out.println("Daemon listening on " + serverSocket.getLocalSocketAddress()
+					+ ", connection details in " + FileUtils.getCanonicalPathWithFallback(daemonFile));
+
+			while (running) {
+				try (Socket socket = serverSocket.accept()) {
+					handle(socket);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		} finally {
+			daemonFile.delete();
+			CommandLine.saveIndex(index);
+		}
+		System.out.println("Daemon stopped");
+	}
+
+	/**
+	 * Write port and token to the daemon file, readable only by the owner
+	 * 
+	 * @param port Port the daemon listens on
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeDaemonFile(int port) throws IOException {
+		Properties props = new Properties();
+		props.setProperty(KEY_PORT, Integer.toString(port));
+		props.setProperty(KEY_TOKEN, token);
+
+		Files.deleteIfExists(daemonFile.toPath());
+		Files.createFile(daemonFile.toPath());
+		if (Files.getFileAttributeView(daemonFile.toPath(), PosixFileAttributeView.class) != null) {
+			Files.setPosixFilePermissions(daemonFile.toPath(), PosixFilePermissions.fromString("rw-------"));
+		}
+		try (Writer writer = Files.newBufferedWriter(daemonFile.toPath(), StandardCharsets.UTF_8)) {
+			props.store(writer, "JTACU daemon");
+		}
+	}
+
+	/**
+	 * Process a single request
+	 * 
+	 * @param socket Connection to the client
+	 * @throws IOException if communication fails
+	 */
+	private void handle(Socket socket) throws IOException {
+		socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		OutputStream socketOut = new BufferedOutputStream(socket.getOutputStream());
+		PrintStream out = new PrintStream(socketOut, true, StandardCharsets.UTF_8.name());
+
+		if (!token.equals(in.readUTF())) {
+			out.println("Invalid access token");
+			out.println(EXIT_CODE_PREFIX + CommandLine.EXIT_CODE_WRONG_ARGUMENTS);
+			return;
+		}
+
+		String command = in.readUTF();
+		if (command.equals(COMMAND_STOP)) {
+			running = false;
+			out.println("Daemon is stopping");
+			out.println(EXIT_CODE_PREFIX + 0);
+		} else if (command.equals(COMMAND_UPDATE)) {
+			String packageName = in.readUTF();
+			String connAlias = in.readUTF();
+			int changesSize = in.readInt();
+			if (changesSize < 0 || changesSize > MAX_CHANGES_SIZE) {
+				out.println("Invalid size of changes : " + changesSize);
+				out.println(EXIT_CODE_PREFIX + CommandLine.EXIT_CODE_WRONG_ARGUMENTS);
+				return;
+			}
+			byte[] changes = new byte[changesSize];
+			in.readFully(changes);
+
+			System.out.println("Request for " + packageName + " / " + connAlias);
+			int exitCode = update(packageName, connAlias, new ByteArrayInputStream(changes), out);
+			out.println(EXIT_CODE_PREFIX + exitCode);
+		} else {
+			out.println("Unknown command '" + command + "'");
+			out.println(EXIT_CODE_PREFIX + CommandLine.EXIT_CODE_WRONG_ARGUMENTS);
+		}
+	}
+
+	/**
+	 * Perform an update
+	 * 
+	 * @param packageName Name of package, in which the connection alias is stored
+	 * @param connAlias   Connection alias
+	 * @param changes     Changes in properties format
+	 * @param out         Stream for messages to the client
+	 * @return exit code
+	 */
+	private int update(String packageName, String connAlias, InputStream changes, PrintStream out) {
+		try {
+			ConnectionUpdate update = new ConnectionUpdate(packageName, connAlias, ChangeSet.load(changes));
+			DirectorySyncGroup syncGroup = new DirectorySyncGroup();
+			UpdateContext context = new UpdateContext(isHome, index, syncGroup);
+			update.apply(context, out);
+			syncGroup.syncAll();
+			CommandLine.saveIndex(index);
+			boolean passwordFailed = CommandLine.storeQueuedPasswords(context, out).containsValue(false);
+			CommandLine.printBackupRun(context, out);
+			if (passwordFailed) {
+				return CommandLine.EXIT_CODE_UPDATE_FAILED;
+			}
+			out.println("Finished");
+			return 0;
+		} catch (Exception e) {
+			e.printStackTrace(out);
+			return CommandLine.EXIT_CODE_UPDATE_FAILED;
+		}
+	}
+
+}
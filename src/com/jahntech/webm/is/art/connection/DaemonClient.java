@@ -0,0 +1,135 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Thin client that forwards requests to a running {@link Daemon} of the same
+ * Integration Server installation
+ */
+public class DaemonClient {
+
+	private int port;
+	private String token;
+
+	/**
+	 * Initialize by reading port and access token of the daemon
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @throws IOException           if the daemon file cannot be read
+	 * @throws IllegalStateException if no daemon is running
+	 */
+	public DaemonClient(File isHome) throws IOException, IllegalStateException {
+		super();
+		File daemonFile = Daemon.getDaemonFile(isHome);
+		if (!daemonFile.exists()) {
+			throw new IllegalStateException("No daemon running for Integration Server installation '"
+					+ FileUtils.getCanonicalPathWithFallback(isHome) + "'");
+		}
+
+		Properties props = new Properties();
+		try (Reader reader = Files.newBufferedReader(daemonFile.toPath(), StandardCharsets.UTF_8)) {
+			props.load(reader);
+		}
+		port = Integer.parseInt(props.getProperty(Daemon.KEY_PORT));
+		token = props.getProperty(Daemon.KEY_TOKEN);
+	}
+
+	/**
+	 * Send an update request. The messages of the daemon are printed to
+	 * {@link System#out}.
+	 * 
+	 * @param packageName     Name of package, in which the connection alias is
+	 *                        stored
+	 * @param connAlias       Connection alias
+	 * @param changePropsFile File that contains the changes
+	 * @return exit code of the update
+	 * @throws IOException if communication fails
+	 */
+	public int update(String packageName, String connAlias, File changePropsFile) throws IOException {
+		byte[] changes = Files.readAllBytes(changePropsFile.toPath());
+		if (changes.length > Daemon.MAX_CHANGES_SIZE) {
+			throw new IllegalArgumentException("Change file '"
+					+ FileUtils.getCanonicalPathWithFallback(changePropsFile) + "' exceeds the maximum size of "
+					+ Daemon.MAX_CHANGES_SIZE + " bytes");
+		}
+
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(token);
+			out.writeUTF(Daemon.COMMAND_UPDATE);
+			out.writeUTF(packageName);
+			out.writeUTF(connAlias);
+			out.writeInt(changes.length);
+			out.write(changes);
+			out.flush();
+			return readResponse(socket);
+		}
+	}
+
+	/**
+	 * Ask the daemon to stop
+	 * 
+	 * @return exit code
+	 * @throws IOException if communication fails
+	 */
+	public int stop() throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(token);
+			out.writeUTF(Daemon.COMMAND_STOP);
+			out.flush();
+			return readResponse(socket);
+		}
+	}
+
+	/**
+	 * Print the messages of the daemon and extract the exit code
+	 * 
+	 * @param socket Connection to the daemon
+	 * @return exit code
+	 * @throws IOException if communication fails or the response is incomplete
+	 */
+	private int readResponse(Socket socket) throws IOException {
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith(Daemon.EXIT_CODE_PREFIX)) {
+				return Integer.parseInt(line.substring(Daemon.EXIT_CODE_PREFIX.length()).trim());
+			}
+			System.out.println(line);
+		}
+		throw new IOException("Daemon closed the connection without sending an exit code");
+	}
+
+}
@@ -0,0 +1,250 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of buffers for decoding connection details, with an upper bound for the
+ * memory held by all buffers. When many connections are processed concurrently
+ * (see {@link UpdatePipeline}), a thread waits for a buffer until other threads
+ * have released enough. This keeps the tool within tight memory limits, e.g. in
+ * init containers.
+ * 
+ * <p>
+ * The budget is set in megabytes via the Java system property
+ * {@value #PROPERTY_BUDGET_MB}. By default it is a quarter of the maximum heap
+ * size. A single decoding that is larger than the budget is still performed,
+ * but only while no other decoding is in progress.
+ * 
+ * <p>
+ * Released buffers of up to {@value #MAX_IDLE_BUFFER_BYTES} bytes are kept for
+ * reuse and still count against the budget. They are dropped when a thread
+ * needs their share of the budget. A buffer is only reused for a request of at
+ * least half its size, so that small decodings do not hold large buffers.
+ */
+public class DecodeBuffers {
+
+	/**
+	 * Java system property for the upper bound of memory used by decode buffers,
+	 * in megabytes
+	 */
+	public static final String PROPERTY_BUDGET_MB = "jtacu.decode.budgetMB";
+
+	/**
+	 * Granularity of the budget
+	 */
+	private static final int PERMIT_BYTES = 1024;
+
+	/**
+	 * Smallest buffer that is allocated, so that buffers can be reused for
+	 * connections of slightly different size
+	 */
+	private static final int MIN_BUFFER_BYTES = 16 * 1024;
+
+	/**
+	 * Largest buffer that is kept for reuse
+	 */
+	private static final int MAX_IDLE_BUFFER_BYTES = 1024 * 1024;
+
+	/**
+	 * Maximum number of idle buffers that are kept
+	 */
+	private static final int MAX_IDLE_BUFFERS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Time to wait for the budget before dropping another idle buffer
+	 */
+	private static final long EVICT_INTERVAL_MILLIS = 10;
+
+	private static final int BUDGET_PERMITS = getBudgetPermits();
+	private static final Semaphore BUDGET = new Semaphore(BUDGET_PERMITS, true);
+	private static final ConcurrentLinkedDeque<byte[]> IDLE = new ConcurrentLinkedDeque<byte[]>();
+
+	private DecodeBuffers() {
+	}
+
+	/**
+	 * Get a buffer of at least the requested size. Waits until the budget allows
+	 * it. The buffer must be returned by closing the lease.
+	 * 
+	 * @param size      Minimum size of the buffer in bytes
+	 * @param connAlias Connection alias, for timing
+	 * @return lease of the buffer
+	 * @throws InterruptedException if interrupted while waiting for the budget
+	 */
+	public static Lease acquire(int size, String connAlias) throws InterruptedException {
+		int capacity = getCapacity(size);
+		byte[] buffer = pollIdle(size, capacity);
+		if (buffer != null) {
+			// The budget for idle buffers is still held
+			return new Lease(buffer, getPermits(buffer.length));
+		}
+
+		int permits = getPermits(capacity);
+		while (!BUDGET.tryAcquire(permits)) {
+			if (!evictIdle()) {
+				PhaseTimer.time(Phase.DECODE_WAIT, connAlias, () -> {
+					// Buffers that become idle meanwhile are dropped, so that they do not
+					// keep the budget from waiting threads
+					while (!BUDGET.tryAcquire(permits, EVICT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+						evictIdle();
+					}
+					return null;
+				});
+				break;
+			}
+		}
+		return new Lease(new byte[capacity], permits);
+	}
+
+	/**
+	 * Get the budget
+	 * 
+	 * @return upper bound of memory used by decode buffers, in use or idle, in
+	 *         bytes
+	 */
+	public static long getBudgetBytes() {
+		return (long) BUDGET_PERMITS * PERMIT_BYTES;
+	}
+
+	/**
+	 * Round the requested size up to the next power of two, so that buffers fit a
+	 * range of sizes
+	 * 
+	 * @param size Minimum size of the buffer in bytes
+	 * @return size of the buffer to allocate
+	 */
+	static int getCapacity(int size) {
+		if (size <= MIN_BUFFER_BYTES) {
+			return MIN_BUFFER_BYTES;
+		} else if (size > (1 << 30)) {
+			return size;
+		}
+		return Integer.highestOneBit(size - 1) << 1;
+	}
+
+	/**
+	 * Get the part of the budget for a buffer
+	 * 
+	 * @param bytes Size of the buffer
+	 * @return permits
+	 */
+	private static int getPermits(int bytes) {
+		return Math.min(BUDGET_PERMITS, (bytes + PERMIT_BYTES - 1) / PERMIT_BYTES);
+	}
+
+	/**
+	 * Take an idle buffer that is large enough, but not more than twice the size
+	 * that would be allocated
+	 * 
+	 * @param size     Minimum size of the buffer in bytes
+	 * @param capacity Size of a new buffer for the request
+	 * @return buffer or <code>null</code> if there is none
+	 */
+	private static byte[] pollIdle(int size, int capacity) {
+		Iterator<byte[]> it = IDLE.iterator();
+		while (it.hasNext()) {
+			byte[] buffer = it.next();
+			if (buffer.length >= size && buffer.length / 2 <= capacity && IDLE.removeFirstOccurrence(buffer)) {
+				return buffer;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Drop the least recently used idle buffer and return its share of the budget
+	 * 
+	 * @return <code>true</code> if a buffer was dropped
+	 */
+	private static boolean evictIdle() {
+		byte[] buffer = IDLE.pollLast();
+		if (buffer == null) {
+			return false;
+		}
+		BUDGET.release(getPermits(buffer.length));
+		return true;
+	}
+
+	/**
+	 * Determine the budget from the system property or the maximum heap size
+	 * 
+	 * @return budget in permits
+	 */
+	private static int getBudgetPermits() {
+		long bytes;
+		Long megabytes = Long.getLong(PROPERTY_BUDGET_MB);
+		if (megabytes != null && megabytes > 0) {
+			bytes = megabytes * 1024 * 1024;
+		} else {
+			bytes = Runtime.getRuntime().maxMemory() / 4;
+		}
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / PERMIT_BYTES));
+	}
+
+	/**
+	 * A buffer in use. Closing the lease returns the buffer to the pool, or its
+	 * size to the budget if it is not kept.
+	 */
+	public static class Lease implements AutoCloseable {
+
+		private byte[] buffer;
+		private int permits;
+
+		/**
+		 * Initialize
+		 * 
+		 * @param buffer  Buffer
+		 * @param permits Part of the budget held for the buffer
+		 */
+		private Lease(byte[] buffer, int permits) {
+			this.buffer = buffer;
+			this.permits = permits;
+		}
+
+		/**
+		 * Get the buffer
+		 * 
+		 * @return buffer, only valid until the lease is closed
+		 */
+		public byte[] getBuffer() {
+			return buffer;
+		}
+
+		@Override
+		public void close() {
+			if (buffer == null) {
+				return;
+			}
+			if (buffer.length <= MAX_IDLE_BUFFER_BYTES && IDLE.size() < MAX_IDLE_BUFFERS
+					&& !BUDGET.hasQueuedThreads()) {
+				IDLE.offerFirst(buffer);
+			} else {
+				BUDGET.release(permits);
+			}
+			buffer = null;
+		}
+	}
+
+}
@@ -0,0 +1,232 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deployment bundle with fully encoded node.ndf files, so that all decoding and
+ * encoding can happen when a container image is built, instead of when the
+ * container starts.
+ * 
+ * <p>
+ * {@link #compile(UpdateContext, List, File, PrintStream)} applies the updates
+ * of a batch manifest in memory and stores the resulting files in the bundle,
+ * together with the hash of the source file they were created from and a copy
+ * of the file with changes. {@link #apply(UpdateContext, File, PrintStream)}
+ * installs a bundled file by plain (atomic) copy, if the hash of the file in
+ * the installation still matches. Otherwise, the update is performed as usual
+ * with the bundled file with changes.
+ * 
+ * <p>
+ * Passwords cannot be prepared in advance, since PassMan encrypts them with
+ * the key of the target installation. They are taken from the bundled files
+ * with changes and stored when the bundle is applied. Because of that the
+ * bundle directory is only accessible by its owner.
+ */
+public class DeploymentBundle {
+
+	private static final String FILE_NAME = "bundle.txt";
+	private static final String FORMAT_HEADER = "# JTACU deployment bundle v1";
+	private static final String SEPARATOR = "\t";
+	private static final String RECORD_CONNECTION = "C";
+	private static final String DIR_NODES = "nodes";
+	private static final String DIR_CHANGES = "changes";
+
+	/**
+	 * Create a bundle for the specified updates. The installation is not changed.
+	 * 
+	 * @param context   Context with the Integration Server installation the bundle
+	 *                  is created from
+	 * @param updates   Connection updates, each with a file that contains the
+	 *                  changes
+	 * @param bundleDir Directory for the bundle, which must not exist yet
+	 * @param out       Stream for messages
+	 * @throws Exception if the bundle cannot be created
+	 */
+	public static void compile(UpdateContext context, List<ConnectionUpdate> updates, File bundleDir,
+			PrintStream out) throws Exception {
+		if (bundleDir.exists()) {
+			throw new IllegalArgumentException(
+					"Bundle directory '" + FileUtils.getCanonicalPathWithFallback(bundleDir) + "' already exists");
+		}
+		Files.createDirectories(bundleDir.toPath());
+		if (Files.getFileAttributeView(bundleDir.toPath(), PosixFileAttributeView.class) != null) {
+			Files.setPosixFilePermissions(bundleDir.toPath(), PosixFilePermissions.fromString("rwx------"));
+		}
+		File nodesDir = new File(bundleDir, DIR_NODES);
+		File changesDir = new File(bundleDir, DIR_CHANGES);
+		Files.createDirectories(nodesDir.toPath());
+		Files.createDirectories(changesDir.toPath());
+
+		try (BufferedWriter writer = Files.newBufferedWriter(new File(bundleDir, FILE_NAME).toPath(),
+				StandardCharsets.UTF_8)) {
+			writer.write(FORMAT_HEADER);
+			writer.newLine();
+
+			for (int i = 0; i < updates.size(); i++) {
+				ConnectionUpdate update = updates.get(i);
+				out.println("Compiling " + update);
+
+				File nodeNdfDir = update.resolveDirectory(context);
+				ConnectionFile conFile = ConnectionFile.forReading(nodeNdfDir, update.getConnAlias(), false);
+				byte[] source = Files.readAllBytes(conFile.getNodeNdfFile().toPath());
+				ConnectionDetails conDetails = new ConnectionDetails(conFile.getConnectionDetails());
+				conDetails.update(update.getChangeSet(context));
+				byte[] target = conDetails.isChanged() ? conFile.toByteArray() : source;
+
+				String nodeFileName = i + ".ndf";
+				Files.write(new File(nodesDir, nodeFileName).toPath(), target);
+
+				// Files with changes are stored by content, so that shared ones are only
+				// stored once
+				byte[] changes = Files.readAllBytes(update.getChangePropsFile().toPath());
+				String changesFileName = FileUtils.hash(changes) + ".conf";
+				File changesFile = new File(changesDir, changesFileName);
+				if (!changesFile.exists()) {
+					Files.write(changesFile.toPath(), changes);
+				}
+
+				String relativePath = context.getIsHome().toPath().relativize(conFile.getNodeNdfFile().toPath())
+						.toString().replace(File.separatorChar, '/');
+				writer.write(RECORD_CONNECTION + SEPARATOR + update.getPackageName() + SEPARATOR
+						+ update.getConnAlias() + SEPARATOR + relativePath + SEPARATOR + FileUtils.hash(source)
+						+ SEPARATOR + FileUtils.hash(target) + SEPARATOR + nodeFileName + SEPARATOR
+						+ changesFileName);
+				writer.newLine();
+			}
+		}
+		out.println("Bundle with " + updates.size() + " connection(s) created in directory "
+				+ FileUtils.getCanonicalPathWithFallback(bundleDir));
+	}
+
+	/**
+	 * Apply a bundle. Each connection is handled in one of three ways: if the
+	 * node.ndf file already has the bundled content, nothing is done; if it still
+	 * has the content the bundle was created from, the bundled file is copied;
+	 * otherwise the changes are applied as usual. Passwords are queued in the
+	 * {@link PassManSession} and must be stored afterwards via
+	 * {@link PassManSession#storeQueued()}.
+	 * 
+	 * @param context   Context with the Integration Server installation to update
+	 * @param bundleDir Directory of the bundle
+	 * @param out       Stream for messages
+	 * @return number of connections that could not be updated
+	 * @throws IOException if the bundle cannot be read
+	 */
+	public static int apply(UpdateContext context, File bundleDir, PrintStream out) throws IOException {
+		File isHome = context.getIsHome();
+		File changesDir = new File(bundleDir, DIR_CHANGES);
+		int failures = 0;
+		int copied = 0;
+
+		try (BufferedReader reader = Files.newBufferedReader(new File(bundleDir, FILE_NAME).toPath(),
+				StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (!FORMAT_HEADER.equals(line)) {
+				throw new IOException("Unsupported bundle format in directory '"
+						+ FileUtils.getCanonicalPathWithFallback(bundleDir) + "'");
+			}
+			while ((line = reader.readLine()) != null) {
+				String[] columns = line.split(SEPARATOR, -1);
+				if (!columns[0].equals(RECORD_CONNECTION)) {
+					continue;
+				}
+				String packageName = columns[1];
+				String connAlias = columns[2];
+				File nodeNdfFile = new File(isHome, columns[3]);
+				File changesFile = new File(changesDir, columns[7]);
+
+				out.println();
+				out.println("Package name = " + packageName);
+				out.println("Connection alias = " + connAlias);
+
+				// Other processes must not change the file between checking and replacing it
+				try {
+					FileLocks.Handle lock = FileLocks.lockConnection(isHome, connAlias);
+					try {
+						String currentHash = nodeNdfFile.exists() ? FileUtils.hash(nodeNdfFile) : null;
+						if (columns[5].equals(currentHash)) {
+							out.println("Connection details already up to date");
+							queuePassword(isHome, connAlias, changesFile);
+						} else if (columns[4].equals(currentHash)) {
+							File bundledFile = new File(new File(bundleDir, DIR_NODES), columns[6]);
+							byte[] target = Files.readAllBytes(bundledFile.toPath());
+							BackupStore backupStore = context.getBackupStore();
+							if (backupStore != null) {
+								backupStore.backup(nodeNdfFile);
+							}
+							try (PhaseTimer timer = PhaseTimer.start(Phase.WRITE, connAlias)) {
+								AtomicFileWriter.write(nodeNdfFile, stream -> stream.write(target),
+										context.getSyncGroup());
+								timer.setBytes(target.length);
+							}
+							out.println("Installed precompiled file "
+									+ FileUtils.getCanonicalPathWithFallback(nodeNdfFile));
+							if (context.getIndex() != null) {
+								context.getIndex().updateAfterWrite(connAlias);
+							}
+							queuePassword(isHome, connAlias, changesFile);
+							copied++;
+						} else {
+							out.println("File differs from the one the bundle was created from, applying changes");
+							new ConnectionUpdate(packageName, connAlias, changesFile).apply(context, out);
+						}
+					} finally {
+						lock.close();
+					}
+				} catch (Exception e) {
+					e.printStackTrace(out);
+					failures++;
+				}
+			}
+		}
+		out.println();
+		out.println("Installed " + copied + " precompiled file(s)");
+		return failures;
+	}
+
+	/**
+	 * Queue the new password from a file with changes, if it contains one
+	 * 
+	 * @param isHome      Directory that contains the Integration Server
+	 *                    installation
+	 * @param connAlias   Connection alias
+	 * @param changesFile File with changes
+	 * @throws Exception if the password cannot be queued
+	 */
+	private static void queuePassword(File isHome, String connAlias, File changesFile) throws Exception {
+		String password = ChangeSet.load(changesFile).getPassword();
+		if (password != null) {
+			PassManSession.open(isHome).queuePassword(connAlias, password);
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects directories whose entries were changed by {@link AtomicFileWriter},
+ * so that each of them is synced to disk only once at the end of a run instead
+ * of after every single file.
+ */
+public class DirectorySyncGroup {
+
+	private Set<File> dirs = new LinkedHashSet<File>();
+
+	/**
+	 * Register a directory for syncing
+	 * 
+	 * @param dir Directory whose entries were changed
+	 */
+	public synchronized void add(File dir) {
+		dirs.add(dir);
+	}
+
+	/**
+	 * Sync all registered directories, sorted by path so that directories of the
+	 * same package are processed together. Afterwards the group is empty.
+	 * 
+	 * @return number of directories synced
+	 */
+	public int syncAll() {
+		List<File> toSync;
+		synchronized (this) {
+			toSync = new ArrayList<File>(dirs);
+			dirs.clear();
+		}
+		Collections.sort(toSync);
+		for (File dir : toSync) {
+			syncDirectory(dir);
+		}
+		return toSync.size();
+	}
+
+	/**
+	 * Sync a directory to disk. Not all platforms support this (e.g. Windows), in
+	 * which case nothing happens.
+	 * 
+	 * @param dir Directory to sync
+	 */
+	public static void syncDirectory(File dir) {
+		try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Syncing directories is not supported on this platform
+		}
+	}
+
+}
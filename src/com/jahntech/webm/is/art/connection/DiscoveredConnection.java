@@ -0,0 +1,106 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+
+/**
+ * ART adapter connection as found by {@link ConnectionDiscovery}
+ */
+public class DiscoveredConnection {
+
+	private String packageName;
+	private String connAlias;
+	private String adapterType;
+	private File nodeNdfFile;
+	private String contentHash;
+
+	/**
+	 * Initialize with the details found on disk
+	 * 
+	 * @param packageName Name of package, in which the connection alias is stored
+	 * @param connAlias   Connection alias
+	 * @param adapterType Type of the adapter, or <code>null</code> if not known
+	 * @param nodeNdfFile File that contains the connection details
+	 * @param contentHash Hash of the file content at the time of discovery (see
+	 *                    {@link FileUtils#hash(byte[])})
+	 */
+	public DiscoveredConnection(String packageName, String connAlias, String adapterType, File nodeNdfFile,
+			String contentHash) {
+		super();
+		this.packageName = packageName;
+		this.connAlias = connAlias;
+		this.adapterType = adapterType;
+		this.nodeNdfFile = nodeNdfFile;
+		this.contentHash = contentHash;
+	}
+
+	/**
+	 * Get name of package
+	 * 
+	 * @return name of package, in which the connection alias is stored
+	 */
+	public String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * Get connection alias
+	 * 
+	 * @return connection alias
+	 */
+	public String getConnAlias() {
+		return connAlias;
+	}
+
+	/**
+	 * Get adapter type
+	 * 
+	 * @return type of the adapter, or <code>null</code> if not known
+	 */
+	public String getAdapterType() {
+		return adapterType;
+	}
+
+	/**
+	 * Get file with connection details
+	 * 
+	 * @return node.ndf file of the connection
+	 */
+	public File getNodeNdfFile() {
+		return nodeNdfFile;
+	}
+
+	/**
+	 * Get content hash of file with connection details
+	 * 
+	 * @return hash of the file content at the time of discovery
+	 */
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	@Override
+	public String toString() {
+		return packageName + "\t" + connAlias + "\t" + (adapterType == null ? "" : adapterType) + "\t"
+				+ FileUtils.getCanonicalPathWithFallback(nodeNdfFile);
+	}
+
+}
@@ -0,0 +1,225 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks that protect the files of an Integration Server installation against
+ * concurrent changes by several processes of this tool, e.g. one per package.
+ * The locks are based on {@link FileChannel#lock()} on files in the directory
+ * returned by {@link FileUtils#getToolDir(File)}.
+ * 
+ * <p>
+ * Connections are spread over {@value #CONNECTION_STRIPES} lock files by their
+ * alias, so that updates of different connections mostly proceed in parallel.
+ * PassMan has a single exclusive lock, since its data store is one file. A
+ * running {@link Daemon} holds another one for its whole lifetime.
+ * 
+ * <p>
+ * File locks are held on behalf of the whole JVM and cannot be acquired twice
+ * by it. Every lock file is therefore guarded by a {@link ReentrantLock} as well,
+ * which serializes the threads of this JVM and allows a thread to acquire the
+ * same lock repeatedly.
+ */
+public class FileLocks {
+
+	/**
+	 * Number of lock files for connections
+	 */
+	public static final int CONNECTION_STRIPES = 64;
+
+	private static final String DIR_LOCKS = "locks";
+	private static final String CONNECTION_LOCK_PREFIX = "connection-";
+	private static final String PASSMAN_LOCK = "passman.lock";
+	private static final String DAEMON_LOCK = "daemon.lock";
+	private static final String LOCK_FILE_SUFFIX = ".lock";
+
+	/**
+	 * Locks within this JVM by lock file
+	 */
+	private static final ConcurrentMap<File, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<File, ReentrantLock>();
+
+	/**
+	 * Acquire the lock for a connection, waiting as long as another thread or
+	 * process holds it
+	 * 
+	 * @param isHome    Directory that contains the Integration Server installation
+	 * @param connAlias Connection alias
+	 * @return lock, to be closed when the connection has been written
+	 * @throws IOException if the lock file cannot be locked
+	 */
+	public static Handle lockConnection(File isHome, String connAlias) throws IOException {
+		int stripe = Math.floorMod(connAlias.hashCode(), CONNECTION_STRIPES);
+		return lock(new File(getLockDir(isHome), CONNECTION_LOCK_PREFIX + stripe + LOCK_FILE_SUFFIX), connAlias);
+	}
+
+	/**
+	 * Acquire the exclusive lock for the PassMan data store, waiting as long as
+	 * another thread or process holds it
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @return lock, to be closed when PassMan has been written
+	 * @throws IOException if the lock file cannot be locked
+	 */
+	public static Handle lockPassMan(File isHome) throws IOException {
+		return lock(new File(getLockDir(isHome), PASSMAN_LOCK), null);
+	}
+
+	/**
+	 * Acquire the lock of the daemon without waiting
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @return lock, to be closed when the daemon stops, or <code>null</code> if
+	 *         another daemon holds it
+	 * @throws IOException if the lock file cannot be locked
+	 */
+	public static Handle tryLockDaemon(File isHome) throws IOException {
+		File lockFile = new File(getLockDir(isHome), DAEMON_LOCK);
+		ReentrantLock jvmLock = JVM_LOCKS.computeIfAbsent(lockFile.getAbsoluteFile(), f -> new ReentrantLock());
+		if (!jvmLock.tryLock()) {
+			return null;
+		}
+		try {
+			if (jvmLock.getHoldCount() > 1) {
+				jvmLock.unlock();
+				return null;
+			}
+			FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE);
+			FileLock fileLock;
+			try {
+				fileLock = channel.tryLock();
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+			if (fileLock == null) {
+				channel.close();
+				jvmLock.unlock();
+				return null;
+			}
+			return new Handle(jvmLock, channel, fileLock);
+		} catch (IOException | RuntimeException e) {
+			jvmLock.unlock();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get directory for lock files
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @return directory for lock files, which is created if necessary
+	 * @throws IOException if the directory cannot be created
+	 */
+	private static File getLockDir(File isHome) throws IOException {
+		File lockDir = new File(FileUtils.getToolDir(isHome), DIR_LOCKS);
+		Files.createDirectories(lockDir.toPath());
+		return lockDir;
+	}
+
+	/**
+	 * Acquire the lock of this JVM and, unless the current thread holds it
+	 * already, the file lock
+	 * 
+	 * @param lockFile  Lock file
+	 * @param connAlias Connection alias, used to label measurements, may be
+	 *                  <code>null</code>
+	 * @return lock
+	 * @throws IOException if the lock file cannot be locked
+	 */
+	private static Handle lock(File lockFile, String connAlias) throws IOException {
+		ReentrantLock jvmLock = JVM_LOCKS.computeIfAbsent(lockFile.getAbsoluteFile(), f -> new ReentrantLock());
+		return PhaseTimer.time(Phase.LOCK_WAIT, connAlias, () -> {
+			jvmLock.lock();
+			try {
+				if (jvmLock.getHoldCount() > 1) {
+					return new Handle(jvmLock, null, null);
+				}
+				FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE);
+				try {
+					return new Handle(jvmLock, channel, channel.lock());
+				} catch (IOException | RuntimeException e) {
+					channel.close();
+					throw e;
+				}
+			} catch (IOException | RuntimeException e) {
+				jvmLock.unlock();
+				throw e;
+			}
+		});
+	}
+
+	/**
+	 * An acquired lock
+	 */
+	public static class Handle implements AutoCloseable {
+
+		private ReentrantLock jvmLock;
+		private FileChannel channel;
+		private FileLock fileLock;
+
+		/**
+		 * Initialize with the acquired locks
+		 * 
+		 * @param jvmLock  Lock within this JVM
+		 * @param channel  Channel of the lock file, <code>null</code> if the lock is
+		 *                 re-entered
+		 * @param fileLock Lock of the file, <code>null</code> if the lock is
+		 *                 re-entered
+		 */
+		private Handle(ReentrantLock jvmLock, FileChannel channel, FileLock fileLock) {
+			this.jvmLock = jvmLock;
+			this.channel = channel;
+			this.fileLock = fileLock;
+		}
+
+		/**
+		 * Release the lock
+		 * 
+		 * @throws IOException if the file lock cannot be released
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				if (fileLock != null) {
+					try {
+						fileLock.release();
+					} finally {
+						channel.close();
+					}
+				}
+			} finally {
+				jvmLock.unlock();
+			}
+		}
+	}
+
+}
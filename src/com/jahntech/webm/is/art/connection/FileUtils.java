@@ -21,12 +21,23 @@ package com.jahntech.webm.is.art.connection;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Utility class with various helper methods.
  */
 public class FileUtils {
 
+	/**
+	 * Directory within the Integration Server configuration directory, where this
+	 * tool keeps its own data (e.g. the connection index)
+	 */
+	public static final String PATH_TOOL_DIR = "config" + File.separatorChar + "jtacu";
+
+	private static final String HASH_ALGORITHM = "SHA-256";
+
 	/**
 	 * Convenience method to get the canonical path of a file in such a way that no
 	 * dealing with a possible exception is needed. If there is an exception, the
@@ -44,4 +55,66 @@ public class FileUtils {
 		}
 	}
 
+	/**
+	 * Get directory where this tool keeps its own data for an Integration Server
+	 * installation. The directory is created if it does not exist yet.
+	 * 
+	 * @param isHome Directory that contains the Integration Server installation
+	 * @return directory for data of this tool
+	 * @throws IOException if the directory cannot be created
+	 */
+	public static File getToolDir(File isHome) throws IOException {
+		File toolDir = new File(isHome, PATH_TOOL_DIR);
+		Files.createDirectories(toolDir.toPath());
+		return toolDir;
+	}
+
+	/**
+	 * Calculate content hash of a file
+	 * 
+	 * @param file File to hash
+	 * @return hash as hex string
+	 * @throws IOException if the file cannot be read
+	 */
+	public static String hash(File file) throws IOException {
+		return hash(Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * Calculate content hash of a byte array
+	 * 
+	 * @param data Data to hash
+	 * @return hash as hex string
+	 */
+	public static String hash(byte[] data) {
+		return hash(data, 0, data.length);
+	}
+
+	/**
+	 * Calculate content hash of part of a byte array
+	 * 
+	 * @param data   Data to hash
+	 * @param offset Start of the data to hash
+	 * @param length Number of bytes to hash
+	 * @return hash as hex string
+	 */
+	public static String hash(byte[] data, int offset, int length) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform must support SHA-256
+			throw new IllegalStateException(e);
+		}
+		digest.update(data, offset, length);
+		byte[] hash = digest.digest();
+
+		StringBuilder out = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			out.append(Character.forDigit((b >> 4) & 0xF, 16));
+			out.append(Character.forDigit(b & 0xF, 16));
+		}
+		return out.toString();
+	}
+
 }
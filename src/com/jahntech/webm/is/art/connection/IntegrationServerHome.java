@@ -20,11 +20,14 @@
 package com.jahntech.webm.is.art.connection;
 
 import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Home directory of Integration Server. This class looks for the default
  * instance of Integration Server classic. If that is not found, the assumption
- * is that the installation is a Microservices Runtime.
+ * is that the installation is a Microservices Runtime. All instances of
+ * Integration Server classic can be listed via {@link #getInstances()}.
  *
  */
 public class IntegrationServerHome {
@@ -41,6 +44,22 @@ public class IntegrationServerHome {
 	 */
 	public final String PATH_IS_DEFAULT_INSTANCE = PATH_IS_DIR + "/instances/default";
 
+	/**
+	 * Path to the instances of Integration Server classic within the webMethods
+	 * installation
+	 */
+	public final String PATH_IS_INSTANCES = PATH_IS_DIR + "/instances";
+
+	/**
+	 * Name for selecting all instances
+	 */
+	public static final String ALL_INSTANCES = "all";
+
+	/**
+	 * Directory that every instance has
+	 */
+	private static final String DIR_PACKAGES = "packages";
+
 	private File wmHome;
 	private File isHome = null;
 
@@ -77,4 +96,55 @@ public class IntegrationServerHome {
 		return isHome;
 	}
 
+	/**
+	 * Get all instances of Integration Server classic. A directory below
+	 * {@value #PATH_IS_INSTANCES} counts as an instance if it has a
+	 * {@value #DIR_PACKAGES} directory.
+	 * 
+	 * @return instance directories by instance name, sorted by name; empty for a
+	 *         Microservices Runtime
+	 */
+	public Map<String, File> getInstances() {
+		Map<String, File> out = new TreeMap<String, File>();
+		File[] dirs = new File(wmHome, PATH_IS_INSTANCES).listFiles(File::isDirectory);
+		if (dirs != null) {
+			for (File dir : dirs) {
+				if (new File(dir, DIR_PACKAGES).isDirectory()) {
+					out.put(dir.getName(), dir);
+				}
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Get selected instances of Integration Server classic
+	 * 
+	 * @param names Comma-separated instance names, or {@value #ALL_INSTANCES}
+	 * @return instance directories by instance name, sorted by name
+	 * @throws IllegalArgumentException if there are no instances or a selected
+	 *                                  instance does not exist
+	 */
+	public Map<String, File> getInstances(String names) throws IllegalArgumentException {
+		Map<String, File> instances = getInstances();
+		if (instances.isEmpty()) {
+			throw new IllegalArgumentException("No Integration Server instances found in "
+					+ FileUtils.getCanonicalPathWithFallback(new File(wmHome, PATH_IS_INSTANCES)));
+		}
+		if (names.equals(ALL_INSTANCES)) {
+			return instances;
+		}
+
+		Map<String, File> out = new TreeMap<String, File>();
+		for (String name : names.split(",")) {
+			File dir = instances.get(name.trim());
+			if (dir == null) {
+				throw new IllegalArgumentException("Integration Server instance '" + name.trim()
+						+ "' does not exist, available are " + instances.keySet());
+			}
+			out.put(name.trim(), dir);
+		}
+		return out;
+	}
+
 }
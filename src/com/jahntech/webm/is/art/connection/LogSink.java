@@ -0,0 +1,514 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes all messages of a run asynchronously. Messages are put into a bounded
+ * queue and written by a single background thread through a large buffer, so
+ * that worker threads and the main thread do not wait for the console. If the
+ * queue is full, callers block until there is space again; memory therefore
+ * stays bounded and no message is lost.
+ * 
+ * <p>
+ * The behaviour is controlled by System properties:
+ * <ul>
+ * <li>{@value #PROPERTY_LEVEL}: {@link Level#DEBUG}, {@link Level#INFO}
+ * (default), {@link Level#WARN}, {@link Level#ERROR}, or
+ * {@value #LEVEL_QUIET} as a shorthand for {@link Level#WARN}</li>
+ * <li>{@value #PROPERTY_FORMAT}: {@value #FORMAT_TEXT} (default) for the
+ * messages as they are, or {@value #FORMAT_JSON} for one JSON object per
+ * line</li>
+ * <li>{@value #PROPERTY_QUEUE}: maximum number of queued messages, defaults to
+ * {@value #DEFAULT_QUEUE}</li>
+ * </ul>
+ * 
+ * <p>
+ * {@link #install()} replaces {@link System#out} and {@link System#err}, so
+ * that all existing messages go through the sink. Lines written to the former
+ * have level {@link Level#INFO}, those written to the latter
+ * {@link Level#ERROR}. Messages with a different level are written via
+ * {@link #println(PrintStream, Level, String)}.
+ */
+public class LogSink implements Closeable {
+
+	/**
+	 * System property for the minimum level of messages that are written
+	 */
+	public static final String PROPERTY_LEVEL = "jtacu.log.level";
+
+	/**
+	 * System property for the output format
+	 */
+	public static final String PROPERTY_FORMAT = "jtacu.log.format";
+
+	/**
+	 * System property for the maximum number of queued messages
+	 */
+	public static final String PROPERTY_QUEUE = "jtacu.log.queue";
+
+	/**
+	 * Value of {@value #PROPERTY_LEVEL} to write only warnings and errors
+	 */
+	public static final String LEVEL_QUIET = "quiet";
+
+	/**
+	 * Value of {@value #PROPERTY_FORMAT} for plain text
+	 */
+	public static final String FORMAT_TEXT = "text";
+
+	/**
+	 * Value of {@value #PROPERTY_FORMAT} for JSON lines
+	 */
+	public static final String FORMAT_JSON = "json";
+
+	/**
+	 * Default maximum number of queued messages
+	 */
+	public static final int DEFAULT_QUEUE = 8192;
+
+	/**
+	 * Size of the buffer of the output streams
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Marks the end of the queue
+	 */
+	private static final Record END = new Record(0, Level.INFO, null, null);
+
+	/**
+	 * Sink that has replaced {@link System#out} and {@link System#err}
+	 */
+	private static volatile LogSink installed = null;
+
+	/**
+	 * Severity of a message
+	 */
+	public enum Level {
+		/**
+		 * Details, e.g. old and new value of every changed setting in batch runs
+		 */
+		DEBUG,
+		/**
+		 * Progress and results
+		 */
+		INFO,
+		/**
+		 * Failures that do not stop the run
+		 */
+		WARN,
+		/**
+		 * Errors and stack traces
+		 */
+		ERROR;
+
+		/**
+		 * Get level by name, ignoring case
+		 * 
+		 * @param name Name of the level or {@value LogSink#LEVEL_QUIET}
+		 * @return level
+		 * @throws IllegalArgumentException if the name is unknown
+		 */
+		public static Level fromName(String name) throws IllegalArgumentException {
+			if (LEVEL_QUIET.equalsIgnoreCase(name)) {
+				return WARN;
+			}
+			for (Level level : values()) {
+				if (level.name().equalsIgnoreCase(name)) {
+					return level;
+				}
+			}
+			throw new IllegalArgumentException("Unknown log level '" + name + "', supported are debug, info, warn, error, and "
+					+ LEVEL_QUIET);
+		}
+	}
+
+	private PrintStream out;
+	private PrintStream err;
+	private Level level;
+	private boolean json;
+	private BlockingQueue<Record> queue;
+	private Thread writer;
+	private volatile boolean closed = false;
+
+	/**
+	 * Initialize and start the background thread
+	 * 
+	 * @param out      Stream for messages, and in JSON format also for errors
+	 * @param err      Stream for errors in text format
+	 * @param level    Minimum level of messages that are written
+	 * @param json     <code>true</code> for JSON lines, <code>false</code> for
+	 *                 plain text
+	 * @param capacity Maximum number of queued messages
+	 */
+	public LogSink(PrintStream out, PrintStream err, Level level, boolean json, int capacity) {
+		super();
+		this.out = out;
+		this.err = err;
+		this.level = level;
+		this.json = json;
+		this.queue = new ArrayBlockingQueue<Record>(Math.max(1, capacity));
+		this.writer = new Thread(this::drain, "jtacu-log");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Create a sink as configured by the System properties and let it replace
+	 * {@link System#out} and {@link System#err}. Has no effect if a sink is
+	 * already installed.
+	 * 
+	 * @throws IllegalArgumentException if a System property has an invalid value
+	 */
+	public static synchronized void install() throws IllegalArgumentException {
+		if (installed != null) {
+			return;
+		}
+		Level level = Level.fromName(System.getProperty(PROPERTY_LEVEL, Level.INFO.name()));
+		String format = System.getProperty(PROPERTY_FORMAT, FORMAT_TEXT);
+		if (!format.equalsIgnoreCase(FORMAT_TEXT) && !format.equalsIgnoreCase(FORMAT_JSON)) {
+			throw new IllegalArgumentException(
+					"Unknown log format '" + format + "', supported are " + FORMAT_TEXT + " and " + FORMAT_JSON);
+		}
+		int capacity = Integer.getInteger(PROPERTY_QUEUE, DEFAULT_QUEUE);
+
+		installed = new LogSink(
+				new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE), false),
+				new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), BUFFER_SIZE), false),
+				level, format.equalsIgnoreCase(FORMAT_JSON), capacity);
+		System.setOut(installed.getStream(Level.INFO));
+		System.setErr(installed.getStream(Level.ERROR));
+	}
+
+	/**
+	 * Write all queued messages of the installed sink and stop its background
+	 * thread. Messages written afterwards are written directly.
+	 */
+	public static synchronized void shutdown() {
+		if (installed != null) {
+			installed.close();
+		}
+	}
+
+	/**
+	 * Check whether messages of a level are written by the installed sink. Without
+	 * an installed sink, messages from {@link Level#INFO} upwards are written.
+	 * 
+	 * @param level Level of the message
+	 * @return <code>true</code> if messages of the level are written
+	 */
+	public static boolean isEnabled(Level level) {
+		LogSink sink = installed;
+		return level.compareTo(sink == null ? Level.INFO : sink.level) >= 0;
+	}
+
+	/**
+	 * Write a message with a specific level. If the stream does not belong to a
+	 * sink, the message is simply printed to it.
+	 * 
+	 * @param out     Stream for messages
+	 * @param level   Level of the message
+	 * @param message Message
+	 */
+	public static void println(PrintStream out, Level level, String message) {
+		if (out instanceof SinkStream) {
+			((SinkStream) out).sink.log(level, null, message);
+		} else {
+			out.println(message);
+		}
+	}
+
+	/**
+	 * Write the messages of a connection update line by line. If the stream
+	 * belongs to a sink, each line carries the connection alias, so that the
+	 * messages of a connection can be found in JSON format.
+	 * 
+	 * @param out       Stream for messages
+	 * @param connAlias Connection alias
+	 * @param messages  Messages, one per line
+	 */
+	public static void printLines(PrintStream out, String connAlias, String messages) {
+		if (out instanceof SinkStream) {
+			SinkStream stream = (SinkStream) out;
+			if (stream.sink.isLevelEnabled(stream.level)) {
+				for (String line : messages.split("\r?\n")) {
+					stream.sink.log(stream.level, connAlias, line);
+				}
+			}
+		} else {
+			out.print(messages);
+		}
+	}
+
+	/**
+	 * Get a stream that writes each line as a message
+	 * 
+	 * @param level Level of the messages
+	 * @return stream
+	 */
+	public PrintStream getStream(Level level) {
+		return new SinkStream(this, level);
+	}
+
+	/**
+	 * Check whether messages of a level are written by this sink
+	 * 
+	 * @param level Level of the message
+	 * @return <code>true</code> if messages of the level are written
+	 */
+	public boolean isLevelEnabled(Level level) {
+		return level.compareTo(this.level) >= 0;
+	}
+
+	/**
+	 * Queue a message. Blocks while the queue is full.
+	 * 
+	 * @param level     Level of the message
+	 * @param connAlias Connection alias the message belongs to, may be
+	 *                  <code>null</code>
+	 * @param message   Message
+	 */
+	public void log(Level level, String connAlias, String message) {
+		if (!isLevelEnabled(level)) {
+			return;
+		}
+		Record record = new Record(System.currentTimeMillis(), level, connAlias, message);
+		if (!closed) {
+			try {
+				queue.put(record);
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			write(record);
+			flush();
+		}
+	}
+
+	/**
+	 * Write all queued messages and stop the background thread
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			queue.put(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// Messages that were queued after the end marker
+		synchronized (this) {
+			Record record;
+			while ((record = queue.poll()) != null) {
+				if (record != END) {
+					write(record);
+				}
+			}
+			flush();
+		}
+	}
+
+	/**
+	 * Write queued messages until the end marker is reached. The streams are
+	 * flushed whenever the queue is empty.
+	 */
+	private void drain() {
+		try {
+			while (true) {
+				Record record = queue.poll();
+				if (record == null) {
+					synchronized (this) {
+						flush();
+					}
+					record = queue.take();
+				}
+				if (record == END) {
+					break;
+				}
+				synchronized (this) {
+					write(record);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Remaining messages are written by close()
+		}
+		synchronized (this) {
+			flush();
+		}
+	}
+
+	/**
+	 * Format and write a single message
+	 * 
+	 * @param record Message
+	 */
+	private void write(Record record) {
+		if (!json) {
+			(record.level == Level.ERROR ? err : out).println(record.message);
+			return;
+		}
+
+		// Empty lines only separate messages on the console
+		if (record.message.isEmpty()) {
+			return;
+		}
+		StringBuilder sb = new StringBuilder(record.message.length() + 96);
+		sb.append("{\"time\":\"").append(Instant.ofEpochMilli(record.time)).append('"');
+		sb.append(",\"level\":\"").append(record.level.name().toLowerCase(Locale.ROOT)).append('"');
+		if (record.connAlias != null) {
+			sb.append(",\"connection\":").append(Json.quote(record.connAlias));
+		}
+		sb.append(",\"message\":").append(Json.quote(record.message));
+		sb.append('}');
+		out.println(sb);
+	}
+
+	/**
+	 * Flush both streams
+	 */
+	private void flush() {
+		out.flush();
+		err.flush();
+	}
+
+	/**
+	 * A single message
+	 */
+	private static class Record {
+
+		private long time;
+		private Level level;
+		private String connAlias;
+		private String message;
+
+		/**
+		 * Initialize with all values
+		 * 
+		 * @param time      Time the message was created, in milliseconds since the
+		 *                  epoch
+		 * @param level     Level of the message
+		 * @param connAlias Connection alias, may be <code>null</code>
+		 * @param message   Message
+		 */
+		Record(long time, Level level, String connAlias, String message) {
+			this.time = time;
+			this.level = level;
+			this.connAlias = connAlias;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * Print stream that passes each line to a sink
+	 */
+	private static class SinkStream extends PrintStream {
+
+		private LogSink sink;
+		private Level level;
+
+		/**
+		 * Initialize for a sink and level
+		 * 
+		 * @param sink  Sink to write to
+		 * @param level Level of the messages
+		 */
+		SinkStream(LogSink sink, Level level) {
+			super(new LineOutputStream(sink, level), true);
+			this.sink = sink;
+			this.level = level;
+		}
+	}
+
+	/**
+	 * Collects bytes until the end of a line and passes the line to a sink.
+	 * Callers are synchronized by the enclosing {@link PrintStream}.
+	 */
+	private static class LineOutputStream extends OutputStream {
+
+		private LogSink sink;
+		private Level level;
+		private ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+		/**
+		 * Initialize for a sink and level
+		 * 
+		 * @param sink  Sink to write to
+		 * @param level Level of the messages
+		 */
+		LineOutputStream(LogSink sink, Level level) {
+			super();
+			this.sink = sink;
+			this.level = level;
+		}
+
+		@Override
+		public void write(int b) {
+			if (b == '\n') {
+				int length = line.size();
+				byte[] bytes = line.toByteArray();
+				if (length > 0 && bytes[length - 1] == '\r') {
+					length--;
+				}
+				line.reset();
+				sink.log(level, null, new String(bytes, 0, length, Charset.defaultCharset()));
+			} else {
+				line.write(b);
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// Lines of disabled levels are dropped without being decoded
+			if (!sink.isLevelEnabled(level)) {
+				return;
+			}
+			int start = off;
+			for (int i = off; i < off + len; i++) {
+				if (b[i] == '\n') {
+					line.write(b, start, i - start);
+					write('\n');
+					start = i + 1;
+				}
+			}
+			line.write(b, start, off + len - start);
+		}
+	}
+
+}
@@ -0,0 +1,220 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Applies connection updates to several instances of Integration Server classic
+ * in one run. The instances are updated in parallel, each with its own
+ * {@link UpdateContext}, i.e. its own connection index and backup store. The
+ * worker threads (see {@link UpdatePipeline#PROPERTY_THREADS}) are divided
+ * among the instances.
+ * 
+ * <p>
+ * Instances often hold identical copies of the same packages. All instances
+ * share a {@link ConnectionResultCache}, so that the connection details of
+ * identical node.ndf files are decoded and encoded only once per change set.
+ * 
+ * <p>
+ * Every instance has its own PassMan configuration. Since PassMan can only be
+ * initialized for one installation at a time, passwords are stored at the end,
+ * one instance after the other.
+ */
+public class MultiInstanceUpdate {
+
+	private Map<String, File> instances;
+
+	/**
+	 * Initialize with the instances to update
+	 * 
+	 * @param instances Instance directories by instance name
+	 */
+	public MultiInstanceUpdate(Map<String, File> instances) {
+		super();
+		this.instances = instances;
+	}
+
+	/**
+	 * Apply the updates to all instances they apply to (see
+	 * {@link ConnectionUpdate#appliesTo(String)}). Messages are written per
+	 * instance, in the order of the instances.
+	 * 
+	 * @param updates Connection updates to apply
+	 * @param out     Stream for messages
+	 * @return number of failed updates, over all instances
+	 * @throws InterruptedException if interrupted while waiting for the updates
+	 */
+	public int run(List<ConnectionUpdate> updates, PrintStream out) throws InterruptedException {
+		out.println("Updating " + instances.size() + " instance(s) " + instances.keySet());
+
+		ConnectionResultCache resultCache = new ConnectionResultCache();
+		DirectorySyncGroup syncGroup = new DirectorySyncGroup();
+		int threads = Math.max(1, Integer.getInteger(UpdatePipeline.PROPERTY_THREADS,
+				Runtime.getRuntime().availableProcessors()) / instances.size());
+
+		Map<String, UpdateContext> contexts = new LinkedHashMap<String, UpdateContext>();
+		Map<String, Future<InstanceResult>> futures = new LinkedHashMap<String, Future<InstanceResult>>();
+		ExecutorService executor = Executors.newFixedThreadPool(instances.size(),
+				new UpdatePipeline.WorkerThreadFactory());
+		try {
+			for (Map.Entry<String, File> instance : instances.entrySet()) {
+				UpdateContext context = new UpdateContext(instance.getValue(),
+						CommandLine.openIndex(instance.getValue()), syncGroup);
+				context.setResultCache(resultCache);
+				contexts.put(instance.getKey(), context);
+
+				List<ConnectionUpdate> instanceUpdates = new ArrayList<ConnectionUpdate>();
+				for (ConnectionUpdate update : updates) {
+					if (update.appliesTo(instance.getKey())) {
+						instanceUpdates.add(update);
+					}
+				}
+				futures.put(instance.getKey(), executor.submit(() -> runInstance(context, instanceUpdates, threads)));
+			}
+
+			Map<String, Integer> failuresByInstance = new LinkedHashMap<String, Integer>();
+			for (Map.Entry<String, Future<InstanceResult>> future : futures.entrySet()) {
+				String name = future.getKey();
+				UpdateContext context = contexts.get(name);
+				InstanceResult result;
+				try {
+					result = future.getValue().get();
+				} catch (ExecutionException e) {
+					// The passwords of the other instances must still be stored
+					result = getAbortedResult(e.getCause());
+				}
+
+				out.println();
+				out.println("=== Instance " + name + " ("
+						+ FileUtils.getCanonicalPathWithFallback(context.getIsHome()) + ") ===");
+				out.print(result.messages);
+				int failures = result.failures;
+
+				// PassMan is switched to each instance in turn
+				out.println();
+				try {
+					if (CommandLine.storeQueuedPasswords(context, out).containsValue(false)) {
+						failures++;
+					}
+					CommandLine.printBackupRun(context, out);
+				} catch (Exception e) {
+					e.printStackTrace(out);
+					failures++;
+				}
+				CommandLine.saveIndex(context.getIndex());
+				failuresByInstance.put(name, failures);
+			}
+			syncGroup.syncAll();
+
+			out.println();
+			out.println("Summary of multi-instance run (" + resultCache.size()
+					+ " distinct file(s) and change set(s) processed)");
+			int total = 0;
+			for (Map.Entry<String, Integer> failures : failuresByInstance.entrySet()) {
+				// Failures are also written in quiet mode
+				LogSink.println(out, failures.getValue() == 0 ? LogSink.Level.INFO : LogSink.Level.WARN,
+						"  " + (failures.getValue() == 0 ? "OK      " : "FAILED  ") + failures.getKey() + " : "
+								+ failures.getValue() + " failure(s)");
+				total += failures.getValue();
+			}
+			return total;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Apply the updates to a single instance and capture the messages
+	 * 
+	 * @param context Context of the instance
+	 * @param updates Connection updates for the instance
+	 * @param threads Number of worker threads for the instance
+	 * @return failures and messages
+	 * @throws InterruptedException if interrupted while waiting for the updates
+	 */
+	private static InstanceResult runInstance(UpdateContext context, List<ConnectionUpdate> updates, int threads)
+			throws InterruptedException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream bufferOut = new PrintStream(buffer, true);
+		bufferOut.println(updates.size() + " connection update(s)");
+
+		int failures = 0;
+		for (UpdatePipeline.Result result : new UpdatePipeline(context, threads).run(updates, bufferOut)) {
+			if (!result.isSuccess()) {
+				failures++;
+			}
+		}
+		bufferOut.println();
+		bufferOut.println((updates.size() - failures) + " succeeded, " + failures + " failed");
+		bufferOut.flush();
+		return new InstanceResult(failures, new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Create the outcome of an instance whose updates were aborted by an
+	 * unexpected error. It counts as a single failure, since it is unknown which
+	 * updates were applied before.
+	 * 
+	 * @param cause Error that aborted the updates
+	 * @return failure and stack trace
+	 */
+	private static InstanceResult getAbortedResult(Throwable cause) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream bufferOut = new PrintStream(buffer, true);
+		bufferOut.println("Updates aborted");
+		cause.printStackTrace(bufferOut);
+		bufferOut.flush();
+		return new InstanceResult(1, new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Outcome of the updates of a single instance
+	 */
+	private static class InstanceResult {
+
+		private int failures;
+		private String messages;
+
+		/**
+		 * Initialize
+		 * 
+		 * @param failures Number of failed updates
+		 * @param messages Messages of all updates
+		 */
+		InstanceResult(int failures, String messages) {
+			super();
+			this.failures = failures;
+			this.messages = messages;
+		}
+	}
+
+}
@@ -0,0 +1,604 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.webmethods.deployer.common.cipher.CipherUtil;
+import com.webmethods.sc.security.passman.PasswordManager;
+import com.webmethods.sc.security.passman.impl.PassMan;
+import com.webmethods.sc.security.passman.impl.PassManConfig;
+import com.webmethods.sc.security.passman.impl.PassManFactory;
+import com.wm.app.b2b.server.OutboundPasswordManager;
+import com.wm.app.b2b.server.Resources;
+import com.wm.app.b2b.server.util.security.OPMConfig;
+import com.wm.passman.PasswordManagerException;
+import com.wm.util.security.WmSecureString;
+
+/**
+ * Session with the built-in password manager (PassMan) of Integration Server.
+ * Initializing PassMan means reading passman.cnf, creating the PassMan instance
+ * and initializing {@link OutboundPasswordManager}. This is comparatively
+ * expensive and therefore done only once per Integration Server installation.
+ * 
+ * <p>
+ * Passwords can be queued for any number of connections and are then stored
+ * together via {@link #storeQueued()}. If the same handle is queued more than
+ * once, only the last value is stored, so that each handle is written at most
+ * once. Passwords identical to the ones already stored are not written at all.
+ * 
+ * <p>
+ * Since {@link OutboundPasswordManager} is a singleton, only one session can be
+ * active at a time. Each installation (e.g. each instance of Integration Server
+ * classic) has its own session, and all access to PassMan is serialized across
+ * sessions. PassMan is re-initialized whenever a session is used that is not
+ * the active one. A password queued for an inactive session is therefore only
+ * compared with the stored one when it is stored.
+ * 
+ * <p>
+ * All calls of PassMan go through a {@link Backend}, which tests replace via
+ * {@link #useBackend(Backend)}.
+ */
+public class PassManSession {
+
+	private static final String KEY_FILE_NAME = "fileName";
+
+	/**
+	 * Prefix of the working copy that PassMan keeps next to its data store
+	 */
+	private static final String DATA_STORE_WORK_PREFIX = "WORK-";
+
+	/**
+	 * Prefix for the PassMan handle of an ART connection password
+	 */
+	public static final String PASSMAN_ART_PREFIX = "wm.is.art.password.";
+
+	/**
+	 * Sessions by Integration Server root directory
+	 */
+	private static Map<File, PassManSession> sessions = new HashMap<File, PassManSession>();
+
+	/**
+	 * Session that was opened last
+	 */
+	private static PassManSession current = null;
+
+	/**
+	 * Guards {@link OutboundPasswordManager} and {@link #active}
+	 */
+	private static final Object ACTIVE_LOCK = new Object();
+
+	/**
+	 * Session for which PassMan is currently initialized
+	 */
+	private static PassManSession active = null;
+
+	/**
+	 * Access to PassMan, guarded by {@link #ACTIVE_LOCK}
+	 */
+	private static Backend backend = new OutboundBackend();
+
+	private File integrationServerRootDir;
+
+	/**
+	 * Data store of PassMan, as configured in passman.cnf
+	 */
+	private File dataStoreFile = null;
+
+	/**
+	 * Size and modification time of the data store when it was last read or
+	 * written by this session
+	 */
+	private String dataStoreStamp = null;
+
+	/**
+	 * Passwords waiting to be stored by handle, in the order they were queued
+	 */
+	private Map<String, WmSecureString> queuedPasswords = new LinkedHashMap<String, WmSecureString>();
+
+	/**
+	 * Get the session for an Integration Server installation. PassMan is only
+	 * initialized if there is no session for this installation yet. The session
+	 * becomes the current one (see {@link #getCurrent()}).
+	 * 
+	 * @param integrationServerRootDir Root directory of Integration Server
+	 * @return session
+	 * @throws PasswordManagerException
+	 * @throws InterruptedException
+	 */
+	public static synchronized PassManSession open(File integrationServerRootDir)
+			throws PasswordManagerException, InterruptedException {
+		if (integrationServerRootDir == null) {
+			throw new IllegalArgumentException("Integration Server root directory file must not be NULL");
+		} else if (!integrationServerRootDir.exists()) {
+			throw new IllegalArgumentException("The specified Integration Server root directory does not exist");
+		}
+
+		PassManSession session = sessions.get(integrationServerRootDir);
+		if (session == null) {
+			session = new PassManSession(integrationServerRootDir);
+			sessions.put(integrationServerRootDir, session);
+		}
+		current = session;
+		return session;
+	}
+
+	/**
+	 * Get the session for an Integration Server installation, if one was opened
+	 * 
+	 * @param integrationServerRootDir Root directory of Integration Server
+	 * @return session or <code>null</code> if none was opened for this
+	 *         installation within this JVM
+	 */
+	public static synchronized PassManSession get(File integrationServerRootDir) {
+		return sessions.get(integrationServerRootDir);
+	}
+
+	/**
+	 * Get the session that was opened last
+	 * 
+	 * @return current session or <code>null</code> if PassMan has not been
+	 *         initialized within this JVM
+	 */
+	public static synchronized PassManSession getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Initialize PassMan for out-of-band access
+	 * 
+	 * @param integrationServerRootDir Root directory of Integration Server
+	 * @throws PasswordManagerException
+	 * @throws InterruptedException
+	 */
+	private PassManSession(File integrationServerRootDir) throws PasswordManagerException, InterruptedException {
+		this.integrationServerRootDir = integrationServerRootDir;
+		synchronized (ACTIVE_LOCK) {
+			init();
+			active = this;
+		}
+	}
+
+	/**
+	 * Make sure that PassMan is initialized for this session. Must only be called
+	 * while holding {@link #ACTIVE_LOCK}.
+	 * 
+	 * @throws PasswordManagerException
+	 * @throws InterruptedException
+	 */
+	private void activate() throws PasswordManagerException, InterruptedException {
+		if (active != this) {
+			init();
+			active = this;
+		}
+	}
+
+	/**
+	 * Replace the access to PassMan and forget all sessions. Only intended for
+	 * tests, which cannot initialize PassMan.
+	 * 
+	 * @param newBackend Access to PassMan
+	 */
+	static synchronized void useBackend(Backend newBackend) {
+		synchronized (ACTIVE_LOCK) {
+			backend = newBackend;
+			sessions.clear();
+			current = null;
+			active = null;
+		}
+	}
+
+	/**
+	 * Initialize PassMan for this session
+	 * 
+	 * @throws PasswordManagerException
+	 * @throws InterruptedException
+	 */
+	private void init() throws PasswordManagerException, InterruptedException {
+		PhaseTimer timer = PhaseTimer.start(Phase.PASSMAN_INIT, null);
+		try {
+			dataStoreFile = backend.init(integrationServerRootDir);
+		} finally {
+			timer.close();
+		}
+		dataStoreStamp = getDataStoreStamp();
+	}
+
+	/**
+	 * Get a stamp of the data store that changes whenever the file is written
+	 * 
+	 * @return size and modification time
+	 */
+	private String getDataStoreStamp() {
+		return dataStoreFile == null ? "" : dataStoreFile.length() + "/" + dataStoreFile.lastModified();
+	}
+
+	/**
+	 * Initialize PassMan again, if another process has written the data store since
+	 * it was read. Otherwise storing a password would overwrite the changes of the
+	 * other process. Must only be called while holding the lock from
+	 * {@link FileLocks#lockPassMan(File)} and {@link #ACTIVE_LOCK}, with this
+	 * session being the active one.
+	 * 
+	 * @throws PasswordManagerException
+	 * @throws InterruptedException
+	 */
+	private void reloadIfModified() throws PasswordManagerException, InterruptedException {
+		if (!getDataStoreStamp().equals(dataStoreStamp)) {
+			init();
+		}
+	}
+
+	/**
+	 * Get PassMan handle for the password of an ART connection
+	 * 
+	 * @param connectionAlias Alias of the ART connection
+	 * @return PassMan handle
+	 */
+	public static String getHandle(String connectionAlias) {
+		return PASSMAN_ART_PREFIX + connectionAlias;
+	}
+
+	/**
+	 * Convert a password as provided by the user into its secure form. The value
+	 * can be provided in clear-text or AES encrypted via the existing official
+	 * tool.
+	 * 
+	 * @param password Password in clear-text or encrypted
+	 * @return password for PassMan
+	 * @throws Exception if an encrypted password cannot be decrypted
+	 */
+	static WmSecureString toSecureString(String password) throws Exception {
+		if (CipherUtil.isEncrypted(password)) {
+			return new WmSecureString(CipherUtil.decrypt(password));
+		} else {
+			return new WmSecureString(password.toCharArray());
+		}
+	}
+
+	/**
+	 * Queue a new password for an ART connection. It will be stored with the next
+	 * call of {@link #storeQueued()}. If PassMan already holds the same password
+	 * for the connection, nothing is queued, so that the data store is not
+	 * rewritten without need. If PassMan is currently initialized for another
+	 * session, this comparison is done when the password is stored.
+	 * 
+	 * @param connectionAlias Alias of the ART connection
+	 * @param password        New password value, clear-text or encrypted
+	 * @return <code>true</code> if the password differs from the stored one and
+	 *         was queued
+	 * @throws Exception if an encrypted password cannot be decrypted or the
+	 *                   current password cannot be retrieved
+	 */
+	public synchronized boolean queuePassword(String connectionAlias, String password) throws Exception {
+		String handle = getHandle(connectionAlias);
+		WmSecureString newPassword = toSecureString(password);
+
+		// Re-insert so that the order reflects the last change
+		queuedPasswords.remove(handle);
+		synchronized (ACTIVE_LOCK) {
+			if (active == this && isStored(handle, newPassword)) {
+				return false;
+			}
+		}
+		queuedPasswords.put(handle, newPassword);
+		return true;
+	}
+
+	/**
+	 * Check whether PassMan already holds a password
+	 * 
+	 * @param handle   PassMan handle
+	 * @param password Password to compare with
+	 * @return <code>true</code> if the stored password is identical
+	 * @throws PasswordManagerException
+	 * @throws InterruptedException
+	 */
+	private boolean isStored(String handle, WmSecureString password)
+			throws PasswordManagerException, InterruptedException {
+		WmSecureString current = retrievePassword(handle);
+		if (current == null) {
+			return false;
+		}
+		char[] currentChars = current.toCharArray();
+		char[] newChars = password.toCharArray();
+		try {
+			return Arrays.equals(currentChars, newChars);
+		} finally {
+			Arrays.fill(currentChars, '\0');
+			Arrays.fill(newChars, '\0');
+		}
+	}
+
+	/**
+	 * Get number of passwords waiting to be stored
+	 * 
+	 * @return number of queued passwords
+	 */
+	public synchronized int getQueuedCount() {
+		return queuedPasswords.size();
+	}
+
+	/**
+	 * Store all queued passwords in PassMan. Each handle is written once. The
+	 * queue is empty afterwards, regardless of the outcome.
+	 * 
+	 * @return success of storing, by handle
+	 */
+	public synchronized Map<String, Boolean> storeQueued() {
+		return storeQueued(null);
+	}
+
+	/**
+	 * Store all queued passwords in PassMan, like {@link #storeQueued()}, but store
+	 * the data store files of PassMan in a backup store first. If nothing is
+	 * queued, nothing is stored.
+	 * 
+	 * @param backupStore Store for backups, may be <code>null</code> for no backup
+	 * @return success of storing, by handle
+	 */
+	public synchronized Map<String, Boolean> storeQueued(BackupStore backupStore) {
+		Map<String, Boolean> out = new LinkedHashMap<String, Boolean>();
+		if (queuedPasswords.isEmpty()) {
+			return out;
+		}
+
+		synchronized (ACTIVE_LOCK) {
+			storeQueuedActive(backupStore, out);
+		}
+		for (String handle : queuedPasswords.keySet()) {
+			out.putIfAbsent(handle, false);
+		}
+		queuedPasswords.clear();
+		return out;
+	}
+
+	/**
+	 * Store all queued passwords with PassMan initialized for this session. Must
+	 * only be called while holding {@link #ACTIVE_LOCK}.
+	 * 
+	 * @param backupStore Store for backups, may be <code>null</code> for no backup
+	 * @param out         Success of storing, by handle
+	 */
+	private void storeQueuedActive(BackupStore backupStore, Map<String, Boolean> out) {
+		// The lock is held for all passwords, so that other processes cannot write
+		// the data store in between
+		try {
+			FileLocks.Handle lock = FileLocks.lockPassMan(integrationServerRootDir);
+			try {
+				activate();
+				reloadIfModified();
+
+				// Passwords that were queued while another session was active have not
+				// been compared yet
+				Iterator<Map.Entry<String, WmSecureString>> it = queuedPasswords.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<String, WmSecureString> queued = it.next();
+					if (isStored(queued.getKey(), queued.getValue())) {
+						out.put(queued.getKey(), true);
+						it.remove();
+					}
+				}
+				if (queuedPasswords.isEmpty()) {
+					return;
+				}
+
+				if (backupStore != null && dataStoreFile != null) {
+					backupStore.backup(dataStoreFile);
+					backupStore.backup(new File(dataStoreFile.getParentFile(),
+							DATA_STORE_WORK_PREFIX + dataStoreFile.getName()));
+				}
+				for (Map.Entry<String, WmSecureString> queued : queuedPasswords.entrySet()) {
+					boolean success;
+					try {
+						success = storePassword(queued.getKey(), queued.getValue());
+					} catch (PasswordManagerException e) {
+						e.printStackTrace();
+						success = false;
+					}
+					out.put(queued.getKey(), success);
+				}
+			} finally {
+				lock.close();
+			}
+		} catch (IOException | PasswordManagerException | InterruptedException e) {
+			// Without lock, current data store, or backup no password is changed
+			e.printStackTrace();
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Store a password immediately. The data store is locked against other
+	 * processes and re-read if another process has written it in the meantime.
+	 * 
+	 * @param handle   PassMan handle
+	 * @param password New password
+	 * @return success of storing
+	 * @throws PasswordManagerException
+	 * @throws IOException              if the data store cannot be locked
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean storePassword(String handle, WmSecureString password)
+			throws PasswordManagerException, IOException, InterruptedException {
+		synchronized (ACTIVE_LOCK) {
+			return storePasswordActive(handle, password);
+		}
+	}
+
+	/**
+	 * Store a password with PassMan initialized for this session. Must only be
+	 * called while holding {@link #ACTIVE_LOCK}.
+	 * 
+	 * @param handle   PassMan handle
+	 * @param password New password
+	 * @return success of storing
+	 * @throws PasswordManagerException
+	 * @throws IOException              if the data store cannot be locked
+	 * @throws InterruptedException
+	 */
+	private boolean storePasswordActive(String handle, WmSecureString password)
+			throws PasswordManagerException, IOException, InterruptedException {
+		FileLocks.Handle lock = FileLocks.lockPassMan(integrationServerRootDir);
+		try {
+			activate();
+			reloadIfModified();
+			try {
+				return PhaseTimer.time(Phase.PASSWORD_STORE, handle, () -> backend.storePassword(handle, password));
+			} finally {
+				dataStoreStamp = getDataStoreStamp();
+			}
+		} finally {
+			lock.close();
+		}
+	}
+
+	/**
+	 * Get current password
+	 * 
+	 * @param handle PassMan handle
+	 * @return password
+	 * @throws PasswordManagerException
+	 * @throws InterruptedException
+	 */
+	public synchronized WmSecureString retrievePassword(String handle)
+			throws PasswordManagerException, InterruptedException {
+		synchronized (ACTIVE_LOCK) {
+			activate();
+			return backend.retrievePassword(handle);
+		}
+	}
+
+	/**
+	 * Access to PassMan
+	 */
+	interface Backend {
+
+		/**
+		 * Initialize PassMan for an Integration Server installation
+		 * 
+		 * @param integrationServerRootDir Root directory of Integration Server
+		 * @return data store file of PassMan
+		 * @throws PasswordManagerException
+		 * @throws InterruptedException
+		 */
+		File init(File integrationServerRootDir) throws PasswordManagerException, InterruptedException;
+
+		/**
+		 * Store a password with PassMan as initialized last
+		 * 
+		 * @param handle   PassMan handle
+		 * @param password New password
+		 * @return success of storing
+		 * @throws PasswordManagerException
+		 */
+		boolean storePassword(String handle, WmSecureString password) throws PasswordManagerException;
+
+		/**
+		 * Get a password from PassMan as initialized last
+		 * 
+		 * @param handle PassMan handle
+		 * @return password or <code>null</code> if there is none
+		 * @throws PasswordManagerException
+		 */
+		WmSecureString retrievePassword(String handle) throws PasswordManagerException;
+	}
+
+	/**
+	 * Access to PassMan via {@link OutboundPasswordManager}, as Integration Server
+	 * does
+	 */
+	private static class OutboundBackend implements Backend {
+
+		@Override
+		public File init(File integrationServerRootDir) throws PasswordManagerException, InterruptedException {
+
+			// Use Resources class to get configuration directory via API. Will unlikely to
+			// change any time soon, this seems cleaner than hard-coding it.
+			Resources resources = new Resources(integrationServerRootDir, false);
+
+			// Retrieve PassMan configuration. Effectively this gets the contents of
+			// passman.cnf
+			OPMConfig opmCfg = new OPMConfig(resources.getConfigDir());
+			PassManConfig pmCfg = opmCfg.asPassManConfig();
+
+			// Since the working directory is unknown, we need to make the paths absolute.
+			// Normally is not needed, since the working directory of IntegrationServer is
+			// known.
+			makePathsAbsolute(pmCfg, integrationServerRootDir);
+
+			// Initialize the actual PassMan instance with the updated (absolute paths)
+			// configuration
+			PassMan pm = PassManFactory.create(pmCfg);
+			OutboundPasswordManager.init((PasswordManager) pm);
+			return new File(pmCfg.getDataStoreParams().get(KEY_FILE_NAME));
+		}
+
+		@Override
+		public boolean storePassword(String handle, WmSecureString password) throws PasswordManagerException {
+			return OutboundPasswordManager.storePassword(handle, password);
+		}
+
+		@Override
+		public WmSecureString retrievePassword(String handle) throws PasswordManagerException {
+			return OutboundPasswordManager.retrievePassword(handle);
+		}
+
+		/**
+		 * Paths in the configuration file for PassMan are relative. When used from
+		 * within Integration Server that makes sense, because everything is in a known
+		 * location from the perspective of the invoking code. But this tool can be run
+		 * from an arbitrary location. It is therefore necessary to make the paths for
+		 * the data store file and the master password file absolute before initializing
+		 * this PassMan instance.
+		 * 
+		 * @param in                       PassMan configuration as read from
+		 *                                 passman.cnf
+		 * @param integrationServerRootDir Root directory of Integration Server
+		 */
+		private static void makePathsAbsolute(PassManConfig in, File integrationServerRootDir) {
+			makeFileNamePathAbsolute(in.getDataStoreParams(), integrationServerRootDir);
+			makeFileNamePathAbsolute(in.getMasterPasswordParams(), integrationServerRootDir);
+		}
+
+		/**
+		 * Make configured file name an absolute path
+		 * 
+		 * @param in                       Map with data store or master password
+		 *                                 settings
+		 * @param integrationServerRootDir Root directory of Integration Server
+		 */
+		private static void makeFileNamePathAbsolute(Map<String, String> in, File integrationServerRootDir) {
+			String relPath = in.get(KEY_FILE_NAME);
+			File file = new File(integrationServerRootDir, relPath);
+			String absolutePath = FileUtils.getCanonicalPathWithFallback(file);
+			in.put(KEY_FILE_NAME, absolutePath);
+		}
+	}
+
+}
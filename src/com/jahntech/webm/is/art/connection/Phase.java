@@ -0,0 +1,83 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+/**
+ * Phases of a run, as recorded by {@link PhaseTimer}
+ */
+public enum Phase {
+
+	/**
+	 * Locating the Integration Server installation
+	 */
+	HOME_RESOLUTION,
+
+	/**
+	 * Locating the directory of a connection
+	 */
+	DIRECTORY_RESOLUTION,
+
+	/**
+	 * Reading the node.ndf file
+	 */
+	READ,
+
+	/**
+	 * Decoding the connection details (Base64 and binary IData)
+	 */
+	DECODE,
+
+	/**
+	 * Waiting for memory to decode the connection details (see
+	 * {@link DecodeBuffers})
+	 */
+	DECODE_WAIT,
+
+	/**
+	 * Applying the changes to the connection details
+	 */
+	UPDATE,
+
+	/**
+	 * Encoding the connection details (binary IData and Base64)
+	 */
+	ENCODE,
+
+	/**
+	 * Writing the node.ndf file
+	 */
+	WRITE,
+
+	/**
+	 * Initializing PassMan
+	 */
+	PASSMAN_INIT,
+
+	/**
+	 * Storing a password in PassMan
+	 */
+	PASSWORD_STORE,
+
+	/**
+	 * Waiting for a lock held by another thread or process (see {@link FileLocks})
+	 */
+	LOCK_WAIT;
+
+}
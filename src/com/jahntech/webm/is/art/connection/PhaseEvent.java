@@ -0,0 +1,52 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a single {@link Phase}. Events are only
+ * recorded if a recording with this event enabled is running, e.g. when
+ * starting the JVM with <code>-XX:StartFlightRecording</code>.
+ */
+@Name("com.jahntech.jtacu.Phase")
+@Label("JTACU Phase")
+@Category("JTACU")
+@Description("Phase of an ART adapter connection update")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Connection Alias")
+	String connectionAlias;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+}
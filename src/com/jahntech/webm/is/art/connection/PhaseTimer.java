@@ -0,0 +1,220 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the duration of a {@link Phase}. Every measurement is emitted as a
+ * {@link PhaseEvent} for Java Flight Recorder. In addition, if the System
+ * property {@value #PROPERTY_TIMING} is set to <code>true</code>, durations are
+ * accumulated per phase and can be printed as a summary at the end of a run.
+ * While neither is enabled, {@link #start(Phase, String)} returns a shared
+ * instance that does nothing.
+ * 
+ * <pre>
+ * try (PhaseTimer timer = PhaseTimer.start(Phase.READ, connAlias)) {
+ * 	byte[] content = ...;
+ * 	timer.setBytes(content.length);
+ * }
+ * </pre>
+ * 
+ * Phases without a byte count are measured with
+ * {@link #time(Phase, String, Timed)}.
+ */
+public class PhaseTimer implements AutoCloseable {
+
+	/**
+	 * System property to enable the timing summary
+	 */
+	public static final String PROPERTY_TIMING = "jtacu.timing";
+
+	private static final boolean SUMMARY_ENABLED = Boolean.getBoolean(PROPERTY_TIMING);
+
+	private static final LongAdder[] COUNTS = createAdders();
+	private static final LongAdder[] NANOS = createAdders();
+	private static final LongAdder[] BYTES = createAdders();
+
+	/**
+	 * Timer that is used while neither JFR events nor the summary are enabled
+	 */
+	private static final PhaseTimer DISABLED = new PhaseTimer();
+
+	private Phase phase;
+	private PhaseEvent event;
+	private long startNanos;
+	private long bytes = 0;
+
+	/**
+	 * Initialize the timer that does nothing
+	 */
+	private PhaseTimer() {
+	}
+
+	/**
+	 * Initialize and start measurement
+	 * 
+	 * @param phase     Phase to measure
+	 * @param connAlias Connection alias, may be <code>null</code>
+	 * @param event     Event for the phase
+	 */
+	private PhaseTimer(Phase phase, String connAlias, PhaseEvent event) {
+		this.phase = phase;
+		this.event = event;
+		if (event.isEnabled()) {
+			event.phase = phase.name();
+			event.connectionAlias = connAlias;
+			event.begin();
+		}
+		if (SUMMARY_ENABLED) {
+			startNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Start measuring a phase
+	 * 
+	 * @param phase     Phase to measure
+	 * @param connAlias Connection alias, may be <code>null</code>
+	 * @return timer that must be closed at the end of the phase
+	 */
+	public static PhaseTimer start(Phase phase, String connAlias) {
+		PhaseEvent event = new PhaseEvent();
+		if (!SUMMARY_ENABLED && !event.isEnabled()) {
+			return DISABLED;
+		}
+		return new PhaseTimer(phase, connAlias, event);
+	}
+
+	/**
+	 * Measure a phase that consists of a single action
+	 * 
+	 * @param <T>       Type of the result
+	 * @param <E>       Type of the exception thrown by the action
+	 * @param phase     Phase to measure
+	 * @param connAlias Connection alias, may be <code>null</code>
+	 * @param action    Action to measure
+	 * @return result of the action
+	 * @throws E if the action fails
+	 */
+	@SuppressWarnings("try")
+	public static <T, E extends Exception> T time(Phase phase, String connAlias, Timed<T, E> action) throws E {
+		try (PhaseTimer timer = start(phase, connAlias)) {
+			return action.run();
+		}
+	}
+
+	/**
+	 * Set the number of bytes processed in this phase
+	 * 
+	 * @param bytes Number of bytes
+	 */
+	public void setBytes(long bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * End measurement
+	 */
+	@Override
+	public void close() {
+		if (this == DISABLED) {
+			return;
+		}
+		if (event.isEnabled()) {
+			event.bytes = bytes;
+			event.commit();
+		}
+		if (SUMMARY_ENABLED) {
+			int i = phase.ordinal();
+			COUNTS[i].increment();
+			NANOS[i].add(System.nanoTime() - startNanos);
+			BYTES[i].add(bytes);
+		}
+	}
+
+	/**
+	 * Check whether the timing summary is enabled
+	 * 
+	 * @return <code>true</code> if {@value #PROPERTY_TIMING} is set to
+	 *         <code>true</code>
+	 */
+	public static boolean isSummaryEnabled() {
+		return SUMMARY_ENABLED;
+	}
+
+	/**
+	 * Print the accumulated durations per phase, if the timing summary is enabled.
+	 * Durations of phases that ran concurrently add up, so the total can be longer
+	 * than the run itself.
+	 * 
+	 * @param out Stream to print to
+	 */
+	public static void printSummary(PrintStream out) {
+		if (!SUMMARY_ENABLED) {
+			return;
+		}
+
+		out.println("Timing summary (phase, count, total ms, average ms, bytes)");
+		for (Phase phase : Phase.values()) {
+			int i = phase.ordinal();
+			long count = COUNTS[i].sum();
+			if (count == 0) {
+				continue;
+			}
+			double totalMillis = NANOS[i].sum() / 1_000_000.0;
+			out.println(String.format("  %-20s %6d %10.2f %10.3f %12d", phase, count, totalMillis,
+					totalMillis / count, BYTES[i].sum()));
+		}
+	}
+
+	/**
+	 * Create one counter per phase
+	 * 
+	 * @return counters
+	 */
+	private static LongAdder[] createAdders() {
+		LongAdder[] out = new LongAdder[Phase.values().length];
+		for (int i = 0; i < out.length; i++) {
+			out[i] = new LongAdder();
+		}
+		return out;
+	}
+
+	/**
+	 * Action measured by {@link PhaseTimer#time(Phase, String, Timed)}
+	 * 
+	 * @param <T> Type of the result
+	 * @param <E> Type of the exception thrown by the action
+	 */
+	@FunctionalInterface
+	public interface Timed<T, E extends Exception> {
+
+		/**
+		 * Perform the action
+		 * 
+		 * @return result
+		 * @throws E if the action fails
+		 */
+		T run() throws E;
+	}
+
+}
@@ -0,0 +1,359 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Raw content of a node.ndf file, with the location of the encoded connection
+ * details ({@value ConnectionFile#KEY_IRTNODE_PROPERTY_ENC}) within it. This
+ * allows reading and replacing the connection details without decoding the
+ * entire XML document. All other bytes of the file remain unchanged.
+ * 
+ * <p>
+ * The content can be a byte array or a memory-mapped file. Only the bytes
+ * before and after the encoded connection details are copied; the encoded
+ * connection details themselves are decoded directly from the content into a
+ * buffer provided by the caller (see {@link #decodeValue(byte[])}), without
+ * creating a string first. Afterwards the content can be released via
+ * {@link #releaseValue()}.
+ * 
+ * <p>
+ * Only the simple form as written by Integration Server is supported, i.e. a
+ * <code>value</code> element whose content consists of Base64 characters and
+ * whitespace only, and is not empty. For everything else (e.g. character
+ * references or CDATA sections) {@link #locate(ByteBuffer)} returns
+ * <code>null</code> and the caller must fall back to the XML decoder.
+ */
+public class RawNodeFile {
+
+	private static final byte[] MARKER_NAME = ("name=\"" + ConnectionFile.KEY_IRTNODE_PROPERTY_ENC + "\"")
+			.getBytes(StandardCharsets.UTF_8);
+	private static final byte[] ELEMENT_VALUE = "<value".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] END_ELEMENT_VALUE = "</value>".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Value of each Base64 character, -1 for all other bytes
+	 */
+	private static final byte[] BASE64_VALUES = new byte[256];
+
+	static {
+		Arrays.fill(BASE64_VALUES, (byte) -1);
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for (int i = 0; i < alphabet.length(); i++) {
+			BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+		}
+	}
+
+	private byte[] head;
+	private byte[] tail;
+	private ByteBuffer value;
+
+	/**
+	 * Initialize with raw content and location of the value
+	 * 
+	 * @param content    Raw file content
+	 * @param valueStart Position of the first byte of the value
+	 * @param valueEnd   Position after the last byte of the value
+	 */
+	private RawNodeFile(ByteBuffer content, int valueStart, int valueEnd) {
+		head = new byte[valueStart];
+		content.duplicate().position(0).get(head);
+		tail = new byte[content.limit() - valueEnd];
+		content.duplicate().position(valueEnd).get(tail);
+		ByteBuffer valueView = content.duplicate();
+		valueView.position(valueStart).limit(valueEnd);
+		value = valueView.slice();
+	}
+
+	/**
+	 * Locate the encoded connection details within the raw file content
+	 * 
+	 * @param content Raw file content
+	 * @return raw file or <code>null</code> if the content does not have the
+	 *         expected simple form
+	 */
+	public static RawNodeFile locate(byte[] content) {
+		return locate(ByteBuffer.wrap(content));
+	}
+
+	/**
+	 * Locate the encoded connection details within the raw file content, e.g. a
+	 * memory-mapped file. The position of the buffer is ignored.
+	 * 
+	 * @param content Raw file content, from index 0 up to the limit
+	 * @return raw file or <code>null</code> if the content does not have the
+	 *         expected simple form
+	 */
+	public static RawNodeFile locate(ByteBuffer content) {
+		int length = content.limit();
+		int namePos = indexOf(content, MARKER_NAME);
+		if (namePos < 0) {
+			return null;
+		}
+
+		// The attribute must belong to a <value> element
+		int elementStart = lastIndexOf(content, (byte) '<', namePos);
+		if (elementStart < 0 || !startsWith(content, elementStart, ELEMENT_VALUE)) {
+			return null;
+		}
+		for (int i = elementStart + 1; i < namePos; i++) {
+			if (content.get(i) == '>') {
+				return null;
+			}
+		}
+
+		// Find end of start tag, which must not be self-closing
+		int tagEnd = namePos + MARKER_NAME.length;
+		while (tagEnd < length && content.get(tagEnd) != '>') {
+			tagEnd++;
+		}
+		if (tagEnd >= length || content.get(tagEnd - 1) == '/') {
+			return null;
+		}
+
+		// Value extends up to the end tag and may only contain Base64 characters
+		int valueStart = tagEnd + 1;
+		int valueEnd = valueStart;
+		boolean empty = true;
+		while (valueEnd < length && content.get(valueEnd) != '<') {
+			byte b = content.get(valueEnd);
+			if (!isBase64OrWhitespace(b)) {
+				return null;
+			}
+			empty &= isWhitespace(b);
+			valueEnd++;
+		}
+		if (empty || !startsWith(content, valueEnd, END_ELEMENT_VALUE)) {
+			return null;
+		}
+
+		return new RawNodeFile(content, valueStart, valueEnd);
+	}
+
+	/**
+	 * Get the encoded connection details
+	 * 
+	 * @return Base64 encoded connection details, without whitespace
+	 * @throws IllegalStateException if the value was released
+	 */
+	public String getEncodedValue() throws IllegalStateException {
+		ByteBuffer encoded = getValue();
+		StringBuilder out = new StringBuilder(encoded.limit());
+		for (int i = 0; i < encoded.limit(); i++) {
+			byte b = encoded.get(i);
+			if (!isWhitespace(b)) {
+				out.append((char) b);
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Get the maximum number of bytes the decoded connection details can have
+	 * 
+	 * @return size of the buffer needed for {@link #decodeValue(byte[])}
+	 * @throws IllegalStateException if the value was released
+	 */
+	public int getMaxDecodedLength() throws IllegalStateException {
+		return getValue().limit() / 4 * 3 + 3;
+	}
+
+	/**
+	 * Decode the Base64 encoded connection details directly into a buffer
+	 * 
+	 * @param target Buffer with at least {@link #getMaxDecodedLength()} bytes
+	 * @return number of decoded bytes
+	 * @throws IOException           if the value is not valid Base64
+	 * @throws IllegalStateException if the value was released
+	 */
+	public int decodeValue(byte[] target) throws IOException, IllegalStateException {
+		ByteBuffer encoded = getValue();
+		int out = 0;
+		int bits = 0;
+		int count = 0;
+		int padding = 0;
+		for (int i = 0; i < encoded.limit(); i++) {
+			byte b = encoded.get(i);
+			if (isWhitespace(b)) {
+				continue;
+			}
+			if (b == '=') {
+				padding++;
+				continue;
+			}
+			int v = BASE64_VALUES[b & 0xff];
+			if (v < 0 || padding > 0) {
+				throw new IOException("Invalid Base64 content in connection details");
+			}
+			bits = (bits << 6) | v;
+			if (++count == 4) {
+				target[out++] = (byte) (bits >> 16);
+				target[out++] = (byte) (bits >> 8);
+				target[out++] = (byte) bits;
+				bits = 0;
+				count = 0;
+			}
+		}
+
+		// Incomplete last group, with or without padding
+		if (count == 1 || padding > 2 || (padding > 0 && count + padding != 4)) {
+			throw new IOException("Invalid Base64 content in connection details");
+		} else if (count == 2) {
+			target[out++] = (byte) (bits >> 4);
+		} else if (count == 3) {
+			target[out++] = (byte) (bits >> 10);
+			target[out++] = (byte) (bits >> 2);
+		}
+		return out;
+	}
+
+	/**
+	 * Release the encoded connection details, e.g. to unreference a memory-mapped
+	 * file once the connection details are decoded. Writing and
+	 * {@link #getContentWithoutValue()} still work afterwards.
+	 */
+	public void releaseValue() {
+		value = null;
+	}
+
+	/**
+	 * Write the file content with the encoded connection details replaced. All
+	 * other bytes are copied unchanged.
+	 * 
+	 * @param out          Stream to write to
+	 * @param encodedValue New Base64 encoded connection details
+	 * @throws IOException if writing fails
+	 */
+	public void writeWithValue(OutputStream out, byte[] encodedValue) throws IOException {
+		out.write(head);
+		out.write(encodedValue);
+		out.write(tail);
+	}
+
+	/**
+	 * Get the file content without the encoded connection details, i.e. with an
+	 * empty value. This is much smaller than the complete content and can be
+	 * decoded quickly, if only the other values of the node are needed.
+	 * 
+	 * @return file content with empty value
+	 */
+	public byte[] getContentWithoutValue() {
+		byte[] out = new byte[head.length + tail.length];
+		System.arraycopy(head, 0, out, 0, head.length);
+		System.arraycopy(tail, 0, out, head.length, tail.length);
+		return out;
+	}
+
+	/**
+	 * Get the encoded connection details
+	 * 
+	 * @return encoded connection details, from index 0 up to the limit
+	 * @throws IllegalStateException if the value was released
+	 */
+	private ByteBuffer getValue() throws IllegalStateException {
+		if (value == null) {
+			throw new IllegalStateException("Encoded connection details were already released");
+		}
+		return value;
+	}
+
+	/**
+	 * Find the first occurrence of a byte sequence
+	 * 
+	 * @param data    Data to search in, from index 0 up to the limit
+	 * @param pattern Byte sequence to search for
+	 * @return position of first occurrence or -1 if not found
+	 */
+	private static int indexOf(ByteBuffer data, byte[] pattern) {
+		outer: for (int i = 0; i <= data.limit() - pattern.length; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if (data.get(i + j) != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Find last occurrence of a byte before a position
+	 * 
+	 * @param data   Data to search in
+	 * @param b      Byte to search for
+	 * @param before Position before which to search
+	 * @return position or -1 if not found
+	 */
+	private static int lastIndexOf(ByteBuffer data, byte b, int before) {
+		for (int i = before - 1; i >= 0; i--) {
+			if (data.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check whether data contains a byte sequence at a position
+	 * 
+	 * @param data   Data to check
+	 * @param offset Position to check at
+	 * @param prefix Expected byte sequence
+	 * @return <code>true</code> if the byte sequence was found
+	 */
+	private static boolean startsWith(ByteBuffer data, int offset, byte[] prefix) {
+		if (offset + prefix.length > data.limit()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data.get(offset + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check for whitespace
+	 * 
+	 * @param b Byte to check
+	 * @return <code>true</code> if whitespace
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+
+	/**
+	 * Check for a character allowed in a Base64 encoded value
+	 * 
+	 * @param b Byte to check
+	 * @return <code>true</code> if allowed
+	 */
+	private static boolean isBase64OrWhitespace(byte b) {
+		return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '+' || b == '/'
+				|| b == '=' || isWhitespace(b);
+	}
+
+}
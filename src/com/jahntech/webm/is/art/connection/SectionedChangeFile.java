@@ -0,0 +1,330 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * File with changes for any number of connections. Each connection has its own
+ * section, which starts with a header holding the package name and the
+ * connection alias in square brackets. A section {@value #SECTION_DEFAULTS}
+ * holds changes that are inherited by all sections after it; a section can
+ * override them. Settings are written as <code>path = value</code>, without
+ * escaping. Empty lines and lines starting with '#' are ignored.
+ * 
+ * <pre>
+ * [defaults]
+ * connectionProperties.user = svc_integration
+ * 
+ * [MyPkgConnections myPkg.connections:jdbcMain]
+ * connectionProperties.serverName = db-prod-1
+ * connectionProperties.password = secret
+ * 
+ * [MyPkgConnections myPkg.connections:jdbcReporting]
+ * connectionProperties.serverName = db-prod-2
+ * connectionProperties.user = svc_reporting
+ * </pre>
+ * 
+ * <p>
+ * The file is read as a stream, one section at a time (see {@link #next()}),
+ * and the changes of each section are applied in the order of the file. Only
+ * the defaults and the current section are kept in memory, so that files for
+ * entire environments with thousands of connections can be processed in one
+ * run.
+ */
+public class SectionedChangeFile implements Closeable {
+
+	/**
+	 * Name of the section with defaults
+	 */
+	public static final String SECTION_DEFAULTS = "defaults";
+
+	private static final String COMMENT_PREFIX = "#";
+	private static final String SECTION_START = "[";
+	private static final String SECTION_END = "]";
+	private static final String SEPARATOR = "=";
+
+	/**
+	 * Number of updates per worker thread that are read ahead and applied together
+	 */
+	private static final int UPDATES_PER_THREAD = 4;
+
+	private File file;
+	private BufferedReader reader;
+	private int lineNumber = 0;
+
+	private Map<String, String> defaults = new LinkedHashMap<String, String>();
+	private boolean inDefaults = false;
+	private String packageName = null;
+	private String connAlias = null;
+	private int sectionLine = 0;
+	private Map<String, String> entries = new LinkedHashMap<String, String>();
+
+	/**
+	 * Update that was read ahead but did not fit into the previous group
+	 */
+	private ConnectionUpdate pending = null;
+
+	/**
+	 * Open a file
+	 * 
+	 * @param file File with sections of changes
+	 * @throws IOException              if the file cannot be opened
+	 * @throws IllegalArgumentException if the file does not exist
+	 */
+	public SectionedChangeFile(File file) throws IOException, IllegalArgumentException {
+		super();
+		this.file = file;
+		if (!file.exists()) {
+			throw new IllegalArgumentException(
+					"Change file '" + FileUtils.getCanonicalPathWithFallback(file) + "' does not exist");
+		}
+		reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read the next section
+	 * 
+	 * @return update for the connection of the section, or <code>null</code> at
+	 *         the end of the file
+	 * @throws IOException              if the file cannot be read
+	 * @throws IllegalArgumentException if the file contains an invalid line or
+	 *                                  setting path
+	 */
+	public ConnectionUpdate next() throws IOException, IllegalArgumentException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) {
+				continue;
+			}
+
+			if (line.startsWith(SECTION_START)) {
+				ConnectionUpdate finished = finishSection();
+				startSection(line);
+				if (finished != null) {
+					return finished;
+				}
+			} else {
+				addEntry(line);
+			}
+		}
+		return finishSection();
+	}
+
+	/**
+	 * Read the next group of sections that can be applied together. A group ends
+	 * after the maximum number of sections or before a connection that is already
+	 * part of it.
+	 * 
+	 * @param groupSize Maximum number of sections in the group
+	 * @return updates of the group, empty at the end of the file
+	 * @throws IOException              if the file cannot be read
+	 * @throws IllegalArgumentException if the file contains an invalid line or
+	 *                                  setting path
+	 */
+	List<ConnectionUpdate> nextGroup(int groupSize) throws IOException, IllegalArgumentException {
+		List<ConnectionUpdate> group = new ArrayList<ConnectionUpdate>();
+		Set<String> aliases = new HashSet<String>();
+		ConnectionUpdate next = pending != null ? pending : next();
+		while (next != null && group.size() < groupSize && aliases.add(next.getConnAlias())) {
+			group.add(next);
+			next = next();
+		}
+		pending = next;
+		return group;
+	}
+
+	/**
+	 * Start a new section
+	 * 
+	 * @param line Section header
+	 * @throws IllegalArgumentException if the header is invalid
+	 */
+	private void startSection(String line) throws IllegalArgumentException {
+		if (!line.endsWith(SECTION_END)) {
+			throw invalid("Section header must end with '" + SECTION_END + "'");
+		}
+		String name = line.substring(SECTION_START.length(), line.length() - SECTION_END.length()).trim();
+		if (name.equals(SECTION_DEFAULTS)) {
+			inDefaults = true;
+			return;
+		}
+
+		String[] columns = name.split("\\s+");
+		if (columns.length != 2) {
+			throw invalid("Section header must contain package name and connection alias, or '" + SECTION_DEFAULTS
+					+ "'");
+		}
+		inDefaults = false;
+		packageName = columns[0];
+		connAlias = columns[1];
+		sectionLine = lineNumber;
+	}
+
+	/**
+	 * Add a setting to the current section
+	 * 
+	 * @param line Setting
+	 * @throws IllegalArgumentException if the line is not a setting or there is no
+	 *                                  section
+	 */
+	private void addEntry(String line) throws IllegalArgumentException {
+		int pos = line.indexOf(SEPARATOR);
+		if (pos <= 0) {
+			throw invalid("Setting must have the form path " + SEPARATOR + " value");
+		}
+		String path = line.substring(0, pos).trim();
+		String value = line.substring(pos + SEPARATOR.length()).trim();
+		if (inDefaults) {
+			defaults.put(path, value);
+		} else if (connAlias != null) {
+			entries.put(path, value);
+		} else {
+			throw invalid("Setting must belong to a section");
+		}
+	}
+
+	/**
+	 * Finish the current connection section, if there is one
+	 * 
+	 * @return update for the connection of the section, or <code>null</code> if
+	 *         there is no connection section
+	 * @throws IllegalArgumentException if a setting path is invalid
+	 */
+	private ConnectionUpdate finishSection() throws IllegalArgumentException {
+		if (connAlias == null) {
+			return null;
+		}
+
+		Map<String, String> changes = new LinkedHashMap<String, String>(defaults);
+		changes.putAll(entries);
+		ChangeSet changeSet;
+		try {
+			changeSet = new ChangeSet(changes);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Section at line " + sectionLine + " of change file '"
+					+ FileUtils.getCanonicalPathWithFallback(file) + "' : " + e.getMessage(), e);
+		}
+		ConnectionUpdate update = new ConnectionUpdate(packageName, connAlias, changeSet);
+
+		packageName = null;
+		connAlias = null;
+		entries.clear();
+		return update;
+	}
+
+	/**
+	 * Create an exception for an invalid line
+	 * 
+	 * @param message Description of the problem
+	 * @return exception with file and line number
+	 */
+	private IllegalArgumentException invalid(String message) {
+		return new IllegalArgumentException("Line " + lineNumber + " of change file '"
+				+ FileUtils.getCanonicalPathWithFallback(file) + "' : " + message);
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Apply all sections of a file. The file is checked completely first, so that
+	 * an invalid line does not leave the installation half-updated. It is then
+	 * read a second time and applied in groups of sections via
+	 * {@link UpdatePipeline}. A group ends before a connection that is already
+	 * part of it, so that several sections for the same connection are applied in
+	 * the order of the file. Passwords are stored at the end.
+	 * 
+	 * @param context Context of the current run
+	 * @param file    File with sections of changes
+	 * @param out     Stream for messages
+	 * @return number of failed updates and passwords that could not be stored
+	 * @throws IOException              if the file cannot be read or the backup
+	 *                                  store cannot be created
+	 * @throws IllegalArgumentException if the file is invalid
+	 * @throws InterruptedException     if interrupted while waiting for the
+	 *                                  updates
+	 */
+	public static int apply(UpdateContext context, File file, PrintStream out)
+			throws IOException, IllegalArgumentException, InterruptedException {
+		int total = 0;
+		try (SectionedChangeFile changes = new SectionedChangeFile(file)) {
+			while (changes.next() != null) {
+				total++;
+			}
+		}
+		out.println("Change file with " + total + " connection update(s)");
+
+		int threads = Math.max(1,
+				Integer.getInteger(UpdatePipeline.PROPERTY_THREADS, Runtime.getRuntime().availableProcessors()));
+		int groupSize = threads * UPDATES_PER_THREAD;
+
+		// Only failures are kept, so that memory does not grow with the file
+		List<String> failures = new ArrayList<String>();
+		try (SectionedChangeFile changes = new SectionedChangeFile(file)) {
+			List<ConnectionUpdate> group;
+			while (!(group = changes.nextGroup(groupSize)).isEmpty()) {
+				for (UpdatePipeline.Result result : new UpdatePipeline(context, threads).run(group, out)) {
+					if (!result.isSuccess()) {
+						failures.add(result.getUpdate() + " : " + result.getError().getMessage());
+					}
+				}
+			}
+		}
+
+		out.println();
+		int passwordFailures = 0;
+		for (boolean success : CommandLine.storeQueuedPasswords(context, out).values()) {
+			if (!success) {
+				passwordFailures++;
+			}
+		}
+
+		// Failures are also written in quiet mode
+		out.println();
+		LogSink.println(out, failures.isEmpty() && passwordFailures == 0 ? LogSink.Level.INFO : LogSink.Level.WARN,
+				"Summary of change file (" + (total - failures.size()) + " succeeded, " + failures.size()
+						+ " failed)");
+		for (String failure : failures) {
+			LogSink.println(out, LogSink.Level.WARN, "  FAILED  " + failure);
+		}
+		if (passwordFailures > 0) {
+			LogSink.println(out, LogSink.Level.WARN, "  " + passwordFailures + " password(s) could not be stored");
+		}
+		return failures.size() + passwordFailures;
+	}
+
+}
@@ -0,0 +1,148 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Base64;
+
+import com.softwareag.util.IDataMap;
+import com.wm.app.b2b.server.PackageStore;
+import com.wm.data.IData;
+import com.wm.util.Values;
+import com.wm.util.coder.IDataBinCoder;
+import com.wm.util.coder.XMLCoder;
+
+/**
+ * Creates synthetic ART adapter connections that have the same structure as a
+ * JDBC adapter connection. Intended for benchmarks and other situations where
+ * no real Integration Server installation is available. The size of the
+ * connection can be controlled via the length of the "otherProperties" value.
+ * Not part of the API; it is only used by the training run for class data
+ * sharing (see {@link CdsTraining}) and the benchmarks.
+ */
+class SyntheticConnection {
+
+	/**
+	 * Adapter type used for synthetic connections
+	 */
+	static final String ADAPTER_TYPE = "JDBCAdapter";
+
+	/**
+	 * Create connection details
+	 * 
+	 * @param otherPropertiesSize Number of characters for the value of
+	 *                            "connectionProperties.otherProperties"
+	 * @return connection details
+	 */
+	static IData createDetails(int otherPropertiesSize) {
+		IDataMap connectionProperties = new IDataMap();
+		connectionProperties.put("driverType", "Default");
+		connectionProperties.put("datasourceClass", "oracle.jdbc.pool.OracleDataSource");
+		connectionProperties.put("serverName", "db.example.com");
+		connectionProperties.put("user", "app_user");
+		connectionProperties.put("databaseName", "APPDB");
+		connectionProperties.put("portNumber", "1521");
+		connectionProperties.put("networkProtocol", "tcp");
+		connectionProperties.put("otherProperties", createFiller(otherPropertiesSize));
+
+		IDataMap connectionManagerProperties = new IDataMap();
+		connectionManagerProperties.put("poolable", "true");
+		connectionManagerProperties.put("minimumPoolSize", "1");
+		connectionManagerProperties.put("maximumPoolSize", "10");
+		connectionManagerProperties.put("poolIncrementSize", "1");
+		connectionManagerProperties.put("blockingTimeout", "1000");
+		connectionManagerProperties.put("expireTimeout", "1000");
+		connectionManagerProperties.put("startupRetryCount", "0");
+		connectionManagerProperties.put("startupBackoffSecs", "10");
+		connectionManagerProperties.put("heartBeatInterval", "0");
+
+		IDataMap details = new IDataMap();
+		details.put("transactionType", "LOCAL_TRANSACTION");
+		details.put("connectionProperties", connectionProperties);
+		details.put("connectionManagerProperties", connectionManagerProperties);
+		details.put("connectionEnabled", "true");
+		return details;
+	}
+
+	/**
+	 * Create the content of a node.ndf file
+	 * 
+	 * @param pkgName   Name of package
+	 * @param connAlias Connection alias
+	 * @param details   Connection details
+	 * @return file content
+	 * @throws IOException if encoding fails
+	 */
+	static byte[] createNodeNdf(String pkgName, String connAlias, IData details) throws IOException {
+		byte[] settingsBytes = new IDataBinCoder().encodeToBytes(details);
+
+		Values nodeValues = new Values();
+		nodeValues.put(ConnectionFile.KEY_IRTNODE_PROPERTY_ENC, Base64.getEncoder().encodeToString(settingsBytes));
+		nodeValues.put(ConnectionFile.KEY_ADAPTER_TYPE, ADAPTER_TYPE);
+		nodeValues.put("node_nsName", connAlias);
+		nodeValues.put("node_pkg", pkgName);
+		nodeValues.put("is_public", "false");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new XMLCoder().encode(out, nodeValues);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Create a connection on disk, within the namespace directory of a package
+	 * 
+	 * @param isHome              Directory that contains the Integration Server
+	 *                            installation
+	 * @param pkgName             Name of package
+	 * @param connAlias           Connection alias
+	 * @param otherPropertiesSize Number of characters for the value of
+	 *                            "connectionProperties.otherProperties"
+	 * @return the node.ndf file
+	 * @throws IOException if the file cannot be written
+	 */
+	static File create(File isHome, String pkgName, String connAlias, int otherPropertiesSize)
+			throws IOException {
+		File nodeNdfDir = new File(ConnectionDiscovery.getNamespaceDir(isHome, pkgName),
+				connAlias.replace('.', File.separatorChar).replace(':', File.separatorChar));
+		Files.createDirectories(nodeNdfDir.toPath());
+
+		File nodeNdfFile = new File(nodeNdfDir, PackageStore.NDF_FILE);
+		Files.write(nodeNdfFile.toPath(), createNodeNdf(pkgName, connAlias, createDetails(otherPropertiesSize)));
+		return nodeNdfFile;
+	}
+
+	/**
+	 * Create a filler string of a given length
+	 * 
+	 * @param size Number of characters
+	 * @return filler string
+	 */
+	private static String createFiller(int size) {
+		StringBuilder out = new StringBuilder(size);
+		for (int i = 0; i < size; i++) {
+			out.append((char) ('a' + (i % 26)));
+		}
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,232 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.wm.util.Values;
+import com.wm.util.coder.XMLCoder;
+
+/**
+ * Creates a synthetic installation of Integration Server with any number of
+ * ART adapter connections (see {@link SyntheticConnection}), for benchmarks and
+ * tests at scale without a real webMethods installation. The layout is that of
+ * an instance of Integration Server classic:
+ * 
+ * <pre>
+ * &lt;wmHome&gt;/IntegrationServer/instances/&lt;instance&gt;/
+ *     config/passman.cnf
+ *     packages/JtacuSynthetic&lt;p&gt;/ns/jtacuSynthetic&lt;p&gt;/connections/connection&lt;c&gt;/node.ndf
+ * </pre>
+ * 
+ * The connections are spread over packages with a fixed number of connections
+ * each. The PassMan configuration is only a stand-in with the file names of
+ * the data store and master password, so that the layout is complete; PassMan
+ * itself cannot be initialized without a real installation. Several instances
+ * can be created within the same webMethods home.
+ * 
+ * <p>
+ * Not part of the API; it is only used by the training run for class data
+ * sharing (see {@link CdsTraining}) and the benchmarks. The webMethods home is
+ * marked with {@value #MARKER_FILE}, and {@link #delete(File)} only deletes
+ * directories with that marker.
+ */
+class SyntheticIsHome {
+
+	/**
+	 * Prefix of package names
+	 */
+	static final String PACKAGE_PREFIX = "JtacuSynthetic";
+
+	/**
+	 * File that marks a webMethods home as synthetic
+	 */
+	static final String MARKER_FILE = ".jtacu-synthetic";
+
+	private static final String DIR_CONFIG = "config";
+	private static final String FILE_PASSMAN_CONFIG = "passman.cnf";
+
+	private File isHome;
+	private List<DiscoveredConnection> connections;
+
+	/**
+	 * Initialize
+	 * 
+	 * @param isHome      Directory of the instance
+	 * @param connections Connections of the instance
+	 */
+	private SyntheticIsHome(File isHome, List<DiscoveredConnection> connections) {
+		super();
+		this.isHome = isHome;
+		this.connections = connections;
+	}
+
+	/**
+	 * Create an instance with connections. The node.ndf files are created in
+	 * parallel.
+	 * 
+	 * @param wmHome                Directory to use as webMethods home
+	 * @param instanceName          Name of the instance
+	 * @param connectionCount       Number of connections
+	 * @param connectionsPerPackage Number of connections per package
+	 * @param otherPropertiesSize   Number of characters for the value of
+	 *                              "connectionProperties.otherProperties"
+	 * @return the synthetic installation
+	 * @throws IOException if a file cannot be written
+	 */
+	static SyntheticIsHome create(File wmHome, String instanceName, int connectionCount,
+			int connectionsPerPackage, int otherPropertiesSize) throws IOException {
+		if (connectionCount < 0 || connectionsPerPackage < 1) {
+			throw new IllegalArgumentException(
+					"Number of connections must not be negative and each package must hold at least one connection");
+		}
+		Files.createDirectories(wmHome.toPath());
+		File marker = new File(wmHome, MARKER_FILE);
+		if (!marker.exists()) {
+			Files.createFile(marker.toPath());
+		}
+
+		File isHome = new File(wmHome, "IntegrationServer" + File.separator + "instances" + File.separator
+				+ instanceName);
+		Files.createDirectories(ConnectionDiscovery.getPackagesDir(isHome).toPath());
+		writePassManConfig(isHome);
+
+		DiscoveredConnection[] created = new DiscoveredConnection[connectionCount];
+		try {
+			IntStream.range(0, connectionCount).parallel().forEach(i -> {
+				int p = i / connectionsPerPackage;
+				String pkgName = PACKAGE_PREFIX + p;
+				String connAlias = "jtacuSynthetic" + p + ".connections:connection" + (i % connectionsPerPackage);
+				try {
+					File nodeNdfFile = SyntheticConnection.create(isHome, pkgName, connAlias, otherPropertiesSize);
+					created[i] = new DiscoveredConnection(pkgName, connAlias, SyntheticConnection.ADAPTER_TYPE,
+							nodeNdfFile, FileUtils.hash(nodeNdfFile));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		List<DiscoveredConnection> connections = new ArrayList<DiscoveredConnection>(connectionCount);
+		Collections.addAll(connections, created);
+		return new SyntheticIsHome(isHome, connections);
+	}
+
+	/**
+	 * Write a stand-in for the PassMan configuration
+	 * 
+	 * @param isHome Directory of the instance
+	 * @throws IOException if the file cannot be written
+	 */
+	private static void writePassManConfig(File isHome) throws IOException {
+		File configDir = new File(isHome, DIR_CONFIG);
+		Files.createDirectories(configDir.toPath());
+
+		Values dataStore = new Values();
+		dataStore.put("fileName", DIR_CONFIG + "/txnPassStore.dat");
+		Values masterPassword = new Values();
+		masterPassword.put("fileName", DIR_CONFIG + "/empw.dat");
+		Values config = new Values();
+		config.put("dataStore", dataStore);
+		config.put("masterPassword", masterPassword);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new XMLCoder().encode(out, config);
+		Files.write(new File(configDir, FILE_PASSMAN_CONFIG).toPath(), out.toByteArray());
+	}
+
+	/**
+	 * Delete a webMethods home with synthetic installations recursively
+	 * 
+	 * @param wmHome Directory used as webMethods home in
+	 *               {@link #create(File, String, int, int, int)}
+	 * @throws IllegalArgumentException if the directory is not marked as
+	 *                                  synthetic
+	 * @throws IOException              if the directory cannot be listed or a
+	 *                                  file cannot be deleted
+	 */
+	static void delete(File wmHome) throws IllegalArgumentException, IOException {
+		if (!wmHome.exists()) {
+			return;
+		}
+		Path root = wmHome.toPath();
+		Path marker = root.resolve(MARKER_FILE);
+		if (!Files.isRegularFile(marker)) {
+			throw new IllegalArgumentException("Directory '" + FileUtils.getCanonicalPathWithFallback(wmHome)
+					+ "' does not contain synthetic installations and is not deleted");
+		}
+
+		// The marker goes last, so that a failed attempt can be repeated
+		List<Path> failed = new ArrayList<Path>();
+		List<Path> paths;
+		try (Stream<Path> walk = Files.walk(root)) {
+			paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+		for (Path path : paths) {
+			if (path.equals(marker) || path.equals(root)) {
+				continue;
+			}
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				failed.add(path);
+			}
+		}
+		if (!failed.isEmpty()) {
+			throw new IOException("Could not delete " + failed.size() + " file(s) of synthetic installation in '"
+					+ FileUtils.getCanonicalPathWithFallback(wmHome) + "', e.g. " + failed.get(0));
+		}
+		Files.delete(marker);
+		Files.delete(root);
+	}
+
+	/**
+	 * Get directory of the instance
+	 * 
+	 * @return directory to use as Integration Server home
+	 */
+	File getIsHome() {
+		return isHome;
+	}
+
+	/**
+	 * Get all connections, ordered by package and connection number
+	 * 
+	 * @return connections
+	 */
+	List<DiscoveredConnection> getConnections() {
+		return connections;
+	}
+
+}
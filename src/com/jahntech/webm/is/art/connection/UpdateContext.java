@@ -0,0 +1,143 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Everything that is shared by all connection updates within one run of the
+ * program
+ */
+public class UpdateContext {
+
+	private File isHome;
+	private ConnectionIndex index;
+	private DirectorySyncGroup syncGroup;
+	private BackupStore backupStore = null;
+	private ConnectionResultCache resultCache = null;
+
+	/**
+	 * Compiled change sets by change file, so that each file is loaded and
+	 * compiled only once per run
+	 */
+	private ConcurrentMap<File, ChangeSet> changeSets = new ConcurrentHashMap<File, ChangeSet>();
+
+	/**
+	 * Initialize for an Integration Server installation
+	 * 
+	 * @param isHome    Directory that contains the Integration Server installation
+	 * @param index     Connection index, may be <code>null</code>
+	 * @param syncGroup Group for deferred directory syncs, may be
+	 *                  <code>null</code> to sync immediately
+	 */
+	public UpdateContext(File isHome, ConnectionIndex index, DirectorySyncGroup syncGroup) {
+		super();
+		this.isHome = isHome;
+		this.index = index;
+		this.syncGroup = syncGroup;
+	}
+
+	/**
+	 * Get Integration Server home directory
+	 * 
+	 * @return directory that contains the Integration Server installation
+	 */
+	public File getIsHome() {
+		return isHome;
+	}
+
+	/**
+	 * Get connection index
+	 * 
+	 * @return connection index or <code>null</code> if not used
+	 */
+	public ConnectionIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Get group for deferred directory syncs
+	 * 
+	 * @return sync group or <code>null</code> if directories are synced
+	 *         immediately
+	 */
+	public DirectorySyncGroup getSyncGroup() {
+		return syncGroup;
+	}
+
+	/**
+	 * Get the store for backups of changed files. It is created on first access,
+	 * so that runs without changes do not leave any trace.
+	 * 
+	 * @return backup store or <code>null</code> if backups are disabled
+	 * @throws IOException if the directory for backups cannot be created
+	 */
+	public synchronized BackupStore getBackupStore() throws IOException {
+		if (backupStore == null && BackupStore.isEnabled()) {
+			backupStore = new BackupStore(isHome);
+		}
+		return backupStore;
+	}
+
+	/**
+	 * Get results shared with other installations
+	 * 
+	 * @return result cache or <code>null</code> if results are not shared
+	 */
+	public ConnectionResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Share results with other installations, so that identical files are
+	 * decoded only once (see {@link MultiInstanceUpdate})
+	 * 
+	 * @param resultCache Result cache, may be <code>null</code> to not share
+	 *                    results
+	 */
+	public void setResultCache(ConnectionResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Get the compiled changes of a change file. The file is only loaded and
+	 * compiled on first access.
+	 * 
+	 * @param changePropsFile File that contains the changes
+	 * @return compiled changes
+	 * @throws IOException if the file cannot be read
+	 */
+	public ChangeSet getChangeSet(File changePropsFile) throws IOException {
+		File key = changePropsFile.getAbsoluteFile();
+		ChangeSet changeSet = changeSets.get(key);
+		if (changeSet == null) {
+			changeSet = ChangeSet.load(key);
+			ChangeSet existing = changeSets.putIfAbsent(key, changeSet);
+			if (existing != null) {
+				changeSet = existing;
+			}
+		}
+		return changeSet;
+	}
+
+}
@@ -0,0 +1,235 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies connection updates concurrently on a bounded pool of worker threads.
+ * Reading, decoding, changing, encoding, and writing the node.ndf file are
+ * independent for each connection. The only shared resource is PassMan, access
+ * to which is serialized by {@link PassManSession}. Several updates for the
+ * same connection are applied one after the other, in the order of the updates.
+ * 
+ * <p>
+ * The messages of each update are buffered and printed in the order of the
+ * updates as soon as all previous updates have finished. The output is
+ * therefore identical to a sequential run. Each update is summarized in a
+ * single line, unless the level {@link LogSink.Level#DEBUG} is enabled (see
+ * {@link ConnectionUpdate#apply(UpdateContext, PrintStream, boolean)}).
+ * 
+ * <p>
+ * The number of threads is controlled by the System property
+ * {@value #PROPERTY_THREADS} and defaults to the number of available
+ * processors. Within a container the JVM derives the latter from the CPU quota.
+ */
+public class UpdatePipeline {
+
+	/**
+	 * System property for the number of worker threads
+	 */
+	public static final String PROPERTY_THREADS = "jtacu.threads";
+
+	private UpdateContext context;
+	private int threads;
+
+	/**
+	 * Initialize for a run
+	 * 
+	 * @param context Context of the current run
+	 */
+	public UpdatePipeline(UpdateContext context) {
+		this(context, Integer.getInteger(PROPERTY_THREADS, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Initialize for a run with a specific number of worker threads
+	 * 
+	 * @param context Context of the current run
+	 * @param threads Maximum number of worker threads
+	 */
+	public UpdatePipeline(UpdateContext context, int threads) {
+		super();
+		this.context = context;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Apply all updates. Messages are written to the specified stream in the order
+	 * of the updates.
+	 * 
+	 * @param updates Connection updates to apply
+	 * @param out     Stream for messages
+	 * @return result for each update, in the same order
+	 * @throws InterruptedException if interrupted while waiting for the updates
+	 */
+	public List<Result> run(List<ConnectionUpdate> updates, PrintStream out) throws InterruptedException {
+		List<Result> results = new ArrayList<Result>();
+		if (updates.isEmpty()) {
+			return results;
+		}
+
+		boolean detailed = LogSink.isEnabled(LogSink.Level.DEBUG);
+		int poolSize = Math.min(threads, updates.size());
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize, new WorkerThreadFactory());
+		try {
+			// Several updates for the same connection are chained, so that they are
+			// applied in the order of the updates, like in a sequential run
+			List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+			Map<String, CompletableFuture<Result>> lastByAlias = new HashMap<String, CompletableFuture<Result>>();
+			for (ConnectionUpdate update : updates) {
+				CompletableFuture<Result> previous = lastByAlias.get(update.getConnAlias());
+				CompletableFuture<Result> future;
+				if (previous == null) {
+					future = CompletableFuture.supplyAsync(() -> applyBuffered(update), executor);
+				} else {
+					future = previous.thenApplyAsync(result -> applyBuffered(update), executor);
+				}
+				lastByAlias.put(update.getConnAlias(), future);
+				futures.add(future);
+			}
+
+			for (CompletableFuture<Result> future : futures) {
+				Result result;
+				try {
+					result = future.get();
+				} catch (ExecutionException e) {
+					// Cannot happen, since applyBuffered() catches everything
+					throw new IllegalStateException(e.getCause());
+				}
+				if (detailed) {
+					out.println();
+				}
+				LogSink.printLines(out, result.getUpdate().getConnAlias(), result.getMessages());
+				results.add(result);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return results;
+	}
+
+	/**
+	 * Apply a single update and capture its messages
+	 * 
+	 * @param update Connection update
+	 * @return result of the update
+	 */
+	private Result applyBuffered(ConnectionUpdate update) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream bufferOut = new PrintStream(buffer, true);
+		Exception error = null;
+		try {
+			update.apply(context, bufferOut, true);
+		} catch (Exception e) {
+			e.printStackTrace(bufferOut);
+			error = e;
+		}
+		bufferOut.flush();
+		return new Result(update, error, new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Outcome of a single connection update
+	 */
+	public static class Result {
+
+		private ConnectionUpdate update;
+		private Exception error;
+		private String messages;
+
+		/**
+		 * Initialize with outcome
+		 * 
+		 * @param update   Connection update
+		 * @param error    Error that occurred or <code>null</code> on success
+		 * @param messages Messages written during the update
+		 */
+		Result(ConnectionUpdate update, Exception error, String messages) {
+			this.update = update;
+			this.error = error;
+			this.messages = messages;
+		}
+
+		/**
+		 * Get connection update
+		 * 
+		 * @return connection update
+		 */
+		public ConnectionUpdate getUpdate() {
+			return update;
+		}
+
+		/**
+		 * Get error
+		 * 
+		 * @return error that occurred or <code>null</code> on success
+		 */
+		public Exception getError() {
+			return error;
+		}
+
+		/**
+		 * Check for success
+		 * 
+		 * @return <code>true</code> if the update succeeded
+		 */
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+		/**
+		 * Get messages
+		 * 
+		 * @return messages written during the update
+		 */
+		public String getMessages() {
+			return messages;
+		}
+	}
+
+	/**
+	 * Creates daemon threads with a recognizable name
+	 */
+	static class WorkerThreadFactory implements ThreadFactory {
+
+		private AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "jtacu-worker-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
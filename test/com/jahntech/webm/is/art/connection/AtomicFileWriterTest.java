@@ -0,0 +1,163 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for replacing files with {@link AtomicFileWriter}
+ */
+public class AtomicFileWriterTest {
+
+	private File dir;
+
+	/**
+	 * Create a directory for the files
+	 * 
+	 * @throws IOException if the directory cannot be created
+	 */
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("jtacu-test").toFile();
+	}
+
+	/**
+	 * Delete the files
+	 * 
+	 * @throws IOException if the directory cannot be listed
+	 */
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(dir.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * Files must be replaced or created without leaving temporary files
+	 * 
+	 * @throws IOException if a file cannot be written or read
+	 */
+	@Test
+	public void fileIsReplacedWithoutTemporaryFiles() throws IOException {
+		File existing = write("node.ndf", "old");
+		AtomicFileWriter.write(existing, out -> out.write("new".getBytes(StandardCharsets.UTF_8)), null);
+		File created = new File(dir, "other.ndf");
+		AtomicFileWriter.write(created, out -> out.write("created".getBytes(StandardCharsets.UTF_8)), null);
+
+		assertEquals("new", read(existing));
+		assertEquals("created", read(created));
+		String[] names = dir.list();
+		Arrays.sort(names);
+		assertEquals(Arrays.asList("node.ndf", "other.ndf"), Arrays.asList(names));
+	}
+
+	/**
+	 * A failing write must keep the original file and remove the temporary file
+	 * 
+	 * @throws IOException if a file cannot be written or read
+	 */
+	@Test
+	public void failedWriteKeepsOriginal() throws IOException {
+		File existing = write("node.ndf", "old");
+		IOException e = assertThrows(IOException.class, () -> AtomicFileWriter.write(existing, out -> {
+			out.write("partial".getBytes(StandardCharsets.UTF_8));
+			throw new IOException("Disk full");
+		}, null));
+		assertEquals("Disk full", e.getMessage());
+
+		assertEquals("old", read(existing));
+		assertEquals(Arrays.asList("node.ndf"), Arrays.asList(dir.list()));
+	}
+
+	/**
+	 * Permissions, owner, and group of the replaced file must be kept. Owner and
+	 * group are only checked if they can be changed, i.e. when running as root.
+	 * 
+	 * @throws IOException if a file cannot be written or read
+	 */
+	@Test
+	public void attributesAreKept() throws IOException {
+		File existing = write("node.ndf", "old");
+		PosixFileAttributeView view = Files.getFileAttributeView(existing.toPath(), PosixFileAttributeView.class);
+		if (view == null) {
+			return;
+		}
+		view.setPermissions(PosixFilePermissions.fromString("rw-r-----"));
+		UserPrincipal owner = null;
+		try {
+			owner = existing.toPath().getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName("nobody");
+			view.setOwner(owner);
+		} catch (IOException e) {
+			owner = null;
+		}
+
+		AtomicFileWriter.write(existing, out -> out.write("new".getBytes(StandardCharsets.UTF_8)), null);
+
+		view = Files.getFileAttributeView(existing.toPath(), PosixFileAttributeView.class);
+		assertEquals("rw-r-----", PosixFilePermissions.toString(view.readAttributes().permissions()));
+		if (owner != null) {
+			assertEquals(owner, view.readAttributes().owner());
+		}
+	}
+
+	/**
+	 * Create a file with content
+	 * 
+	 * @param name    Name of the file
+	 * @param content Content of the file
+	 * @return file
+	 * @throws IOException if the file cannot be written
+	 */
+	private File write(String name, String content) throws IOException {
+		File file = new File(dir, name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	/**
+	 * Read the content of a file
+	 * 
+	 * @param file File to read
+	 * @return content
+	 * @throws IOException if the file cannot be read
+	 */
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,174 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for backing up and restoring files with {@link BackupStore}
+ */
+public class BackupStoreTest {
+
+	private File isHome;
+
+	/**
+	 * Create a directory for the installation
+	 * 
+	 * @throws IOException if the directory cannot be created
+	 */
+	@Before
+	public void setUp() throws IOException {
+		isHome = Files.createTempDirectory("jtacu-test").toFile();
+	}
+
+	/**
+	 * Delete the installation
+	 * 
+	 * @throws IOException if the directory cannot be listed
+	 */
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(isHome.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * A backup must not change when the file is later modified in place
+	 * 
+	 * @throws IOException if a file cannot be written or read
+	 */
+	@Test
+	public void backupSurvivesModificationInPlace() throws IOException {
+		File nodeNdf = createFile("packages/Pkg/ns/pkg/conn/node.ndf", "old");
+		BackupStore backupStore = new BackupStore(isHome);
+		backupStore.backup(nodeNdf);
+		Files.write(nodeNdf.toPath(), "new".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(0, new BackupStore(isHome).restore(backupStore.getRunId(), null, silent()));
+		assertEquals("old", read(nodeNdf));
+	}
+
+	/**
+	 * Files that did not exist must be deleted, and every file must only be
+	 * recorded once per run
+	 * 
+	 * @throws IOException if a file cannot be written or read
+	 */
+	@Test
+	public void absentFilesAreDeleted() throws IOException {
+		File dataStore = new File(isHome, "config/txnPassStore.dat");
+		BackupStore backupStore = new BackupStore(isHome);
+		backupStore.backup(dataStore);
+		createFile("config/txnPassStore.dat", "created");
+		backupStore.backup(dataStore);
+
+		assertEquals(Arrays.asList("config/txnPassStore.dat"), backupStore.getFiles(backupStore.getRunId()));
+		assertEquals(0, backupStore.restore(backupStore.getRunId(), null, silent()));
+		assertFalse(dataStore.exists());
+	}
+
+	/**
+	 * Restoring a node.ndf file must wait for the lock of its connection
+	 * 
+	 * @throws Exception if the test fails
+	 */
+	@Test
+	public void restoreWaitsForConnectionLock() throws Exception {
+		File nodeNdf = createFile("packages/Pkg/ns/pkg/connections/main/node.ndf", "old");
+		BackupStore backupStore = new BackupStore(isHome);
+		backupStore.backup(nodeNdf);
+		Files.write(nodeNdf.toPath(), "new".getBytes(StandardCharsets.UTF_8));
+
+		CompletableFuture<Integer> restore;
+		FileLocks.Handle lock = FileLocks.lockConnection(isHome, "pkg.connections:main");
+		try {
+			restore = CompletableFuture.supplyAsync(() -> {
+				try {
+					return backupStore.restore(backupStore.getRunId(), null, silent());
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			Thread.sleep(200);
+			assertFalse(restore.isDone());
+			assertEquals("new", read(nodeNdf));
+		} finally {
+			lock.close();
+		}
+		assertEquals(Integer.valueOf(0), restore.get(10, TimeUnit.SECONDS));
+		assertEquals("old", read(nodeNdf));
+		assertEquals(1, nodeNdf.getParentFile().list().length);
+	}
+
+	/**
+	 * Create a file with content
+	 * 
+	 * @param relativePath Path relative to the installation
+	 * @param content      Content of the file
+	 * @return file
+	 * @throws IOException if the file cannot be written
+	 */
+	private File createFile(String relativePath, String content) throws IOException {
+		File file = new File(isHome, relativePath);
+		Files.createDirectories(file.getParentFile().toPath());
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	/**
+	 * Read the content of a file
+	 * 
+	 * @param file File to read
+	 * @return content
+	 * @throws IOException if the file cannot be read
+	 */
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Get a stream that discards all messages
+	 * 
+	 * @return stream
+	 */
+	private static PrintStream silent() {
+		return new PrintStream(new ByteArrayOutputStream());
+	}
+
+}
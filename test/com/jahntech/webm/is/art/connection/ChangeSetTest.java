@@ -0,0 +1,181 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ChangeSet}
+ */
+public class ChangeSetTest {
+
+	/**
+	 * Settings must be read in the order of the file. A setting that occurs twice
+	 * keeps the position of its first occurrence and gets the last value.
+	 * 
+	 * @throws IOException if reading fails
+	 */
+	@Test
+	public void readChangesKeepsFileOrder() throws IOException {
+		Map<String, String> changes = read("z.last=1\na.first=2\n# comment\nm.middle=3\nz.last=4\n");
+
+		assertEquals(Arrays.asList("z.last", "a.first", "m.middle"), new ArrayList<String>(changes.keySet()));
+		assertEquals("4", changes.get("z.last"));
+	}
+
+	/**
+	 * Settings with a common prefix must share the nodes of the prefix, in the
+	 * order in which they were added
+	 */
+	@Test
+	public void commonPrefixesShareNodes() {
+		ChangeSet changeSet = new ChangeSet(changes("b.y", "1", "a", "2", "b.x", "3", "b.z.deep", "4"));
+
+		List<ChangeSet.Node> top = children(changeSet.getRoot());
+		assertEquals(Arrays.asList("b", "a"), names(top));
+		assertEquals(Arrays.asList("y", "x", "z"), names(children(top.get(0))));
+		ChangeSet.Node deep = children(children(top.get(0)).get(2)).get(0);
+		assertTrue(deep.isLeaf());
+		assertEquals("b.z.deep", deep.getPath());
+		assertEquals("4", deep.getValue());
+		assertTrue(top.get(1).isLeaf());
+		assertEquals(4, changeSet.getSettingsCount());
+	}
+
+	/**
+	 * The password is kept separately and is not part of the key
+	 */
+	@Test
+	public void passwordIsNotPartOfTree() {
+		ChangeSet withPassword = new ChangeSet(
+				changes("connectionProperties.user", "admin", CommandLine.KEY_PASSWORD, "secret"));
+		ChangeSet withoutPassword = new ChangeSet(changes("connectionProperties.user", "admin"));
+
+		assertEquals("secret", withPassword.getPassword());
+		assertNull(withoutPassword.getPassword());
+		assertEquals(1, withPassword.getSettingsCount());
+		assertEquals(Arrays.asList("user"),
+				names(children(children(withPassword.getRoot()).get(0))));
+		assertEquals(withoutPassword.getKey(), withPassword.getKey());
+	}
+
+	/**
+	 * A setting must not be both a value and the prefix of another setting
+	 */
+	@Test
+	public void valueAndPrefixConflict() {
+		assertThrows(IllegalArgumentException.class, () -> new ChangeSet(changes("a", "1", "a.b", "2")));
+		assertThrows(IllegalArgumentException.class, () -> new ChangeSet(changes("a.b", "1", "a", "2")));
+		assertThrows(IllegalArgumentException.class, () -> new ChangeSet(changes("", "1")));
+	}
+
+	/**
+	 * The key depends on settings, values, and their order
+	 */
+	@Test
+	public void keyDependsOnContentAndOrder() {
+		String key = new ChangeSet(changes("a", "1", "b", "2")).getKey();
+
+		assertEquals(key, new ChangeSet(changes("a", "1", "b", "2")).getKey());
+		assertNotEquals(key, new ChangeSet(changes("b", "2", "a", "1")).getKey());
+		assertNotEquals(key, new ChangeSet(changes("a", "1", "b", "3")).getKey());
+	}
+
+	/**
+	 * A setting change only counts as change if the value differs
+	 */
+	@Test
+	public void settingChangeDetectsEqualValues() {
+		assertFalse(new ChangeSet.SettingChange("a", "1", "1").isChanged());
+		assertFalse(new ChangeSet.SettingChange("a", null, null).isChanged());
+		assertTrue(new ChangeSet.SettingChange("a", "1", "2").isChanged());
+		assertTrue(new ChangeSet.SettingChange("a", null, "2").isChanged());
+	}
+
+	/**
+	 * Read changes in properties format
+	 * 
+	 * @param content Content of the file
+	 * @return changes
+	 * @throws IOException if reading fails
+	 */
+	private static Map<String, String> read(String content) throws IOException {
+		return ChangeSet.readChanges(new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	/**
+	 * Create ordered changes
+	 * 
+	 * @param pathsAndValues Alternating setting paths and values
+	 * @return changes
+	 */
+	static Map<String, String> changes(String... pathsAndValues) {
+		Map<String, String> changes = new LinkedHashMap<String, String>();
+		for (int i = 0; i < pathsAndValues.length; i += 2) {
+			changes.put(pathsAndValues[i], pathsAndValues[i + 1]);
+		}
+		return changes;
+	}
+
+	/**
+	 * Get the children of a node as list
+	 * 
+	 * @param node Node
+	 * @return children
+	 */
+	private static List<ChangeSet.Node> children(ChangeSet.Node node) {
+		List<ChangeSet.Node> children = new ArrayList<ChangeSet.Node>();
+		for (ChangeSet.Node child : node.getChildren()) {
+			children.add(child);
+		}
+		return children;
+	}
+
+	/**
+	 * Get the names of nodes
+	 * 
+	 * @param nodes Nodes
+	 * @return names
+	 */
+	private static List<String> names(List<ChangeSet.Node> nodes) {
+		List<String> names = new ArrayList<String>();
+		for (ChangeSet.Node node : nodes) {
+			names.add(node.getName());
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for the delta computation of {@link ChangeWatcher}
+ */
+public class ChangeWatcherTest {
+
+	private static final Path FILE = Paths.get("changes.conf");
+
+	/**
+	 * Against an empty baseline all settings are part of the delta, in the order
+	 * of the file
+	 */
+	@Test
+	public void firstVersionIsCompleteDelta() {
+		Map<String, String> current = ChangeSetTest.changes("z", "1", "a", "2", "m", "3");
+
+		Map<String, String> delta = ChangeWatcher.getDelta(Collections.<String, String>emptyMap(), current, FILE,
+				quietStream());
+
+		assertEquals(Arrays.asList("z", "a", "m"), new ArrayList<String>(delta.keySet()));
+	}
+
+	/**
+	 * Only changed and added settings are part of the delta, in the order of the
+	 * file
+	 */
+	@Test
+	public void deltaContainsChangedAndAddedSettings() {
+		Map<String, String> previous = ChangeSetTest.changes("z", "1", "a", "2", "m", "3");
+		Map<String, String> current = ChangeSetTest.changes("z", "9", "a", "2", "new", "4", "m", "5");
+
+		Map<String, String> delta = ChangeWatcher.getDelta(previous, current, FILE, quietStream());
+
+		assertEquals(ChangeSetTest.changes("z", "9", "new", "4", "m", "5"), delta);
+		assertEquals(Arrays.asList("z", "new", "m"), new ArrayList<String>(delta.keySet()));
+	}
+
+	/**
+	 * Removed settings are not part of the delta, but are reported
+	 * 
+	 * @throws UnsupportedEncodingException never
+	 */
+	@Test
+	public void removedSettingsAreReported() throws UnsupportedEncodingException {
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		Map<String, String> previous = ChangeSetTest.changes("a", "1", "b", "2");
+		Map<String, String> current = ChangeSetTest.changes("a", "1");
+
+		Map<String, String> delta = ChangeWatcher.getDelta(previous, current, FILE,
+				new PrintStream(messages, true, StandardCharsets.UTF_8.name()));
+
+		assertTrue(delta.isEmpty());
+		assertTrue(messages.toString(StandardCharsets.UTF_8.name()).contains("Setting b was removed"));
+	}
+
+	/**
+	 * Get a stream that discards everything
+	 * 
+	 * @return stream
+	 */
+	private static PrintStream quietStream() {
+		return new PrintStream(PrintStream.nullOutputStream());
+	}
+
+}
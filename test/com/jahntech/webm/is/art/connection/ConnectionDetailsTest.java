@@ -0,0 +1,160 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static com.jahntech.webm.is.art.connection.ChangeSetTest.changes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for applying changes with {@link ConnectionDetails} and writing them
+ * with {@link ConnectionFile}, so that unchanged connections are not written
+ */
+public class ConnectionDetailsTest {
+
+	private static final String CONN_ALIAS = "pkg.connections:main";
+
+	private File isHome;
+	private File nodeNdf;
+
+	/**
+	 * Create a connection
+	 * 
+	 * @throws IOException if the connection cannot be created
+	 */
+	@Before
+	public void setUp() throws IOException {
+		isHome = Files.createTempDirectory("jtacu-test").toFile();
+		nodeNdf = SyntheticConnection.create(isHome, "Pkg", CONN_ALIAS, 10);
+	}
+
+	/**
+	 * Delete the connection
+	 * 
+	 * @throws IOException if the directory cannot be listed
+	 */
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(isHome.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * Settings that already have the new value must not count as change
+	 */
+	@Test
+	public void sameValuesAreNoChange() {
+		ConnectionDetails conDetails = new ConnectionDetails(SyntheticConnection.createDetails(10));
+		List<ChangeSet.SettingChange> outcome = conDetails.update(new ChangeSet(
+				changes("connectionProperties.serverName", "db.example.com", "connectionEnabled", "true")));
+
+		assertFalse(conDetails.isChanged());
+		assertEquals(2, outcome.size());
+		for (ChangeSet.SettingChange change : outcome) {
+			assertFalse(change.getPath(), change.isChanged());
+		}
+	}
+
+	/**
+	 * A different value must count as change and be reported with the old value
+	 */
+	@Test
+	public void differentValueIsChange() {
+		ConnectionDetails conDetails = new ConnectionDetails(SyntheticConnection.createDetails(10));
+		List<ChangeSet.SettingChange> outcome = conDetails.update(new ChangeSet(
+				changes("connectionProperties.serverName", "db.example.com", "connectionProperties.portNumber", "1522")));
+
+		assertTrue(conDetails.isChanged());
+		assertEquals(Arrays.asList(false, true), Arrays.asList(outcome.get(0).isChanged(), outcome.get(1).isChanged()));
+		assertEquals("1521", outcome.get(1).getOldValue());
+		assertEquals("1522", conDetails.getSetting("connectionProperties.portNumber"));
+	}
+
+	/**
+	 * Settings that do not exist must not be added
+	 */
+	@Test
+	public void unknownSettingsAreRejected() {
+		ConnectionDetails conDetails = new ConnectionDetails(SyntheticConnection.createDetails(10));
+		assertThrows(IllegalArgumentException.class,
+				() -> conDetails.update(new ChangeSet(changes("connectionProperties.unknown", "1"))));
+		assertThrows(IllegalArgumentException.class,
+				() -> conDetails.update(new ChangeSet(changes("unknownGroup.serverName", "1"))));
+	}
+
+	/**
+	 * A file whose re-encoded connection details are identical must not be
+	 * written, even if the details were set again
+	 * 
+	 * @throws IOException if the file cannot be read or written
+	 */
+	@Test
+	public void unchangedFileIsNotWritten() throws IOException {
+		byte[] original = Files.readAllBytes(nodeNdf.toPath());
+		long lastModified = System.currentTimeMillis() - 60000;
+		nodeNdf.setLastModified(lastModified);
+
+		ConnectionFile conFile = new ConnectionFile(nodeNdf.getParentFile(), CONN_ALIAS);
+		ConnectionDetails conDetails = new ConnectionDetails(conFile.getConnectionDetails());
+		conDetails.update(new ChangeSet(changes("connectionProperties.serverName", "db.example.com")));
+		conFile.setConnectionDetails(conDetails.get());
+
+		assertFalse(conFile.write());
+		assertEquals(Arrays.toString(original), Arrays.toString(Files.readAllBytes(nodeNdf.toPath())));
+		assertEquals(lastModified, nodeNdf.lastModified());
+		assertEquals(Arrays.asList(nodeNdf.getName()), Arrays.asList(nodeNdf.getParentFile().list()));
+	}
+
+	/**
+	 * A changed file must be written once, and not again without further change
+	 * 
+	 * @throws IOException if the file cannot be read or written
+	 */
+	@Test
+	public void changedFileIsWrittenOnce() throws IOException {
+		ConnectionFile conFile = new ConnectionFile(nodeNdf.getParentFile(), CONN_ALIAS);
+		ConnectionDetails conDetails = new ConnectionDetails(conFile.getConnectionDetails());
+		conDetails.update(new ChangeSet(changes("connectionProperties.serverName", "db2.example.com")));
+		conFile.setConnectionDetails(conDetails.get());
+
+		assertTrue(conFile.write());
+		assertFalse(conFile.write());
+		assertEquals("db2.example.com",
+				new ConnectionDetails(new ConnectionFile(nodeNdf.getParentFile(), CONN_ALIAS).getConnectionDetails())
+						.getSetting("connectionProperties.serverName"));
+	}
+
+}
@@ -0,0 +1,228 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for saving and loading a {@link ConnectionIndex}
+ */
+public class ConnectionIndexTest {
+
+	private File isHome;
+
+	/**
+	 * Create a directory for the installation
+	 * 
+	 * @throws IOException if the directory cannot be created
+	 */
+	@Before
+	public void setUp() throws IOException {
+		isHome = Files.createTempDirectory("jtacu-test").toFile();
+	}
+
+	/**
+	 * Delete the installation
+	 * 
+	 * @throws IOException if the directory cannot be listed
+	 */
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(isHome.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * All details of an entry must survive a save and load
+	 * 
+	 * @throws IOException if the index cannot be written or read
+	 */
+	@Test
+	public void entriesSurviveRoundTrip() throws IOException {
+		File jdbc = createNodeNdf("JdbcPkg", "jdbcPkg/connections/main", "a");
+		File other = createNodeNdf("OtherPkg", "otherPkg/conn", "bb");
+
+		ConnectionIndex index = new ConnectionIndex(isHome);
+		index.put(new DiscoveredConnection("JdbcPkg", "jdbcPkg.connections:main", "JDBCAdapter", jdbc, "hash-1"));
+		index.put(new DiscoveredConnection("OtherPkg", "otherPkg:conn", null, other, "hash-2"));
+		index.save();
+
+		ConnectionIndex reloaded = new ConnectionIndex(isHome);
+		assertEquals(2, reloaded.getEntries().size());
+
+		ConnectionIndex.Entry entry = reloaded.lookup("jdbcPkg.connections:main");
+		assertNotNull(entry);
+		assertEquals("JdbcPkg", entry.getPackageName());
+		assertEquals("JDBCAdapter", entry.getAdapterType());
+		assertEquals("hash-1", entry.getContentHash());
+		assertEquals(jdbc.getCanonicalFile(), entry.getNodeNdfFile().getCanonicalFile());
+
+		entry = reloaded.lookup("otherPkg:conn");
+		assertNotNull(entry);
+		assertNull(entry.getAdapterType());
+		assertEquals(other.getCanonicalFile(), entry.getNodeNdfFile().getCanonicalFile());
+	}
+
+	/**
+	 * Saving must replace the index and not leave temporary files behind
+	 * 
+	 * @throws IOException if the index cannot be written or read
+	 */
+	@Test
+	public void saveLeavesNoTemporaryFiles() throws IOException {
+		File nodeNdf = createNodeNdf("Pkg", "pkg/conn", "a");
+
+		ConnectionIndex index = new ConnectionIndex(isHome);
+		index.put(new DiscoveredConnection("Pkg", "pkg:conn", "JDBCAdapter", nodeNdf, "hash-1"));
+		index.save();
+		index.put(new DiscoveredConnection("Pkg", "pkg:conn", "JDBCAdapter", nodeNdf, "hash-2"));
+		index.save();
+
+		File[] files = FileUtils.getToolDir(isHome).listFiles();
+		assertEquals(1, files.length);
+		assertEquals("hash-2", new ConnectionIndex(isHome).lookup("pkg:conn").getContentHash());
+	}
+
+	/**
+	 * Entries whose node.ndf file changed after indexing must not be returned
+	 * 
+	 * @throws IOException if the index cannot be written or read
+	 */
+	@Test
+	public void outdatedEntriesAreNotReturned() throws IOException {
+		File nodeNdf = createNodeNdf("Pkg", "pkg/conn", "a");
+
+		ConnectionIndex index = new ConnectionIndex(isHome);
+		index.put(new DiscoveredConnection("Pkg", "pkg:conn", "JDBCAdapter", nodeNdf, "hash-1"));
+		index.save();
+
+		Files.write(nodeNdf.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+		assertNull(new ConnectionIndex(isHome).lookup("pkg:conn"));
+	}
+
+	/**
+	 * An unreadable index must be ignored and replaced on the next save
+	 * 
+	 * @throws IOException if the index cannot be written or read
+	 */
+	@Test
+	public void unreadableIndexIsIgnored() throws IOException {
+		File indexFile = new File(FileUtils.getToolDir(isHome), "connection-index.txt");
+		Files.write(indexFile.toPath(), "garbage".getBytes(StandardCharsets.UTF_8));
+
+		ConnectionIndex index = new ConnectionIndex(isHome);
+		assertTrue(index.getEntries().isEmpty());
+		index.save();
+
+		assertEquals(Arrays.asList("# JTACU connection index v1"),
+				Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * A refresh must read connections again whose node.ndf file was rewritten in
+	 * place, even if their package directories are unchanged
+	 * 
+	 * @throws IOException if a file cannot be written or read
+	 */
+	@Test
+	public void refreshReadsFilesRewrittenInPlace() throws IOException {
+		File nodeNdf = SyntheticConnection.create(isHome, "Pkg", "pkg.connections:main", 10);
+		ConnectionIndex index = new ConnectionIndex(isHome);
+		index.refresh();
+		assertEquals("JDBCAdapter", index.lookup("pkg.connections:main").getAdapterType());
+
+		String content = new String(Files.readAllBytes(nodeNdf.toPath()), StandardCharsets.UTF_8);
+		Files.write(nodeNdf.toPath(), content.replace("JDBCAdapter", "JMSAdapter").getBytes(StandardCharsets.UTF_8));
+		index.refresh();
+
+		assertEquals(1, index.getEntries().size());
+		ConnectionIndex.Entry entry = index.getEntries().iterator().next();
+		assertEquals("JMSAdapter", entry.getAdapterType());
+		assertEquals(FileUtils.hash(nodeNdf), entry.getContentHash());
+
+		Files.delete(nodeNdf.toPath());
+		index.refresh();
+		assertTrue(index.getEntries().isEmpty());
+	}
+
+	/**
+	 * Files written by the tool itself must not cause their package to be searched
+	 * again
+	 * 
+	 * @throws IOException if a file cannot be written or read
+	 */
+	@Test
+	public void ownWritesDoNotChangeFingerprint() throws IOException {
+		File nodeNdf = SyntheticConnection.create(isHome, "Pkg", "pkg.connections:main", 10);
+		nodeNdf.getParentFile().setLastModified(System.currentTimeMillis() - 60000);
+		ConnectionIndex index = new ConnectionIndex(isHome);
+		index.refresh();
+
+		byte[] content = SyntheticConnection.createNodeNdf("Pkg", "pkg.connections:main",
+				SyntheticConnection.createDetails(20));
+		AtomicFileWriter.write(nodeNdf, out -> out.write(content), null);
+		index.updateAfterWrite("pkg.connections:main");
+		index.save();
+
+		ConnectionIndex reloaded = new ConnectionIndex(isHome);
+		File indexFile = new File(FileUtils.getToolDir(isHome), "connection-index.txt");
+		Files.delete(indexFile.toPath());
+		reloaded.refresh();
+		reloaded.save();
+		assertFalse(indexFile.exists());
+	}
+
+	/**
+	 * Create a node.ndf file in the namespace directory of a package
+	 * 
+	 * @param pkgName  Name of package
+	 * @param nodePath Path of the node directory, with '/' as separator
+	 * @param content  Content of the file
+	 * @return node.ndf file
+	 * @throws IOException if the file cannot be written
+	 */
+	private File createNodeNdf(String pkgName, String nodePath, String content) throws IOException {
+		File nodeDir = new File(ConnectionDiscovery.getNamespaceDir(isHome, pkgName),
+				nodePath.replace('/', File.separatorChar));
+		Files.createDirectories(nodeDir.toPath());
+		File nodeNdf = new File(nodeDir, "node.ndf");
+		Files.write(nodeNdf.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return nodeNdf;
+	}
+
+}
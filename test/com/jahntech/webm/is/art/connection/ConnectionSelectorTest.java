@@ -0,0 +1,123 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for the terms of {@link ConnectionSelector}. All connections have a
+ * known adapter type and no setting terms are used, so that no node.ndf file is
+ * read.
+ */
+public class ConnectionSelectorTest {
+
+	private static final List<DiscoveredConnection> CONNECTIONS = Arrays.asList(
+			connection("JdbcPkg", "jdbcPkg.connections:main", "JDBCAdapter"),
+			connection("JdbcPkg", "jdbcPkg.connections:main2", "JDBCAdapter"),
+			connection("JmsPkg", "jmsPkg.connections:main", "JMSAdapter"),
+			connection("Other", "other.connections:a.b", "JDBCAdapter"));
+
+	/**
+	 * Globs must support <code>*</code> and <code>?</code> and match the whole
+	 * value
+	 * 
+	 * @throws InterruptedException never
+	 */
+	@Test
+	public void globsMatchWholeValue() throws InterruptedException {
+		assertEquals(Arrays.asList("jdbcPkg.connections:main", "jdbcPkg.connections:main2"), select("package=Jdbc*"));
+		assertEquals(Arrays.asList("jdbcPkg.connections:main2"), select("alias=*:main?"));
+		assertEquals(Arrays.asList(), select("package=Jdbc"));
+	}
+
+	/**
+	 * Characters with a meaning in regular expressions must be taken literally
+	 * 
+	 * @throws InterruptedException never
+	 */
+	@Test
+	public void regexCharactersAreLiteral() throws InterruptedException {
+		assertEquals(Arrays.asList("other.connections:a.b"), select("alias=*:a.b"));
+		assertEquals(Arrays.asList(), select("alias=*:a\\.b"));
+		assertEquals(Arrays.asList(), select("alias=other.connections:a+b"));
+	}
+
+	/**
+	 * Negated terms must exclude matches, and all terms must be satisfied
+	 * 
+	 * @throws InterruptedException never
+	 */
+	@Test
+	public void termsAreNegatedAndCombined() throws InterruptedException {
+		assertEquals(Arrays.asList("jmsPkg.connections:main"), select("adapter!=JDBCAdapter"));
+		assertEquals(Arrays.asList("jdbcPkg.connections:main"), select("alias=*:main adapter=JDBC*"));
+		assertEquals(Arrays.asList("jdbcPkg.connections:main2", "other.connections:a.b"),
+				select("  adapter=JDBCAdapter   alias!=*:main "));
+	}
+
+	/**
+	 * Invalid selectors must be rejected
+	 */
+	@Test
+	public void invalidSelectorsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new ConnectionSelector(" "));
+		assertThrows(IllegalArgumentException.class, () -> new ConnectionSelector(null));
+		assertThrows(IllegalArgumentException.class, () -> new ConnectionSelector("package"));
+		assertThrows(IllegalArgumentException.class, () -> new ConnectionSelector("=Jdbc*"));
+		assertThrows(IllegalArgumentException.class, () -> new ConnectionSelector("!=Jdbc*"));
+	}
+
+	/**
+	 * Select from the test connections
+	 * 
+	 * @param selector Selector expression
+	 * @return aliases of the selected connections
+	 * @throws InterruptedException never
+	 */
+	private static List<String> select(String selector) throws InterruptedException {
+		List<String> aliases = new ArrayList<String>();
+		for (DiscoveredConnection connection : new ConnectionSelector(selector).select(CONNECTIONS)) {
+			aliases.add(connection.getConnAlias());
+		}
+		return aliases;
+	}
+
+	/**
+	 * Create a connection with known adapter type
+	 * 
+	 * @param packageName Package name
+	 * @param connAlias   Connection alias
+	 * @param adapterType Adapter type
+	 * @return connection
+	 */
+	private static DiscoveredConnection connection(String packageName, String connAlias, String adapterType) {
+		return new DiscoveredConnection(packageName, connAlias, adapterType,
+				new File(connAlias.replace(':', File.separatorChar), "node.ndf"), null);
+	}
+
+}
@@ -0,0 +1,93 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests for the reuse of buffers by {@link DecodeBuffers}
+ */
+public class DecodeBuffersTest {
+
+	/**
+	 * Sizes must be rounded up to powers of two, with a minimum
+	 */
+	@Test
+	public void capacityIsRoundedUp() {
+		assertEquals(16 * 1024, DecodeBuffers.getCapacity(1));
+		assertEquals(16 * 1024, DecodeBuffers.getCapacity(16 * 1024));
+		assertEquals(32 * 1024, DecodeBuffers.getCapacity(16 * 1024 + 1));
+		assertEquals(128 * 1024, DecodeBuffers.getCapacity(100 * 1024));
+	}
+
+	/**
+	 * A released buffer must be reused for a request of similar size
+	 * 
+	 * @throws InterruptedException never
+	 */
+	@Test
+	public void bufferIsReusedForSimilarSize() throws InterruptedException {
+		byte[] buffer;
+		try (DecodeBuffers.Lease lease = DecodeBuffers.acquire(100 * 1024, "a")) {
+			buffer = lease.getBuffer();
+		}
+		try (DecodeBuffers.Lease lease = DecodeBuffers.acquire(70 * 1024, "b")) {
+			assertSame(buffer, lease.getBuffer());
+		}
+	}
+
+	/**
+	 * A small request must not get a much larger idle buffer
+	 * 
+	 * @throws InterruptedException never
+	 */
+	@Test
+	public void largeBufferIsNotUsedForSmallRequest() throws InterruptedException {
+		byte[] buffer;
+		try (DecodeBuffers.Lease lease = DecodeBuffers.acquire(512 * 1024, "a")) {
+			buffer = lease.getBuffer();
+		}
+		try (DecodeBuffers.Lease lease = DecodeBuffers.acquire(1024, "b")) {
+			assertNotSame(buffer, lease.getBuffer());
+			assertEquals(16 * 1024, lease.getBuffer().length);
+		}
+	}
+
+	/**
+	 * Buffers above the size limit for idle buffers must not be kept
+	 * 
+	 * @throws InterruptedException never
+	 */
+	@Test
+	public void largeBufferIsNotKept() throws InterruptedException {
+		byte[] buffer;
+		try (DecodeBuffers.Lease lease = DecodeBuffers.acquire(3 * 1024 * 1024, "a")) {
+			buffer = lease.getBuffer();
+		}
+		try (DecodeBuffers.Lease lease = DecodeBuffers.acquire(3 * 1024 * 1024, "b")) {
+			assertNotSame(buffer, lease.getBuffer());
+		}
+	}
+
+}
@@ -0,0 +1,283 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wm.util.security.WmSecureString;
+
+/**
+ * Tests for {@link PassManSession}, with PassMan replaced by a data store in
+ * properties format
+ */
+public class PassManSessionTest {
+
+	private File isHome1;
+	private File isHome2;
+	private FakePassMan passMan;
+
+	/**
+	 * Create two installations and replace PassMan
+	 * 
+	 * @throws IOException if the directories cannot be created
+	 */
+	@Before
+	public void setUp() throws IOException {
+		isHome1 = Files.createTempDirectory("jtacu-test").toFile();
+		isHome2 = Files.createTempDirectory("jtacu-test").toFile();
+		passMan = new FakePassMan();
+		PassManSession.useBackend(passMan);
+	}
+
+	/**
+	 * Delete the installations
+	 * 
+	 * @throws IOException if a directory cannot be listed
+	 */
+	@After
+	public void tearDown() throws IOException {
+		for (File isHome : Arrays.asList(isHome1, isHome2)) {
+			try (Stream<Path> paths = Files.walk(isHome.toPath())) {
+				paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	/**
+	 * A handle queued several times must be stored once, with the last value
+	 * 
+	 * @throws Exception if PassMan fails
+	 */
+	@Test
+	public void handleIsStoredOnceWithLastValue() throws Exception {
+		PassManSession session = PassManSession.open(isHome1);
+		assertTrue(session.queuePassword("a:one", "first"));
+		assertTrue(session.queuePassword("b:two", "other"));
+		assertTrue(session.queuePassword("a:one", "last"));
+		assertEquals(2, session.getQueuedCount());
+
+		Map<String, Boolean> results = session.storeQueued();
+
+		assertEquals(Arrays.asList(handle("b:two"), handle("a:one")), new ArrayList<String>(results.keySet()));
+		assertEquals(Arrays.asList(handle("b:two"), handle("a:one")), passMan.stored);
+		assertEquals("last", passMan.read(isHome1).getProperty(handle("a:one")));
+		assertEquals(0, session.getQueuedCount());
+	}
+
+	/**
+	 * A password identical to the stored one must not be queued or written
+	 * 
+	 * @throws Exception if PassMan fails
+	 */
+	@Test
+	public void storedPasswordIsNotQueued() throws Exception {
+		PassManSession session = PassManSession.open(isHome1);
+		session.queuePassword("a:one", "secret");
+		session.storeQueued();
+		passMan.stored.clear();
+
+		assertFalse(session.queuePassword("a:one", "secret"));
+		assertEquals(0, session.getQueuedCount());
+		assertTrue(session.storeQueued().isEmpty());
+		assertTrue(session.queuePassword("a:one", "changed"));
+		assertTrue(passMan.stored.isEmpty());
+	}
+
+	/**
+	 * PassMan must be initialized again before storing, if another process has
+	 * written the data store
+	 * 
+	 * @throws Exception if PassMan fails
+	 */
+	@Test
+	public void dataStoreIsReloadedIfModified() throws Exception {
+		PassManSession session = PassManSession.open(isHome1);
+		session.queuePassword("a:one", "secret");
+		session.storeQueued();
+		int inits = passMan.inits;
+
+		// Another process stores the same password that is queued here
+		Properties store = passMan.read(isHome1);
+		store.setProperty(handle("a:one"), "from other process");
+		store.setProperty(handle("b:two"), "kept");
+		passMan.write(isHome1, store);
+		assertTrue(session.queuePassword("a:one", "from other process"));
+		passMan.stored.clear();
+
+		assertEquals(Collections.singletonMap(handle("a:one"), true), session.storeQueued());
+		assertEquals(inits + 1, passMan.inits);
+		assertTrue(passMan.stored.isEmpty());
+		assertEquals("kept", passMan.read(isHome1).getProperty(handle("b:two")));
+	}
+
+	/**
+	 * Sessions of different installations must each use their own data store,
+	 * with PassMan initialized again whenever another session is used
+	 * 
+	 * @throws Exception if PassMan fails
+	 */
+	@Test
+	public void sessionsSwitchInstallations() throws Exception {
+		PassManSession session1 = PassManSession.open(isHome1);
+		session1.queuePassword("a:one", "secret");
+		session1.storeQueued();
+		PassManSession session2 = PassManSession.open(isHome2);
+		assertEquals(session2, PassManSession.getCurrent());
+		assertEquals(session1, PassManSession.open(isHome1));
+		assertEquals(2, passMan.inits);
+
+		// Queued while the other session is active, so only compared when stored
+		assertTrue(session1.queuePassword("a:one", "secret"));
+		assertTrue(session2.queuePassword("a:one", "other"));
+		assertEquals(2, passMan.inits);
+
+		assertEquals(Collections.singletonMap(handle("a:one"), true), session1.storeQueued());
+		assertEquals(Collections.singletonMap(handle("a:one"), true), session2.storeQueued());
+		assertEquals(4, passMan.inits);
+		assertEquals("secret", passMan.read(isHome1).getProperty(handle("a:one")));
+		assertEquals("other", passMan.read(isHome2).getProperty(handle("a:one")));
+	}
+
+	/**
+	 * Get the PassMan handle of a connection
+	 * 
+	 * @param connAlias Connection alias
+	 * @return handle
+	 */
+	private static String handle(String connAlias) {
+		return PassManSession.getHandle(connAlias);
+	}
+
+	/**
+	 * PassMan with a data store in properties format per installation, which is
+	 * read on initialization and written on every store
+	 */
+	private static class FakePassMan implements PassManSession.Backend {
+
+		private File dataStoreFile;
+		private Properties passwords;
+
+		/**
+		 * Number of initializations
+		 */
+		private int inits = 0;
+
+		/**
+		 * Handles in the order they were written
+		 */
+		private List<String> stored = new ArrayList<String>();
+
+		@Override
+		public File init(File integrationServerRootDir) {
+			inits++;
+			dataStoreFile = getDataStoreFile(integrationServerRootDir);
+			try {
+				passwords = read(integrationServerRootDir);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return dataStoreFile;
+		}
+
+		@Override
+		public boolean storePassword(String handle, WmSecureString password) {
+			passwords.setProperty(handle, new String(password.toCharArray()));
+			try (OutputStream out = new FileOutputStream(dataStoreFile)) {
+				passwords.store(out, null);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			stored.add(handle);
+			return true;
+		}
+
+		@Override
+		public WmSecureString retrievePassword(String handle) {
+			String password = passwords.getProperty(handle);
+			return password == null ? null : new WmSecureString(password.toCharArray());
+		}
+
+		/**
+		 * Read the data store of an installation
+		 * 
+		 * @param isHome Installation
+		 * @return passwords by handle
+		 * @throws IOException if the data store cannot be read
+		 */
+		Properties read(File isHome) throws IOException {
+			Properties properties = new Properties();
+			File file = getDataStoreFile(isHome);
+			if (file.exists()) {
+				try (InputStream in = new FileInputStream(file)) {
+					properties.load(in);
+				}
+			}
+			return properties;
+		}
+
+		/**
+		 * Write the data store of an installation, like another process would
+		 * 
+		 * @param isHome    Installation
+		 * @param passwords Passwords by handle
+		 * @throws IOException if the data store cannot be written
+		 */
+		void write(File isHome, Properties passwords) throws IOException {
+			try (OutputStream out = new FileOutputStream(getDataStoreFile(isHome))) {
+				passwords.store(out, "written by another process");
+			}
+		}
+
+		/**
+		 * Get the data store file of an installation
+		 * 
+		 * @param isHome Installation
+		 * @return data store file
+		 */
+		private static File getDataStoreFile(File isHome) {
+			return new File(isHome, "txnPassStore.properties");
+		}
+	}
+
+}
@@ -0,0 +1,306 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wm.data.IData;
+import com.wm.util.Values;
+import com.wm.util.coder.IDataBinCoder;
+import com.wm.util.coder.XMLCoder;
+
+/**
+ * Tests for {@link RawNodeFile}. Results are compared with those of
+ * {@link XMLCoder}, which is used when the raw content cannot be handled.
+ */
+public class RawNodeFileTest {
+
+	private static final String CONN_ALIAS = "pkg.connections:main";
+
+	private File dir;
+	private IData details;
+	private String content;
+	private String encoded;
+
+	/**
+	 * Create a node.ndf file content and a directory for files
+	 * 
+	 * @throws IOException if encoding fails or the directory cannot be created
+	 */
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("jtacu-test").toFile();
+		details = SyntheticConnection.createDetails(100);
+		content = new String(SyntheticConnection.createNodeNdf("Pkg", CONN_ALIAS, details), StandardCharsets.UTF_8);
+		encoded = decodeXml(content).getString(ConnectionFile.KEY_IRTNODE_PROPERTY_ENC);
+	}
+
+	/**
+	 * Delete the files
+	 * 
+	 * @throws IOException if the directory cannot be listed
+	 */
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(dir.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * The located value must match the one decoded from XML, also for a buffer
+	 * whose position is not 0
+	 * 
+	 * @throws IOException if decoding fails
+	 */
+	@Test
+	public void locatedValueMatchesXmlDecoder() throws IOException {
+		RawNodeFile rawNodeFile = RawNodeFile.locate(bytes(content));
+		assertNotNull(rawNodeFile);
+		assertEquals(encoded, rawNodeFile.getEncodedValue());
+		assertDecodedValue(Base64.getDecoder().decode(encoded), rawNodeFile);
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes(content).length);
+		buffer.put(bytes(content)).position(10);
+		assertEquals(encoded, RawNodeFile.locate(buffer).getEncodedValue());
+	}
+
+	/**
+	 * Values with any kind of padding and with line breaks must be decoded like
+	 * {@link Base64}
+	 * 
+	 * @throws IOException if decoding fails
+	 */
+	@Test
+	public void valuesAreDecodedLikeBase64() throws IOException {
+		for (int length = 1; length <= 6; length++) {
+			byte[] data = new byte[length];
+			for (int i = 0; i < length; i++) {
+				data[i] = (byte) (250 + i * 37);
+			}
+			String value = Base64.getEncoder().encodeToString(data);
+			assertDecodedValue(data, RawNodeFile.locate(bytes(withValue(value))));
+			assertDecodedValue(data, RawNodeFile.locate(bytes(withValue(value.replace("=", "")))));
+		}
+
+		byte[] data = Base64.getDecoder().decode(encoded);
+		String wrapped = "\n    " + Base64.getMimeEncoder().encodeToString(data) + "\n  ";
+		RawNodeFile rawNodeFile = RawNodeFile.locate(bytes(withValue(wrapped)));
+		assertEquals(encoded, rawNodeFile.getEncodedValue());
+		assertDecodedValue(data, rawNodeFile);
+	}
+
+	/**
+	 * Invalid Base64 content must be rejected
+	 */
+	@Test
+	public void invalidValuesAreRejected() {
+		for (String value : Arrays.asList("A", "AAAAA", "AA=A", "AA===", "A===")) {
+			RawNodeFile rawNodeFile = RawNodeFile.locate(bytes(withValue(value)));
+			assertThrows(value, IOException.class,
+					() -> rawNodeFile.decodeValue(new byte[rawNodeFile.getMaxDecodedLength()]));
+		}
+	}
+
+	/**
+	 * Splicing a new value must give the same file as encoding all values with
+	 * {@link XMLCoder}, also after the value was released
+	 * 
+	 * @throws IOException if encoding fails
+	 */
+	@Test
+	public void splicedFileMatchesXmlEncoder() throws IOException {
+		String newEncoded = Base64.getEncoder()
+				.encodeToString(new IDataBinCoder().encodeToBytes(SyntheticConnection.createDetails(500)));
+
+		Values values = decodeXml(content);
+		values.put(ConnectionFile.KEY_IRTNODE_PROPERTY_ENC, newEncoded);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new XMLCoder().encode(expected, values);
+
+		RawNodeFile rawNodeFile = RawNodeFile.locate(bytes(content));
+		rawNodeFile.releaseValue();
+		assertThrows(IllegalStateException.class, rawNodeFile::getEncodedValue);
+		ByteArrayOutputStream spliced = new ByteArrayOutputStream();
+		rawNodeFile.writeWithValue(spliced, bytes(newEncoded));
+
+		assertEquals(expected.toString("UTF-8"), spliced.toString("UTF-8"));
+		assertValuesEqual(values, decodeXml(spliced.toString("UTF-8")));
+	}
+
+	/**
+	 * The content without value must hold all other values
+	 * 
+	 * @throws IOException if decoding fails
+	 */
+	@Test
+	public void contentWithoutValueHoldsOtherValues() throws IOException {
+		Values values = decodeXml(content);
+		values.put(ConnectionFile.KEY_IRTNODE_PROPERTY_ENC, "");
+
+		RawNodeFile rawNodeFile = RawNodeFile.locate(bytes(content));
+		assertValuesEqual(values, decodeXml(new String(rawNodeFile.getContentWithoutValue(), StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * CRLF line endings must be kept, and only the value must be replaced
+	 * 
+	 * @throws IOException if encoding fails
+	 */
+	@Test
+	public void lineEndingsAreKept() throws IOException {
+		String crlf = content.replace("\n", "\r\n");
+		RawNodeFile rawNodeFile = RawNodeFile.locate(bytes(crlf));
+		assertEquals(encoded, rawNodeFile.getEncodedValue());
+
+		ByteArrayOutputStream spliced = new ByteArrayOutputStream();
+		rawNodeFile.writeWithValue(spliced, bytes("QUJD"));
+		assertEquals(crlf.replace(encoded, "QUJD"), spliced.toString("UTF-8"));
+	}
+
+	/**
+	 * Forms other than the simple one must be left to the XML decoder
+	 */
+	@Test
+	public void otherFormsAreNotLocated() {
+		String escaped = "&#" + (int) encoded.charAt(0) + ";" + encoded.substring(1);
+		String marker = "name=\"" + ConnectionFile.KEY_IRTNODE_PROPERTY_ENC + "\"";
+		for (String other : Arrays.asList(withValue(escaped), withValue("<![CDATA[" + encoded + "]]>"),
+				withValue(encoded + "<!-- comment -->"), withValue(""), withValue(" \r\n "),
+				content.replace(marker + ">" + encoded + "</value>", marker + "/>"),
+				content.replace("<value " + marker, "<record " + marker), content.replace(marker, "name=\"other\""),
+				content.substring(0, content.indexOf(encoded) + 10))) {
+			assertNull(other, RawNodeFile.locate(bytes(other)));
+		}
+	}
+
+	/**
+	 * {@link ConnectionFile} must read and write all forms, whether via the raw
+	 * content or via the XML decoder, and keep the other values of the node
+	 * 
+	 * @throws IOException if a file cannot be written or read
+	 */
+	@Test
+	public void connectionFileHandlesAllForms() throws IOException {
+		String escaped = "&#" + (int) encoded.charAt(0) + ";" + encoded.substring(1);
+		String wrapped = "\n    " + Base64.getMimeEncoder().encodeToString(Base64.getDecoder().decode(encoded)) + "\n  ";
+		IData newDetails = SyntheticConnection.createDetails(300);
+		Map<String, String> expectedSettings = new ConnectionDetails(details).getSettings();
+		Map<String, String> newSettings = new ConnectionDetails(newDetails).getSettings();
+
+		for (String form : Arrays.asList(content, content.replace("\n", "\r\n"), withValue(wrapped), withValue(escaped),
+				withValue("<![CDATA[" + encoded + "]]>"))) {
+			File nodeNdf = new File(dir, "node.ndf");
+			Files.write(nodeNdf.toPath(), bytes(form));
+
+			ConnectionFile conFile = new ConnectionFile(dir, CONN_ALIAS);
+			assertEquals(form, expectedSettings, new ConnectionDetails(conFile.getConnectionDetails()).getSettings());
+			conFile.setConnectionDetails(newDetails);
+			assertTrue(form, conFile.write());
+
+			Values written = decodeXml(new String(Files.readAllBytes(nodeNdf.toPath()), StandardCharsets.UTF_8));
+			assertEquals(form, SyntheticConnection.ADAPTER_TYPE, written.getString(ConnectionFile.KEY_ADAPTER_TYPE));
+			IData writtenDetails = new IDataBinCoder().decodeFromBytes(
+					Base64.getMimeDecoder().decode(written.getString(ConnectionFile.KEY_IRTNODE_PROPERTY_ENC)));
+			assertEquals(form, newSettings, new ConnectionDetails(writtenDetails).getSettings());
+		}
+	}
+
+	/**
+	 * Check the result of {@link RawNodeFile#decodeValue(byte[])}
+	 * 
+	 * @param expected    Expected bytes
+	 * @param rawNodeFile Raw file to decode
+	 * @throws IOException if decoding fails
+	 */
+	private static void assertDecodedValue(byte[] expected, RawNodeFile rawNodeFile) throws IOException {
+		byte[] buffer = new byte[rawNodeFile.getMaxDecodedLength()];
+		int length = rawNodeFile.decodeValue(buffer);
+		assertEquals(Arrays.toString(expected), Arrays.toString(Arrays.copyOf(buffer, length)));
+	}
+
+	/**
+	 * Check that two sets of values have the same keys and string values
+	 * 
+	 * @param expected Expected values
+	 * @param actual   Actual values
+	 */
+	private static void assertValuesEqual(Values expected, Values actual) {
+		assertEquals(Collections.list(expected.keys()), Collections.list(actual.keys()));
+		for (String key : Collections.list(expected.keys())) {
+			assertEquals(key, expected.getString(key), actual.getString(key));
+		}
+	}
+
+	/**
+	 * Get the file content with another encoded value
+	 * 
+	 * @param value New content of the value element
+	 * @return file content
+	 */
+	private String withValue(String value) {
+		return content.replace(">" + encoded + "<", ">" + value + "<");
+	}
+
+	/**
+	 * Decode a file content via {@link XMLCoder}
+	 * 
+	 * @param xml File content
+	 * @return values
+	 * @throws IOException if decoding fails
+	 */
+	private static Values decodeXml(String xml) throws IOException {
+		return new XMLCoder().decode(new ByteArrayInputStream(bytes(xml)));
+	}
+
+	/**
+	 * Encode a string
+	 * 
+	 * @param text Text
+	 * @return UTF-8 bytes
+	 */
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
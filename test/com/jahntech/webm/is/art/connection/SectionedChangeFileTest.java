@@ -0,0 +1,187 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SectionedChangeFile}
+ */
+public class SectionedChangeFileTest {
+
+	private File dir;
+
+	/**
+	 * Create a directory for the change files
+	 * 
+	 * @throws IOException if the directory cannot be created
+	 */
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("jtacu-test").toFile();
+	}
+
+	/**
+	 * Delete the change files
+	 */
+	@After
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Sections must inherit the defaults before them, may override them, and keep
+	 * the order of the file
+	 * 
+	 * @throws IOException if the file cannot be read
+	 */
+	@Test
+	public void sectionsInheritAndOverrideDefaults() throws IOException {
+		File file = write("# environment\n", "[defaults]\n", "a.user = svc\n", "a.port = 1\n", "\n",
+				"[Pkg1 pkg1.connections:one]\n", "a.server = db-1\n", "a.user = other\n",
+				"connectionProperties.password = s = cret\n", "[Pkg2   pkg2.connections:two]\n",
+				"a.server=db-2\n");
+
+		try (SectionedChangeFile changes = new SectionedChangeFile(file)) {
+			ConnectionUpdate one = changes.next();
+			assertEquals("Pkg1", one.getPackageName());
+			assertEquals("pkg1.connections:one", one.getConnAlias());
+			ChangeSet oneChanges = one.getChangeSet(null);
+			assertEquals(new ChangeSet(ChangeSetTest.changes("a.user", "other", "a.port", "1", "a.server", "db-1"))
+					.getKey(), oneChanges.getKey());
+			assertEquals("s = cret", oneChanges.getPassword());
+
+			ConnectionUpdate two = changes.next();
+			assertEquals("pkg2.connections:two", two.getConnAlias());
+			assertEquals(new ChangeSet(ChangeSetTest.changes("a.user", "svc", "a.port", "1", "a.server", "db-2"))
+					.getKey(), two.getChangeSet(null).getKey());
+			assertNull(two.getChangeSet(null).getPassword());
+
+			assertNull(changes.next());
+		}
+	}
+
+	/**
+	 * Defaults only apply to sections after them
+	 * 
+	 * @throws IOException if the file cannot be read
+	 */
+	@Test
+	public void defaultsApplyOnlyToLaterSections() throws IOException {
+		File file = write("[Pkg c1]\n", "a = 1\n", "[defaults]\n", "b = 2\n", "[Pkg c2]\n", "a = 3\n");
+
+		try (SectionedChangeFile changes = new SectionedChangeFile(file)) {
+			assertEquals(1, changes.next().getChangeSet(null).getSettingsCount());
+			assertEquals(2, changes.next().getChangeSet(null).getSettingsCount());
+		}
+	}
+
+	/**
+	 * Invalid lines must be reported with their line number
+	 * 
+	 * @throws IOException if the file cannot be read
+	 */
+	@Test
+	public void invalidLinesAreRejected() throws IOException {
+		assertInvalid("Line 1", "a = 1\n");
+		assertInvalid("Line 2", "[Pkg c1]\n", "no separator\n");
+		assertInvalid("Line 1", "[Pkg c1\n");
+		assertInvalid("Line 1", "[Pkg]\n");
+		assertInvalid("Section at line 1", "[Pkg c1]\n", "a = 1\n", "a.b = 2\n");
+	}
+
+	/**
+	 * Groups must end after the maximum size and before a connection that is
+	 * already part of the group
+	 * 
+	 * @throws IOException if the file cannot be read
+	 */
+	@Test
+	public void groupsEndBeforeDuplicateConnection() throws IOException {
+		File file = write("[P c1]\n", "a = 1\n", "[P c2]\n", "a = 1\n", "[P c1]\n", "a = 2\n", "[P c3]\n",
+				"a = 1\n", "[P c4]\n", "a = 1\n", "[P c5]\n", "a = 1\n");
+
+		List<List<String>> groups = new ArrayList<List<String>>();
+		try (SectionedChangeFile changes = new SectionedChangeFile(file)) {
+			List<ConnectionUpdate> group;
+			while (!(group = changes.nextGroup(3)).isEmpty()) {
+				List<String> aliases = new ArrayList<String>();
+				for (ConnectionUpdate update : group) {
+					aliases.add(update.getConnAlias());
+				}
+				groups.add(aliases);
+			}
+		}
+
+		assertEquals(Arrays.asList(Arrays.asList("c1", "c2"), Arrays.asList("c1", "c3", "c4"), Arrays.asList("c5")),
+				groups);
+	}
+
+	/**
+	 * Check that reading a file fails
+	 * 
+	 * @param expectedPrefix Expected start of the message
+	 * @param lines          Lines of the file
+	 * @throws IOException if the file cannot be written
+	 */
+	private void assertInvalid(String expectedPrefix, String... lines) throws IOException {
+		File file = write(lines);
+		try (SectionedChangeFile changes = new SectionedChangeFile(file)) {
+			IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+				while (changes.next() != null) {
+					// Read all sections
+				}
+			});
+			assertTrue(e.getMessage(), e.getMessage().startsWith(expectedPrefix));
+		}
+	}
+
+	/**
+	 * Write a change file
+	 * 
+	 * @param lines Lines, including line separators
+	 * @return file
+	 * @throws IOException if the file cannot be written
+	 */
+	private File write(String... lines) throws IOException {
+		File file = File.createTempFile("changes", ".conf", dir);
+		Files.write(file.toPath(), String.join("", lines).getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+}
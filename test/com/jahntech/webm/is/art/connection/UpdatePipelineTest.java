@@ -0,0 +1,165 @@
+/**
+ * (c) Copyright 2024 JahnTech, Inhaber Christoph Jahn, Darmstadt, Germany.
+ * https://jahntech.com
+ * 
+ * SPDX-License-Identifier: Apache-2.0
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.jahntech.webm.is.art.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link UpdatePipeline}, with updates that only record when they are
+ * applied
+ */
+public class UpdatePipelineTest {
+
+	/**
+	 * Updates of the same connection must be applied in the order of the updates,
+	 * even if an earlier one takes longer
+	 * 
+	 * @throws Exception if the pipeline fails
+	 */
+	@Test
+	public void updatesOfSameConnectionAreAppliedInOrder() throws Exception {
+		List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+		List<ConnectionUpdate> updates = Arrays.asList(new RecordingUpdate("a", "a1", 200, applied),
+				new RecordingUpdate("b", "b1", 0, applied), new RecordingUpdate("a", "a2", 0, applied),
+				new RecordingUpdate("a", "a3", 50, applied), new RecordingUpdate("b", "b2", 0, applied));
+
+		new UpdatePipeline(new UpdateContext(new File("."), null, null), 4).run(updates, quietStream());
+
+		assertEquals(Arrays.asList("a1", "a2", "a3"), filter(applied, "a"));
+		assertEquals(Arrays.asList("b1", "b2"), filter(applied, "b"));
+	}
+
+	/**
+	 * Different connections must not wait for each other
+	 * 
+	 * @throws Exception if the pipeline fails
+	 */
+	@Test
+	public void differentConnectionsRunConcurrently() throws Exception {
+		List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+		List<ConnectionUpdate> updates = Arrays.asList(new RecordingUpdate("a", "a1", 300, applied),
+				new RecordingUpdate("b", "b1", 0, applied));
+
+		new UpdatePipeline(new UpdateContext(new File("."), null, null), 2).run(updates, quietStream());
+
+		assertEquals(Arrays.asList("b1", "a1"), applied);
+	}
+
+	/**
+	 * A failed update must neither stop later updates of the same connection nor
+	 * change the order of the results and messages
+	 * 
+	 * @throws Exception if the pipeline fails
+	 */
+	@Test
+	public void failureDoesNotStopLaterUpdates() throws Exception {
+		List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+		List<ConnectionUpdate> updates = Arrays.asList(new RecordingUpdate("a", "a1", 100, applied),
+				new RecordingUpdate("a", RecordingUpdate.FAIL, 0, applied), new RecordingUpdate("a", "a3", 0, applied));
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+
+		List<UpdatePipeline.Result> results = new UpdatePipeline(new UpdateContext(new File("."), null, null), 4)
+				.run(updates, new PrintStream(messages, true, StandardCharsets.UTF_8.name()));
+
+		assertEquals(Arrays.asList("a1", "a3"), applied);
+		assertTrue(results.get(0).isSuccess());
+		assertFalse(results.get(1).isSuccess());
+		assertTrue(results.get(2).isSuccess());
+		String output = messages.toString(StandardCharsets.UTF_8.name());
+		assertTrue(output.indexOf("applied a1") < output.indexOf("applied a3"));
+	}
+
+	/**
+	 * Get the labels of one connection
+	 * 
+	 * @param applied Labels of all applied updates
+	 * @param prefix  Prefix of the labels of the connection
+	 * @return labels in the order they were applied
+	 */
+	private static List<String> filter(List<String> applied, String prefix) {
+		List<String> out = new ArrayList<String>();
+		for (String label : applied) {
+			if (label.startsWith(prefix)) {
+				out.add(label);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Get a stream that discards everything
+	 * 
+	 * @return stream
+	 */
+	private static PrintStream quietStream() {
+		return new PrintStream(PrintStream.nullOutputStream());
+	}
+
+	/**
+	 * Update that records its label instead of changing a file
+	 */
+	private static class RecordingUpdate extends ConnectionUpdate {
+
+		static final String FAIL = "fail";
+
+		private String label;
+		private long delayMillis;
+		private List<String> applied;
+
+		/**
+		 * Initialize
+		 * 
+		 * @param connAlias   Connection alias
+		 * @param label       Label to record, or {@value #FAIL} to fail
+		 * @param delayMillis Time to wait before recording
+		 * @param applied     Labels of applied updates
+		 */
+		RecordingUpdate(String connAlias, String label, long delayMillis, List<String> applied) {
+			super("TestPackage", connAlias, new ChangeSet(Collections.<String, String>emptyMap()));
+			this.label = label;
+			this.delayMillis = delayMillis;
+			this.applied = applied;
+		}
+
+		@Override
+		public void apply(UpdateContext context, PrintStream out, boolean summary) throws Exception {
+			Thread.sleep(delayMillis);
+			if (label.equals(FAIL)) {
+				throw new IllegalStateException("Update failed on purpose");
+			}
+			applied.add(label);
+			out.println("applied " + label);
+		}
+	}
+
+}